@@ -0,0 +1,429 @@
+package ch.epfl.alpano;
+
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Class CompactPanorama: represents a panorama in a compact, read-only form,
+ * meant to keep panoramas in caches or archives. Its distances are stored as
+ * floats, exactly, while its longitudes, latitudes, elevations and slopes
+ * are quantized to 16 bits each, which uses 12 bytes per sample instead of
+ * 20.
+ *
+ * Each quantized channel is stored as an offset from a center (the position
+ * and elevation of the observer, and the middle of the slopes), in steps
+ * chosen so that the largest offset of the panorama fits in 16 bits. The
+ * value of a sample therefore differs from the original one by at most half
+ * a step, given by errorBound, plus the rounding to float. Samples whose
+ * value is exactly 0 (e.g. the samples of the sky) are kept exactly.
+ *
+ * For example, a panorama of 300 km at the latitude of the Alps has steps of
+ * about 2.1e-6 rad for its longitudes and 1.4e-6 rad for its latitudes (9 m
+ * on the ground in both cases), 0.12 m for its elevations and 2.4e-5 rad
+ * for its slopes, i.e. errors of at most half these values.
+ *
+ * @author Saoud Akram (273661)
+ * @author Karim Kabbani (275044)
+ *
+ */
+public final class CompactPanorama {
+
+    /*
+     * Fields:
+     */
+    private final PanoramaParameters parameters;
+
+    /*
+     * The distances, stored line by line, and the quantized channels, null
+     * if they were not built
+     */
+    private final float[] distance;
+    private final QuantizedChannel longitude;
+    private final QuantizedChannel latitude;
+    private final QuantizedChannel elevation;
+    private final QuantizedChannel slope;
+
+    /**
+     * Constructs the compact form of the given panorama, which has the same
+     * channels
+     *
+     * @param panorama
+     * @throws IllegalArgumentException
+     *             if a value of the longitudes, latitudes, elevations or
+     *             slopes is not finite
+     */
+    CompactPanorama(Panorama panorama) {
+        parameters = panorama.parameters();
+        Set<PanoramaChannel> channels = panorama.channels();
+        GeoPoint observer = parameters.observerPosition();
+
+        distance = channels.contains(PanoramaChannel.DISTANCE)
+                ? new float[parameters.width() * parameters.height()] : null;
+        if (distance != null) {
+            for (int y = 0; y < parameters.height(); y++) {
+                for (int x = 0; x < parameters.width(); x++) {
+                    distance[parameters.linearSampleIndex(x, y)] = panorama
+                            .distanceAt(x, y);
+                }
+            }
+        }
+        longitude = channels.contains(PanoramaChannel.LONGITUDE)
+                ? new QuantizedChannel(panorama, PanoramaChannel.LONGITUDE,
+                        observer.longitude())
+                : null;
+        latitude = channels.contains(PanoramaChannel.LATITUDE)
+                ? new QuantizedChannel(panorama, PanoramaChannel.LATITUDE,
+                        observer.latitude())
+                : null;
+        elevation = channels.contains(PanoramaChannel.ELEVATION)
+                ? new QuantizedChannel(panorama, PanoramaChannel.ELEVATION,
+                        parameters.observerElevation())
+                : null;
+        slope = channels.contains(PanoramaChannel.SLOPE)
+                ? new QuantizedChannel(panorama, PanoramaChannel.SLOPE,
+                        Math.PI / 4)
+                : null;
+    }
+
+    /**
+     * Getter: allows anyone to get the parameters of the panorama
+     *
+     * @return PanoramaParameters parameters
+     */
+    public PanoramaParameters parameters() {
+        return parameters;
+    }
+
+    /**
+     * Method which returns the channels of the panorama which were built.
+     * Reading another channel throws an IllegalStateException
+     *
+     * @return the channels of the panorama
+     */
+    public Set<PanoramaChannel> channels() {
+        Set<PanoramaChannel> channels = EnumSet.noneOf(PanoramaChannel.class);
+        for (PanoramaChannel c : PanoramaChannel.values()) {
+            if (c == PanoramaChannel.DISTANCE ? distance != null
+                    : channel(c) != null) {
+                channels.add(c);
+            }
+        }
+        return Collections.unmodifiableSet(channels);
+    }
+
+    /**
+     * Method which returns the largest difference between a value of the
+     * given channel and the value of the original panorama (not counting
+     * the rounding to float)
+     *
+     * @param channel:
+     *            a channel of the panorama
+     * @return the error bound of the channel, 0 for the distances
+     * @throws IllegalStateException
+     *             if the channel was not built
+     */
+    public double errorBound(PanoramaChannel channel) {
+        if (channel == PanoramaChannel.DISTANCE) {
+            if (distance == null) {
+                throw new IllegalStateException();
+            }
+            return 0;
+        }
+        QuantizedChannel quantized = channel(channel);
+        if (quantized == null) {
+            throw new IllegalStateException();
+        }
+        return quantized.step / 2;
+    }
+
+    /**
+     * Method which returns the memory used by the samples of the panorama
+     *
+     * @return the memory used (in bytes)
+     */
+    public long bytes() {
+        long samples = (long) parameters.width() * parameters.height();
+        long bytes = distance == null ? 0 : samples * Float.BYTES;
+        for (PanoramaChannel c : channels()) {
+            if (c != PanoramaChannel.DISTANCE) {
+                bytes += samples * Short.BYTES;
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * Method which returns the quantized channel corresponding to the given
+     * channel, which must not be the distance
+     *
+     * @param channel
+     * @return the quantized channel, or null if it was not built
+     */
+    private QuantizedChannel channel(PanoramaChannel channel) {
+        switch (channel) {
+        case LONGITUDE:
+            return longitude;
+        case LATITUDE:
+            return latitude;
+        case ELEVATION:
+            return elevation;
+        case SLOPE:
+            return slope;
+        default:
+            throw new IllegalArgumentException();
+        }
+    }
+
+    /**
+     * Method which checks the given sample indicies and returns the index of
+     * the sample in the channels
+     *
+     * @param x
+     * @param y
+     * @return the linear index of the sample
+     * @throws IndexOutOfBoundsException
+     *             if the sample indicies are not valid
+     */
+    private int index(int x, int y) {
+        if (!isValid(x, y)) {
+            throw new IndexOutOfBoundsException();
+        }
+        return parameters.linearSampleIndex(x, y);
+    }
+
+    /**
+     * Method which checks if the given sample indicies are valid or not
+     *
+     * @param x
+     * @param y
+     * @return true if the sample indicies are valid
+     */
+    private boolean isValid(int x, int y) {
+        return 0 <= x && x < parameters.width() && 0 <= y
+                && y < parameters.height();
+    }
+
+    /**
+     * Method which returns the value of a quantized channel at the given
+     * sample indicies
+     *
+     * @param channel:
+     *            the channel, or null if it was not built
+     * @param x
+     * @param y
+     * @return the value of the channel
+     * @throws IllegalStateException
+     *             if the channel was not built
+     */
+    private float valueAt(QuantizedChannel channel, int x, int y) {
+        int i = index(x, y);
+        if (channel == null) {
+            throw new IllegalStateException();
+        }
+        return channel.valueAt(i);
+    }
+
+    /**
+     * Method which returns the distance at the given sample indicies
+     *
+     * @param x
+     * @param y
+     * @return
+     */
+    public float distanceAt(int x, int y) {
+        int i = index(x, y);
+        if (distance == null) {
+            throw new IllegalStateException();
+        }
+        return distance[i];
+    }
+
+    /**
+     * Method which returns the longitude at the given sample indicies
+     *
+     * @param x
+     * @param y
+     * @return
+     */
+    public float longitudeAt(int x, int y) {
+        return valueAt(longitude, x, y);
+    }
+
+    /**
+     * Method which returns the latitude at the given sample indicies
+     *
+     * @param x
+     * @param y
+     * @return
+     */
+    public float latitudeAt(int x, int y) {
+        return valueAt(latitude, x, y);
+    }
+
+    /**
+     * Method which returns the elevation at the given sample indicies
+     *
+     * @param x
+     * @param y
+     * @return
+     */
+    public float elevationAt(int x, int y) {
+        return valueAt(elevation, x, y);
+    }
+
+    /**
+     * Method which returns the slope at the given sample indicies
+     *
+     * @param x
+     * @param y
+     * @return
+     */
+    public float slopeAt(int x, int y) {
+        return valueAt(slope, x, y);
+    }
+
+    /**
+     * Method which returns the distance at the given sample indicies, or the
+     * given default value if they are out of bounds
+     *
+     * @param x
+     * @param y
+     * @param d:
+     *            default value
+     * @return
+     */
+    public float distanceAt(int x, int y, float d) {
+        return isValid(x, y) ? distanceAt(x, y) : d;
+    }
+
+    /**
+     * Method which expands the panorama back to a panorama with the same
+     * channels, stored in the given storage
+     *
+     * @param storage:
+     *            place where the channels of the panorama are stored
+     * @return the expanded panorama
+     */
+    public Panorama expanded(PanoramaStorage storage) {
+        Objects.requireNonNull(storage);
+        Set<PanoramaChannel> channels = channels();
+        Panorama.Builder aBuilder = new Panorama.Builder(parameters, channels,
+                storage);
+        for (int y = 0; y < parameters.height(); y++) {
+            for (int x = 0; x < parameters.width(); x++) {
+                int i = parameters.linearSampleIndex(x, y);
+                if (distance != null) {
+                    aBuilder.setDistanceAt(x, y, distance[i]);
+                }
+                if (longitude != null) {
+                    aBuilder.setLongitudeAt(x, y, longitude.valueAt(i));
+                }
+                if (latitude != null) {
+                    aBuilder.setLatitudeAt(x, y, latitude.valueAt(i));
+                }
+                if (elevation != null) {
+                    aBuilder.setElevationAt(x, y, elevation.valueAt(i));
+                }
+                if (slope != null) {
+                    aBuilder.setSlopeAt(x, y, slope.valueAt(i));
+                }
+            }
+        }
+        return aBuilder.build();
+    }
+
+    /**
+     * Class QuantizedChannel: a channel whose values are stored as 16 bits
+     * offsets from a center
+     */
+    private static final class QuantizedChannel {
+
+        /*
+         * Value of the offsets which represents an exact 0, and largest
+         * absolute value of the other offsets
+         */
+        private static final short ZERO = Short.MIN_VALUE;
+        private static final int MAX_OFFSET = Short.MAX_VALUE;
+
+        /*
+         * Fields:
+         */
+        private final double center;
+        private final double step;
+        private final short[] offsets;
+
+        /**
+         * Constructs the quantized form of a channel of the given panorama
+         *
+         * @param panorama
+         * @param channel:
+         *            the channel, which must not be the distance
+         * @param center:
+         *            value from which the offsets are computed
+         * @throws IllegalArgumentException
+         *             if a value of the channel is not finite
+         */
+        private QuantizedChannel(Panorama panorama, PanoramaChannel channel,
+                double center) {
+            PanoramaParameters p = panorama.parameters();
+            float[] values = new float[p.width() * p.height()];
+            double maxOffset = 0;
+            for (int y = 0; y < p.height(); y++) {
+                for (int x = 0; x < p.width(); x++) {
+                    float v = valueAt(panorama, channel, x, y);
+                    Preconditions.checkArgument(Float.isFinite(v));
+                    values[p.linearSampleIndex(x, y)] = v;
+                    if (v != 0) {
+                        maxOffset = Math.max(maxOffset, Math.abs(v - center));
+                    }
+                }
+            }
+            this.center = center;
+            this.step = maxOffset == 0 ? 1 : maxOffset / MAX_OFFSET;
+            this.offsets = new short[values.length];
+            for (int i = 0; i < values.length; i++) {
+                offsets[i] = values[i] == 0 ? ZERO
+                        : (short) Math.round((values[i] - center) / step);
+            }
+        }
+
+        /**
+         * Method which returns a value of a channel of a panorama
+         *
+         * @param panorama
+         * @param channel
+         * @param x
+         * @param y
+         * @return the value
+         */
+        private static float valueAt(Panorama panorama,
+                PanoramaChannel channel, int x, int y) {
+            switch (channel) {
+            case LONGITUDE:
+                return panorama.longitudeAt(x, y);
+            case LATITUDE:
+                return panorama.latitudeAt(x, y);
+            case ELEVATION:
+                return panorama.elevationAt(x, y);
+            case SLOPE:
+                return panorama.slopeAt(x, y);
+            default:
+                throw new IllegalArgumentException();
+            }
+        }
+
+        /**
+         * Method which returns the value of the sample of the given index
+         *
+         * @param i:
+         *            linear index of the sample
+         * @return the value
+         */
+        private float valueAt(int i) {
+            short offset = offsets[i];
+            return offset == ZERO ? 0 : (float) (center + offset * step);
+        }
+    }
+}
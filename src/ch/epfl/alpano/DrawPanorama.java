@@ -1,7 +1,9 @@
 package ch.epfl.alpano;
 
 import java.awt.image.BufferedImage;
+import java.io.BufferedOutputStream;
 import java.io.File;
+import java.io.FileOutputStream;
 
 import javax.imageio.ImageIO;
 
@@ -9,10 +11,8 @@ import ch.epfl.alpano.dem.ContinuousElevationModel;
 import ch.epfl.alpano.dem.DiscreteElevationModel;
 import ch.epfl.alpano.dem.HgtDiscreteElevationModel;
 import ch.epfl.alpano.gui.ChannelPainter;
+import ch.epfl.alpano.gui.HeadlessRenderer;
 import ch.epfl.alpano.gui.ImagePainter;
-import ch.epfl.alpano.gui.PanoramaRenderer;
-import javafx.embed.swing.SwingFXUtils;
-import javafx.scene.image.Image;
 
 final class DrawPanorama {
     final static File HGT_FILE = new File("N46E007.hgt");
@@ -86,10 +86,12 @@ final class DrawPanorama {
 //                    opacitiy);
             
             ImagePainter IP = ImagePainter.colourPanoramaPainter(p);
-            
-            Image image2 = PanoramaRenderer.renderPanorama(p, IP);
-            ImageIO.write(SwingFXUtils.fromFXImage(image2, null), "png",
-                    new File("niesen-profile.png"));
+
+            // written without JavaFX image, so without the JavaFX toolkit
+            HeadlessRenderer.writePng(p, IP,
+                    new BufferedOutputStream(
+                            new FileOutputStream("niesen-profile.png")),
+                    Runtime.getRuntime().availableProcessors());
         }
     }
 
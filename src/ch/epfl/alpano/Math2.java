@@ -187,4 +187,69 @@ public interface Math2 {
         }
         return a < b ? a : b;
     }
+
+    /**
+     * Method which finds, like improveRoot, the lowest boundary of a
+     * subinterval of size equal or inferior to epsilon and between x1 and x2
+     * containing a root, with the Illinois variant of the false position
+     * method: the next point is the root of the line joining the two
+     * boundaries, and the value of a boundary kept twice in a row is halved.
+     * On smooth functions, it needs far fewer evaluations than the bisection
+     * 
+     * @param f
+     *            function
+     * @param x1
+     *            first boundary of the interval
+     * @param x2
+     *            second boundary of the interval
+     * @param epsilon
+     *            error
+     * @return lowest boundary of a subinterval of size equal or inferior to
+     *         epsilon and between x1 and x2
+     * @throws IllegalArgumentException
+     *             if f(x1) and f(x2) have the same sign
+     */
+    public static double improveRootIllinois(DoubleUnaryOperator f,
+            double x1, double x2, double epsilon) {
+        double a = Math.min(x1, x2);
+        double b = Math.max(x1, x2);
+        double fA = f.applyAsDouble(a);
+        if (fA == 0) {
+            return a;
+        }
+        double fB = f.applyAsDouble(b);
+        if (fB == 0) {
+            return b;
+        }
+
+        Preconditions.checkArgument(fA * fB < 0 && epsilon > 0);
+        // 1 if b was kept by the last iteration, -1 if a was
+        int kept = 0;
+        while (b - a > epsilon) {
+            double c = (a * fB - b * fA) / (fB - fA);
+            if (!(c > a && c < b)) {
+                // rounding errors: fall back to the bisection
+                c = (a + b) / 2;
+            }
+            double fC = f.applyAsDouble(c);
+            if (fC == 0) {
+                return c;
+            } else if (fC * fA > 0) {
+                a = c;
+                fA = fC;
+                if (kept == 1) {
+                    fB /= 2;
+                }
+                kept = 1;
+            } else {
+                b = c;
+                fB = fC;
+                if (kept == -1) {
+                    fA /= 2;
+                }
+                kept = -1;
+            }
+        }
+        return a;
+    }
 }
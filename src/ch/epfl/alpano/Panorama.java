@@ -1,9 +1,14 @@
 package ch.epfl.alpano;
 
-import java.util.Arrays;
+import java.nio.FloatBuffer;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Set;
 
 /**
- * Class Panorama: represents a panorama
+ * Class Panorama: represents a panorama. Each of its channels is stored in a
+ * buffer which can be on or off the heap (see PanoramaStorage), and a
+ * panorama can be built with only some of its channels (see PanoramaChannel)
  * 
  * @author Saoud Akram (273661)
  * @author Karim Kabbani (275044)
@@ -15,30 +20,70 @@ public final class Panorama {
      * Fields:
      */
     private final PanoramaParameters parameters;
-    private final float[] distance;
-    private final float[] longitude;
-    private final float[] latitude;
-    private final float[] elevation;
-    private final float[] slope;
+    private final PanoramaStorage storage;
+
+    /*
+     * The channels, stored line by line, null if they were not built
+     */
+    private final FloatBuffer distance;
+    private final FloatBuffer longitude;
+    private final FloatBuffer latitude;
+    private final FloatBuffer elevation;
+    private final FloatBuffer slope;
+
+    /*
+     * For each column, angle (in radians) between the azimuth for which its
+     * rays were traced and its own azimuth, which is not 0 when the column
+     * was copied from a previous panorama; null if all the columns were
+     * traced for their own azimuth. It is lost when the panorama is
+     * compacted or saved
+     */
+    private final double[] azimuthShifts;
+
+    /**
+     * Constructor of the class, whose channels are stored line by line in
+     * the given buffers, null if they were not built, and whose columns were
+     * traced for their own azimuth
+     * 
+     * @param p
+     * @param storage
+     * @param d
+     * @param longitude
+     * @param latitude
+     * @param elevation
+     * @param slope
+     */
+    Panorama(PanoramaParameters p, PanoramaStorage storage,
+            FloatBuffer d, FloatBuffer longitude, FloatBuffer latitude,
+            FloatBuffer elevation, FloatBuffer slope) {
+        this(p, storage, d, longitude, latitude, elevation, slope, null);
+    }
 
     /**
-     * Constructor of the class
+     * Constructor of the class, like the previous one, with the azimuth
+     * shifts of the columns
      * 
      * @param p
+     * @param storage
      * @param d
      * @param longitude
      * @param latitude
      * @param elevation
      * @param slope
+     * @param azimuthShifts:
+     *            the azimuth shifts of the columns, or null if they are all 0
      */
-    private Panorama(PanoramaParameters p, float[] d, float[] longitude,
-            float[] latitude, float[] elevation, float[] slope) {
+    private Panorama(PanoramaParameters p, PanoramaStorage storage,
+            FloatBuffer d, FloatBuffer longitude, FloatBuffer latitude,
+            FloatBuffer elevation, FloatBuffer slope, double[] azimuthShifts) {
         parameters = p;
+        this.storage = storage;
         distance = d;
         this.longitude = longitude;
         this.latitude = latitude;
         this.elevation = elevation;
         this.slope = slope;
+        this.azimuthShifts = azimuthShifts;
     }
 
     /**
@@ -57,6 +102,25 @@ public final class Panorama {
         }
     }
 
+    /**
+     * Method which returns the value of a channel at the given sample indicies
+     * 
+     * @param channel:
+     *            the channel, or null if it was not built
+     * @param x
+     * @param y
+     * @return the value of the channel
+     * @throws IllegalStateException
+     *             if the channel was not built
+     */
+    private float valueAt(FloatBuffer channel, int x, int y) {
+        check(x, y);
+        if (channel == null) {
+            throw new IllegalStateException();
+        }
+        return channel.get(parameters.linearSampleIndex(x, y));
+    }
+
     /**
      * Getter: allows anyone to get the parameters of the panorama
      * 
@@ -66,6 +130,99 @@ public final class Panorama {
         return parameters;
     }
 
+    /**
+     * Getter: returns the place where the channels of the panorama are stored
+     * 
+     * @return the storage of the panorama
+     */
+    public PanoramaStorage storage() {
+        return storage;
+    }
+
+    /**
+     * Method which returns the channels of the panorama which were built.
+     * Reading another channel throws an IllegalStateException
+     * 
+     * @return the channels of the panorama
+     */
+    public Set<PanoramaChannel> channels() {
+        return channels(distance, longitude, latitude, elevation, slope);
+    }
+
+    /**
+     * Method which returns the channels whose buffer is not null
+     * 
+     * @param d
+     * @param longitude
+     * @param latitude
+     * @param elevation
+     * @param slope
+     * @return the channels
+     */
+    private static Set<PanoramaChannel> channels(FloatBuffer d,
+            FloatBuffer longitude, FloatBuffer latitude, FloatBuffer elevation,
+            FloatBuffer slope) {
+        Set<PanoramaChannel> channels = EnumSet.noneOf(PanoramaChannel.class);
+        FloatBuffer[] buffers = { d, longitude, latitude, elevation, slope };
+        for (PanoramaChannel c : PanoramaChannel.values()) {
+            if (buffers[c.ordinal()] != null) {
+                channels.add(c);
+            }
+        }
+        return Collections.unmodifiableSet(channels);
+    }
+
+    /**
+     * Method which returns the angle between the azimuth for which the rays
+     * of the given column were traced and the azimuth of the column, which
+     * is not 0 when the column was copied from a previous panorama whose
+     * columns had slightly different azimuths
+     * 
+     * @param x:
+     *            index of the column
+     * @return the azimuth shift of the column (in radians)
+     * @throws IndexOutOfBoundsException
+     *             if the column does not exist
+     */
+    double azimuthShiftAt(int x) {
+        check(x, 0);
+        return azimuthShifts == null ? 0 : azimuthShifts[x];
+    }
+
+    /**
+     * Method which returns the buffer of the given channel, in which it is
+     * stored line by line
+     * 
+     * @param channel
+     * @return a read-only view of the buffer of the channel, or null if it
+     *         was not built
+     */
+    FloatBuffer buffer(PanoramaChannel channel) {
+        FloatBuffer buffer = channel(channel);
+        return buffer == null ? null : buffer.asReadOnlyBuffer();
+    }
+
+    /**
+     * Method which returns the buffer of the given channel
+     * 
+     * @param channel
+     * @return the buffer of the channel, or null if it was not built
+     */
+    private FloatBuffer channel(PanoramaChannel channel) {
+        switch (channel) {
+        case DISTANCE:
+            return distance;
+        case LONGITUDE:
+            return longitude;
+        case LATITUDE:
+            return latitude;
+        case ELEVATION:
+            return elevation;
+        default:
+            return slope;
+        }
+    }
+
     /**
      * Method which returns the distance at the given sample indicies
      * 
@@ -74,8 +231,7 @@ public final class Panorama {
      * @return
      */
     public float distanceAt(int x, int y) {
-        check(x, y);
-        return distance[parameters.linearSampleIndex(x, y)];
+        return valueAt(distance, x, y);
     }
 
     /**
@@ -86,8 +242,7 @@ public final class Panorama {
      * @return
      */
     public float longitudeAt(int x, int y) {
-        check(x, y);
-        return longitude[parameters.linearSampleIndex(x, y)];
+        return valueAt(longitude, x, y);
     }
 
     /**
@@ -98,8 +253,7 @@ public final class Panorama {
      * @return
      */
     public float latitudeAt(int x, int y) {
-        check(x, y);
-        return latitude[parameters.linearSampleIndex(x, y)];
+        return valueAt(latitude, x, y);
     }
 
     /**
@@ -110,8 +264,7 @@ public final class Panorama {
      * @return
      */
     public float elevationAt(int x, int y) {
-        check(x, y);
-        return elevation[parameters.linearSampleIndex(x, y)];
+        return valueAt(elevation, x, y);
     }
 
     /**
@@ -122,8 +275,41 @@ public final class Panorama {
      * @return
      */
     public float slopeAt(int x, int y) {
-        check(x, y);
-        return slope[parameters.linearSampleIndex(x, y)];
+        return valueAt(slope, x, y);
+    }
+
+    /**
+     * Method which copies the values of a channel at the samples (x, y) to
+     * (x + length - 1, y) in the given array, checking the indicies only
+     * once for the whole row
+     *
+     * @param channel:
+     *            the channel
+     * @param x:
+     *            index of the first sample
+     * @param y:
+     *            index of the row
+     * @param length:
+     *            number of samples
+     * @param values:
+     *            array receiving the values, from index 0
+     * @throws IndexOutOfBoundsException
+     *             if a sample is not in the panorama, or the array is too
+     *             short
+     * @throws IllegalStateException
+     *             if the channel was not built
+     */
+    public void valuesAt(PanoramaChannel channel, int x, int y, int length,
+            float[] values) {
+        if (x < 0 || y < 0 || y >= parameters.height() || length < 0
+                || x + length > parameters.width() || length > values.length) {
+            throw new IndexOutOfBoundsException();
+        }
+        FloatBuffer buffer = channel(channel);
+        if (buffer == null) {
+            throw new IllegalStateException();
+        }
+        buffer.get(y * parameters.width() + x, values, 0, length);
     }
 
     /**
@@ -138,8 +324,21 @@ public final class Panorama {
      * @return
      */
     public float distanceAt(int x, int y, float d) {
-        return parameters.isValidSampleIndex(x, y)
-                ? distance[parameters.linearSampleIndex(x, y)] : d;
+        return parameters.isValidSampleIndex(x, y) ? distanceAt(x, y) : d;
+    }
+
+    /**
+     * Method which returns the compact form of the panorama, which uses less
+     * memory at the cost of a bounded error on some channels (see
+     * CompactPanorama)
+     *
+     * @return the compact panorama
+     * @throws IllegalArgumentException
+     *             if a value of the longitudes, latitudes, elevations or
+     *             slopes is not finite
+     */
+    public CompactPanorama compacted() {
+        return new CompactPanorama(this);
     }
 
     /**
@@ -154,33 +353,85 @@ public final class Panorama {
          * Fields:
          */
         private PanoramaParameters parameters;
-        private float[] distance;
-        private float[] longitude;
-        private float[] latitude;
-        private float[] elevation;
-        private float[] slope;
+        private PanoramaStorage storage;
+        private FloatBuffer distance;
+        private FloatBuffer longitude;
+        private FloatBuffer latitude;
+        private FloatBuffer elevation;
+        private FloatBuffer slope;
         private boolean calledBuild;
 
+        /*
+         * Azimuth shifts of the columns (see Panorama), null while they are
+         * all 0
+         */
+        private double[] azimuthShifts;
+
         /**
-         * Constructs a builder with the given parameters
+         * Constructs a builder with the given parameters, which builds all
+         * the channels on the heap
          * 
          * @param parameters
          */
         public Builder(PanoramaParameters parameters) {
-            if (parameters == null) {
+            this(parameters, PanoramaChannel.ALL, PanoramaStorage.HEAP);
+        }
+
+        /**
+         * Constructs a builder with the given parameters, which only builds
+         * the given channels (the values given for the other ones are
+         * ignored), in the given storage
+         * 
+         * @param parameters
+         * @param channels:
+         *            the channels to build
+         * @param storage:
+         *            place where the channels are stored
+         */
+        public Builder(PanoramaParameters parameters,
+                Set<PanoramaChannel> channels, PanoramaStorage storage) {
+            if (parameters == null || channels == null || storage == null) {
                 throw new NullPointerException();
             }
             this.parameters = parameters;
-            longitude = new float[parameters.width() * parameters.height()];
-            Arrays.fill(longitude, 0);
-            latitude = new float[parameters.width() * parameters.height()];
-            Arrays.fill(latitude, 0);
-            elevation = new float[parameters.width() * parameters.height()];
-            Arrays.fill(elevation, 0);
-            slope = new float[parameters.width() * parameters.height()];
-            Arrays.fill(slope, 0);
-            distance = new float[parameters.width() * parameters.height()];
-            Arrays.fill(distance, Float.POSITIVE_INFINITY);
+            this.storage = storage;
+            int size = parameters.width() * parameters.height();
+            distance = allocate(channels, PanoramaChannel.DISTANCE, size);
+            if (distance != null) {
+                for (int i = 0; i < size; i++) {
+                    distance.put(i, Float.POSITIVE_INFINITY);
+                }
+            }
+            longitude = allocate(channels, PanoramaChannel.LONGITUDE, size);
+            latitude = allocate(channels, PanoramaChannel.LATITUDE, size);
+            elevation = allocate(channels, PanoramaChannel.ELEVATION, size);
+            slope = allocate(channels, PanoramaChannel.SLOPE, size);
+        }
+
+        /**
+         * Method which allocates a channel if it must be built
+         * 
+         * @param channels:
+         *            the channels to build
+         * @param channel:
+         *            the channel
+         * @param size:
+         *            number of samples of the panorama
+         * @return the buffer of the channel, initialized to 0, or null
+         */
+        private FloatBuffer allocate(Set<PanoramaChannel> channels,
+                PanoramaChannel channel, int size) {
+            return channels.contains(channel) ? storage.allocate(size) : null;
+        }
+
+        /**
+         * Method which returns the channels built by the builder
+         * 
+         * @return the channels
+         */
+        public Set<PanoramaChannel> channels() {
+            return Panorama.channels(distance, longitude, latitude, elevation,
+                    slope);
         }
 
         private void check() {
@@ -206,34 +457,182 @@ public final class Panorama {
 
         public Builder setDistanceAt(int x, int y, float distance) {
             check(x, y);
-            this.distance[parameters.linearSampleIndex(x, y)] = distance;
+            if (this.distance != null) {
+                this.distance.put(parameters.linearSampleIndex(x, y), distance);
+            }
             return this;
         }
 
         public Builder setLongitudeAt(int x, int y, float longitude) {
             check(x, y);
-            this.longitude[parameters.linearSampleIndex(x, y)] = longitude;
+            if (this.longitude != null) {
+                this.longitude.put(parameters.linearSampleIndex(x, y), longitude);
+            }
             return this;
         }
 
         public Builder setLatitudeAt(int x, int y, float latitude) {
             check(x, y);
-            this.latitude[parameters.linearSampleIndex(x, y)] = latitude;
+            if (this.latitude != null) {
+                this.latitude.put(parameters.linearSampleIndex(x, y), latitude);
+            }
             return this;
         }
 
         public Builder setElevationAt(int x, int y, float elevation) {
             check(x, y);
-            this.elevation[parameters.linearSampleIndex(x, y)] = elevation;
+            if (this.elevation != null) {
+                this.elevation.put(parameters.linearSampleIndex(x, y), elevation);
+            }
             return this;
         }
 
         public Builder setSlopeAt(int x, int y, float slope) {
             check(x, y);
-            this.slope[parameters.linearSampleIndex(x, y)] = slope;
+            if (this.slope != null) {
+                this.slope.put(parameters.linearSampleIndex(x, y), slope);
+            }
+            return this;
+        }
+
+        /**
+         * Method which copies all the samples of a column of the given
+         * panorama, which must have the same height and contain all the
+         * channels of the builder, into a column of the builder. The
+         * azimuth shift of the copy is the one of the column of the
+         * panorama plus the angle between the azimuths of the two columns
+         *
+         * @param panorama:
+         *            panorama containing the column
+         * @param fromX:
+         *            index of the column in the panorama
+         * @param toX:
+         *            index of the column in the builder
+         * @return the builder
+         */
+        Builder copyColumn(Panorama panorama, int fromX, int toX) {
+            Preconditions.checkArgument(
+                    panorama.parameters.height() == parameters.height()
+                            && panorama.channels().containsAll(channels()));
+            check(toX, 0);
+            panorama.check(fromX, 0);
+            for (int y = 0; y < parameters.height(); y++) {
+                int from = panorama.parameters.linearSampleIndex(fromX, y);
+                int to = parameters.linearSampleIndex(toX, y);
+                copy(panorama.distance, from, distance, to);
+                copy(panorama.longitude, from, longitude, to);
+                copy(panorama.latitude, from, latitude, to);
+                copy(panorama.elevation, from, elevation, to);
+                copy(panorama.slope, from, slope, to);
+            }
+            setAzimuthShift(toX, panorama.azimuthShiftAt(fromX)
+                    + Math2.angularDistance(parameters.azimuthForX(toX),
+                            panorama.parameters.azimuthForX(fromX)));
             return this;
         }
 
+        /**
+         * Method which sets the azimuth shift of a column
+         * 
+         * @param x:
+         *            index of the column
+         * @param shift:
+         *            azimuth shift (in radians)
+         */
+        private void setAzimuthShift(int x, double shift) {
+            if (azimuthShifts == null && shift != 0) {
+                azimuthShifts = new double[parameters.width()];
+            }
+            if (azimuthShifts != null) {
+                azimuthShifts[x] = shift;
+            }
+        }
+
+        /**
+         * Method which returns the azimuth shifts of the panorama being
+         * built
+         * 
+         * @param columns:
+         *            for each column of the panorama, the column of the
+         *            builder it is copied from
+         * @return the azimuth shifts, or null if they are all 0
+         */
+        private double[] azimuthShifts(int[] columns) {
+            double[] shifts = null;
+            for (int x = 0; x < columns.length; x++) {
+                double shift = (azimuthShifts == null ? 0
+                        : azimuthShifts[columns[x]])
+                        + Math2.angularDistance(parameters.azimuthForX(x),
+                                parameters.azimuthForX(columns[x]));
+                if (shift != 0) {
+                    if (shifts == null) {
+                        shifts = new double[columns.length];
+                    }
+                    shifts[x] = shift;
+                }
+            }
+            return shifts;
+        }
+
+        /**
+         * Method which copies a sample of a channel, if it is built
+         * 
+         * @param source
+         * @param from
+         * @param destination:
+         *            the channel, or null if it is not built
+         * @param to
+         */
+        private static void copy(FloatBuffer source, int from,
+                FloatBuffer destination, int to) {
+            if (destination != null) {
+                destination.put(to, source.get(from));
+            }
+        }
+
+        /**
+         * Method which creates a panorama containing a copy of the samples
+         * set so far, in which the column x is a copy of the column
+         * columns[x] of the builder. Unlike build, the builder can still be
+         * used afterwards
+         *
+         * @param columns:
+         *            for each column of the copy, the column of the builder
+         *            it is copied from
+         * @return a copy of the panorama being built
+         */
+        Panorama snapshot(int[] columns) {
+            check();
+            Preconditions.checkArgument(columns.length == parameters.width());
+            return new Panorama(parameters, storage,
+                    snapshot(distance, columns), snapshot(longitude, columns),
+                    snapshot(latitude, columns), snapshot(elevation, columns),
+                    snapshot(slope, columns), azimuthShifts(columns));
+        }
+
+        /**
+         * Method which copies a channel, line by line, like snapshot
+         * 
+         * @param channel:
+         *            the channel, or null if it is not built
+         * @param columns
+         * @return the copy, or null
+         */
+        private FloatBuffer snapshot(FloatBuffer channel, int[] columns) {
+            if (channel == null) {
+                return null;
+            }
+            int width = parameters.width();
+            int size = width * parameters.height();
+            FloatBuffer copy = storage.allocate(size);
+            for (int row = 0; row < size; row += width) {
+                for (int x = 0; x < width; x++) {
+                    copy.put(row + x, channel.get(row + columns[x]));
+                }
+            }
+            return copy;
+        }
+
         /**
          * Method which allows us to create a panorama from the builder
          * 
@@ -242,8 +641,8 @@ public final class Panorama {
         public Panorama build() {
             check();
             calledBuild = true;
-            return new Panorama(parameters, distance, longitude, latitude,
-                    elevation, slope);
+            return new Panorama(parameters, storage, distance, longitude,
+                    latitude, elevation, slope, azimuthShifts);
         }
     }
 }
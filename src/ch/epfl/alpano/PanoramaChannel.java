@@ -0,0 +1,31 @@
+package ch.epfl.alpano;
+
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * Enumeration of the channels of a panorama, i.e. of the values stored for
+ * each of its samples. A panorama can be built with only some of them, the
+ * other ones not using any memory
+ *
+ * @author Saoud Akram (273661)
+ * @author Karim Kabbani (275044)
+ *
+ */
+public enum PanoramaChannel {
+    DISTANCE,
+    LONGITUDE,
+    LATITUDE,
+    ELEVATION,
+    SLOPE;
+
+    /*
+     * All the channels, and the ones used to render a panorama with
+     * ImagePainter.colourPanoramaPainter
+     */
+    public static final Set<PanoramaChannel> ALL = Collections
+            .unmodifiableSet(EnumSet.allOf(PanoramaChannel.class));
+    public static final Set<PanoramaChannel> RENDERING = Collections
+            .unmodifiableSet(EnumSet.of(DISTANCE, SLOPE));
+}
@@ -1,11 +1,21 @@
 package ch.epfl.alpano;
 
+import java.util.Collections;
+import java.util.EnumSet;
 import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
 import java.util.function.DoubleUnaryOperator;
+import java.util.function.IntConsumer;
 
-import ch.epfl.alpano.Panorama.Builder;
 import ch.epfl.alpano.dem.ContinuousElevationModel;
+import ch.epfl.alpano.dem.ElevationAndSlope;
 import ch.epfl.alpano.dem.ElevationProfile;
+import ch.epfl.alpano.dem.MaxElevationPyramid;
 
 /**
  * Class PanoramaComputer: represents a panorama computer
@@ -16,69 +26,579 @@ import ch.epfl.alpano.dem.ElevationProfile;
 public final class PanoramaComputer {
 
     /*
-     * Field:
+     * Number of columns below which a task of the parallel computation is not
+     * split any further
+     */
+    private static final int COLUMNS_PER_TASK = 8;
+
+    /*
+     * Distance between two columns computed by the first level of a
+     * progressive computation, which is divided by 2 at each level
+     */
+    private static final int PROGRESSIVE_STRIDE = 8;
+
+    /*
+     * Coefficient of the term in x^2 of the distance from the ray to the
+     * ground, which takes into account the curvature of the Earth and the
+     * atmospheric refraction (k = 0.13)
+     */
+    static final double CURVATURE = (1 - 0.13)
+            / (2 * Distance.EARTH_RADIUS);
+
+    /*
+     * Length (in meters) of the segments of the horizon of a column
+     */
+    private static final int HORIZON_STEP = 1024;
+
+    /*
+     * Default precision (in meters) to which the roots are improved
+     */
+    public static final double DEFAULT_ROOT_TOLERANCE = 4;
+
+    /*
+     * Fields:
      */
     private final ContinuousElevationModel dem;
+    private final int parallelism;
+
+    /*
+     * Pyramid of the maximum elevations of the DEM, used to accelerate the
+     * ray marching, or null
+     */
+    private final MaxElevationPyramid pyramid;
+
+    /*
+     * True if the intervals containing the roots are searched with the
+     * elevations sampled by the profiles
+     */
+    private final boolean sampledProfiles;
+
+    /*
+     * Method used to improve the roots, and precision (in meters) to which
+     * they are improved
+     */
+    private final RootRefinement rootRefinement;
+    private final double rootTolerance;
+
+    /*
+     * Maximum angle (as a fraction of the angle between two columns)
+     * between the azimuth of a column and the azimuth for which the rays of
+     * the column of the previous panorama which replaces it were traced
+     */
+    private final double columnReuseTolerance;
+
+    /*
+     * Channels of the computed panoramas, and place where they are stored
+     */
+    private final Set<PanoramaChannel> channels;
+    private final PanoramaStorage storage;
+
+    /*
+     * True if the position of the samples, respectively the elevation and
+     * slope of the terrain there, must be computed for the channels
+     */
+    private final boolean positionNeeded;
+    private final boolean terrainNeeded;
+
+    /*
+     * Pool in which the columns are computed, null if the computation is
+     * sequential
+     */
+    private final ForkJoinPool pool;
 
     /**
-     * Constructs a PanoramaComputer from the given continuous DEM
+     * Constructs a PanoramaComputer from the given continuous DEM, which
+     * computes the panoramas sequentially
      * 
      * @param dem
      */
     public PanoramaComputer(ContinuousElevationModel dem) {
+        this(dem, 1);
+    }
+
+    /**
+     * Constructs a PanoramaComputer from the given continuous DEM, which
+     * computes the columns of the panoramas on the given number of threads
+     * 
+     * @param dem
+     * @param parallelism:
+     *            number of threads used to compute a panorama (1 means that
+     *            the panorama is computed sequentially, on the calling thread)
+     * @throws IllegalArgumentException
+     *             if the parallelism is smaller than 1
+     */
+    public PanoramaComputer(ContinuousElevationModel dem, int parallelism) {
+        this(dem, parallelism, null, false, RootRefinement.BISECTION,
+                DEFAULT_ROOT_TOLERANCE, 0, PanoramaChannel.ALL,
+                PanoramaStorage.HEAP);
+    }
+
+    /**
+     * Constructor used by the builder
+     * 
+     * @param dem
+     * @param parallelism
+     * @param pyramid
+     * @param sampledProfiles
+     * @param rootRefinement
+     * @param rootTolerance
+     * @param columnReuseTolerance
+     * @param channels
+     * @param storage
+     */
+    private PanoramaComputer(ContinuousElevationModel dem, int parallelism,
+            MaxElevationPyramid pyramid, boolean sampledProfiles,
+            RootRefinement rootRefinement, double rootTolerance,
+            double columnReuseTolerance, Set<PanoramaChannel> channels,
+            PanoramaStorage storage) {
         this.dem = Objects.requireNonNull(dem);
+        Preconditions.checkArgument(parallelism >= 1);
+        this.parallelism = parallelism;
+        this.pool = parallelism == 1 ? null : new ForkJoinPool(parallelism);
+        this.pyramid = pyramid;
+        this.sampledProfiles = sampledProfiles;
+        this.rootRefinement = Objects.requireNonNull(rootRefinement);
+        Preconditions.checkArgument(rootTolerance > 0);
+        this.rootTolerance = rootTolerance;
+        Preconditions.checkArgument(
+                columnReuseTolerance >= 0 && columnReuseTolerance <= 0.5);
+        this.columnReuseTolerance = columnReuseTolerance;
+        this.channels = Collections.unmodifiableSet(EnumSet.copyOf(channels));
+        this.storage = Objects.requireNonNull(storage);
+        this.terrainNeeded = channels.contains(PanoramaChannel.ELEVATION)
+                || channels.contains(PanoramaChannel.SLOPE);
+        this.positionNeeded = terrainNeeded
+                || channels.contains(PanoramaChannel.LONGITUDE)
+                || channels.contains(PanoramaChannel.LATITUDE);
     }
 
     /**
-     * Method which creates a Panorama from the given parameters
+     * Getter: returns the number of threads used to compute a panorama
+     * 
+     * @return the parallelism of the computer
+     */
+    public int parallelism() {
+        return parallelism;
+    }
+
+    /**
+     * Getter: returns the pyramid used to accelerate the ray marching
+     * 
+     * @return the pyramid of the maximum elevations, or null if the computer
+     *         does not use one
+     */
+    public MaxElevationPyramid pyramid() {
+        return pyramid;
+    }
+
+    /**
+     * Method which creates a Panorama from the given parameters. When the
+     * parallelism is greater than 1, the columns are split into chunks which
+     * are computed (and stolen) by the threads of a fork-join pool. Each
+     * column is only written by one thread, so the result is identical to
+     * the one of the sequential computation
      * 
      * @param parameters:
      *            data which is utilized to create a parameter
      * @return the Panorama constructed from the given parameters
      */
     public Panorama computePanorama(PanoramaParameters parameters) {
+        return computePanorama(parameters, null);
+    }
+
+    /**
+     * Method which creates a Panorama from the given parameters, like
+     * computePanorama(parameters), but copies the columns of the previous
+     * panorama (computed by this computer) whose rays are the same: when
+     * only the azimuth or the field of view changes, for example when the
+     * user pans, only the new columns are traced. The rays of two columns
+     * are the same if the panoramas have the same observer, maximum
+     * distance, height and angle between two columns, and if their azimuths
+     * differ by at most the column reuse tolerance. As a copied column keeps
+     * the shift of its rays (see Panorama.azimuthShiftAt), the tolerance
+     * bounds the total shift, however many times the column was copied
+     * 
+     * @param parameters:
+     *            parameters of the panorama
+     * @param previous:
+     *            previous panorama, or null
+     * @return the Panorama constructed from the given parameters
+     */
+    public Panorama computePanorama(PanoramaParameters parameters,
+            Panorama previous) {
+        return computePanorama(parameters, previous, null);
+    }
+
+    /**
+     * Method which creates a Panorama from the given parameters, like
+     * computePanorama(parameters, previous), progressively: when a progress
+     * consumer is given, every 8th column is computed first, then every 4th,
+     * every 2nd and finally all of them. After each of the first three
+     * levels, the consumer receives an intermediate panorama in which the
+     * columns not computed yet are copies of the nearest computed column on
+     * their left. The columns do not depend on each other, so the final
+     * panorama is identical to the one of the non-progressive computation
+     * 
+     * @param parameters:
+     *            parameters of the panorama
+     * @param previous:
+     *            previous panorama, or null
+     * @param progress:
+     *            consumer of the intermediate panoramas, or null to compute
+     *            the panorama in one go
+     * @return the Panorama constructed from the given parameters
+     */
+    public Panorama computePanorama(PanoramaParameters parameters,
+            Panorama previous, Consumer<Panorama> progress) {
+        return computePanorama(parameters, previous, progress, () -> false,
+                columns -> {
+                });
+    }
+
+    /**
+     * Method which creates a Panorama from the given parameters, like
+     * computePanorama(parameters, previous, progress), but which can be
+     * cancelled and reports the number of columns computed. The computation
+     * checks before each column whether it is cancelled, so that an
+     * abandoned computation stops within the time needed to compute a
+     * column
+     * 
+     * @param parameters:
+     *            parameters of the panorama
+     * @param previous:
+     *            previous panorama, or null
+     * @param progress:
+     *            consumer of the intermediate panoramas, or null to compute
+     *            the panorama in one go
+     * @param cancelled:
+     *            returns true when the computation must stop
+     * @param columnsDone:
+     *            receives the number of columns computed since its last
+     *            call (currently after each column); with a parallelism
+     *            greater than 1, it is called by several threads
+     * @return the Panorama constructed from the given parameters
+     * @throws CancellationException
+     *             if the computation was cancelled
+     */
+    public Panorama computePanorama(PanoramaParameters parameters,
+            Panorama previous, Consumer<Panorama> progress,
+            BooleanSupplier cancelled, IntConsumer columnsDone) {
         Objects.requireNonNull(parameters);
-        int width = parameters.width();
-        int height = parameters.height();
+        Objects.requireNonNull(cancelled);
+        Objects.requireNonNull(columnsDone);
+        Panorama.Builder aBuilder = new Panorama.Builder(parameters, channels,
+                storage);
+        boolean[] done = previous == null ? new boolean[parameters.width()]
+                : reuseColumns(parameters, previous, aBuilder);
+        Computation computation = new Computation(parameters, aBuilder, done,
+                cancelled, columnsDone);
 
-        Builder aBuilder = new Builder(parameters);
+        for (int stride = progress == null ? 1
+                : PROGRESSIVE_STRIDE; stride >= 1; stride /= 2) {
+            if (pool == null) {
+                computeColumns(computation, stride, 0, parameters.width());
+            } else {
+                pool.invoke(new ColumnsTask(computation, stride, 0,
+                        parameters.width()));
+            }
+            for (int x = 0; x < parameters.width(); x += stride) {
+                done[x] = true;
+            }
+            if (stride > 1) {
+                progress.accept(intermediatePanorama(parameters, aBuilder,
+                        done));
+            }
+        }
 
-        for (int x = 0; x < width; x++) {
+        return aBuilder.build();
+    }
 
-            ElevationProfile aProfile = new ElevationProfile(dem,
-                    parameters.observerPosition(), parameters.azimuthForX(x),
-                    parameters.maxDistance());
+    /**
+     * Method which creates an intermediate panorama of a progressive
+     * computation, in which each column not computed yet is a copy of the
+     * nearest computed column on its left
+     * 
+     * @param parameters:
+     *            parameters of the panorama
+     * @param aBuilder:
+     *            builder of the panorama being computed
+     * @param done:
+     *            columns already computed
+     * @return the intermediate panorama
+     */
+    private static Panorama intermediatePanorama(PanoramaParameters parameters,
+            Panorama.Builder aBuilder, boolean[] done) {
+        int[] columns = new int[parameters.width()];
+        int last = 0;
+        for (int x = 0; x < parameters.width(); x++) {
+            if (done[x]) {
+                last = x;
+            }
+            columns[x] = last;
+        }
+        return aBuilder.snapshot(columns);
+    }
 
-            double initRay = 0;
+    /**
+     * Method which copies in the builder the columns of the previous
+     * panorama whose rays are the same as the ones of a column of the new
+     * panorama
+     * 
+     * @param parameters:
+     *            parameters of the new panorama
+     * @param previous:
+     *            previous panorama
+     * @param aBuilder:
+     *            builder of the new panorama
+     * @return an array telling, for each column of the new panorama, if it
+     *         was copied
+     */
+    private boolean[] reuseColumns(PanoramaParameters parameters,
+            Panorama previous, Panorama.Builder aBuilder) {
+        boolean[] reused = new boolean[parameters.width()];
+        PanoramaParameters p = previous.parameters();
+        if (!sameRays(parameters, p)
+                || !previous.channels().containsAll(channels)) {
+            return reused;
+        }
+
+        double step = p.horizontalFieldOfView() / (p.width() - 1);
+        double firstAzimuth = p.centerAzimuth() - p.horizontalFieldOfView() / 2;
+        double maxShift = columnReuseTolerance * step;
+        for (int x = 0; x < parameters.width(); x++) {
+            double previousX = Azimuth.canonicalize(
+                    parameters.azimuthForX(x) - firstAzimuth) / step;
+            // the shift of a copy adds to the one of the copied column, so
+            // the neighbour giving the smallest total shift is chosen
+            int best = -1;
+            double bestShift = Double.POSITIVE_INFINITY;
+            for (int candidate = (int) Math.floor(previousX); candidate <= Math
+                    .ceil(previousX); candidate++) {
+                if (candidate < p.width()) {
+                    double shift = Math.abs(previous.azimuthShiftAt(candidate)
+                            + (candidate - previousX) * step);
+                    if (shift < bestShift) {
+                        best = candidate;
+                        bestShift = shift;
+                    }
+                }
+            }
+            if (best >= 0 && bestShift <= maxShift) {
+                aBuilder.copyColumn(previous, best, x);
+                reused[x] = true;
+            }
+        }
+        return reused;
+    }
+
+    /**
+     * Method which checks that two panoramas have the same observer, maximum
+     * distance and vertical sampling, and the same angle between two
+     * columns, so that their columns having the same azimuth are identical
+     * 
+     * @param p1:
+     *            parameters of the first panorama
+     * @param p2:
+     *            parameters of the second panorama
+     * @return true if the columns of the panoramas can be exchanged
+     */
+    private static boolean sameRays(PanoramaParameters p1,
+            PanoramaParameters p2) {
+        return p1.width() > 1 && p2.width() > 1
+                && p1.observerPosition().longitude() == p2.observerPosition()
+                        .longitude()
+                && p1.observerPosition().latitude() == p2.observerPosition()
+                        .latitude()
+                && p1.observerElevation() == p2.observerElevation()
+                && p1.maxDistance() == p2.maxDistance()
+                && p1.height() == p2.height()
+                && p1.verticalFieldOfView() == p2.verticalFieldOfView()
+                && p1.horizontalFieldOfView() / (p1.width() - 1) == p2
+                        .horizontalFieldOfView() / (p2.width() - 1);
+    }
 
-            for (int y = height - 1; y >= 0; y--) {
-                double altitudeForY = parameters.altitudeForY(y);
-                DoubleUnaryOperator f = rayToGroundDistance(aProfile,
-                        parameters.observerElevation(),
-                        Math.tan(altitudeForY));
+    /**
+     * Method which computes the columns going from x = from (included) to x =
+     * to (excluded) whose index is a multiple of the stride, and stores their
+     * samples in the builder of the computation
+     * 
+     * @param computation:
+     *            computation to which the columns belong
+     * @param stride:
+     *            distance between two computed columns
+     * @param from:
+     *            first column (included)
+     * @param to:
+     *            last column (excluded)
+     * @throws CancellationException
+     *             if the computation is cancelled
+     */
+    private void computeColumns(Computation computation, int stride, int from,
+            int to) {
+        ElevationAndSlope terrain = new ElevationAndSlope();
+        for (int x = from; x < to; x++) {
+            if (x % stride == 0 && !computation.done[x]) {
+                if (computation.cancelled.getAsBoolean()) {
+                    throw new CancellationException();
+                }
+                computeColumn(computation.parameters, computation.aBuilder, x,
+                        terrain);
+                computation.columnsDone.accept(1);
+            }
+        }
+    }
 
-                double x1 = Math2.firstIntervalContainingRoot(f, initRay,
-                        parameters.maxDistance(), 64d);
+    /**
+     * Method which computes the column x of the panorama and stores its
+     * samples in the given builder
+     * 
+     * @param parameters:
+     *            parameters of the panorama
+     * @param aBuilder:
+     *            builder in which the samples are stored
+     * @param x:
+     *            index of the column
+     * @param terrain:
+     *            holder used to compute the elevation and slope of the
+     *            samples
+     */
+    private void computeColumn(PanoramaParameters parameters,
+            Panorama.Builder aBuilder, int x, ElevationAndSlope terrain) {
+        ElevationProfile aProfile = new ElevationProfile(dem,
+                parameters.observerPosition(), parameters.azimuthForX(x),
+                parameters.maxDistance());
 
-                if (x1 != Double.POSITIVE_INFINITY) {
-                    initRay = Math2.improveRoot(f, x1, x1 + 64d, 4d);
+        double[] horizon = horizon(aProfile, parameters);
+        // the intervals are searched with the sampled elevations if
+        // possible, the roots themselves are always improved with the exact
+        // ones
+        RayToGround rays = new RayToGround(aProfile,
+                parameters.observerElevation(), pyramid, sampledProfiles,
+                rootRefinement, rootTolerance);
+        int lastCandidate = horizon.length - 1;
+        double initRay = 0;
 
-                    GeoPoint aPoint = aProfile.positionAt(initRay);
+        for (int y = parameters.height() - 1; y >= 0; y--) {
+            double altitudeForY = parameters.altitudeForY(y);
+            double raySlope = Math.tan(altitudeForY);
 
-                    aBuilder.setDistanceAt(x, y, (float) (initRay
-                            / Math.cos(altitudeForY)));
-                    aBuilder.setLongitudeAt(x, y, (float) aPoint.longitude());
-                    aBuilder.setLatitudeAt(x, y, (float) aPoint.latitude());
-                    aBuilder.setElevationAt(x, y,
-                            (float) dem.elevationAt(aPoint));
-                    aBuilder.setSlopeAt(x, y, (float) dem.slopeAt(aPoint));
-                } else {
-                    break;
+            double minX = initRay;
+            double maxX = parameters.maxDistance();
+            // the rays get higher as y decreases, so the last segment of the
+            // horizon which can be hit only moves towards the observer
+            while (horizon[lastCandidate] < raySlope) {
+                lastCandidate--;
+            }
+            int firstSegment = Math.min((int) (initRay / HORIZON_STEP),
+                    horizon.length - 1);
+            if (lastCandidate < firstSegment) {
+                // the ray passes above the horizon: this row and all the rows
+                // above it are sky
+                break;
+            }
+            int firstCandidate = firstSegment;
+            while (horizon[firstCandidate] < raySlope) {
+                firstCandidate++;
+            }
+
+            // the points before the first candidate cannot be below the
+            // ground, they are skipped without changing the 64 m grid
+            if (firstCandidate > firstSegment) {
+                double safeX = horizonSegmentX(firstCandidate, parameters);
+                while (minX + 64d <= safeX) {
+                    minX += 64d;
+                }
+            }
+            if (lastCandidate + 1 < horizon.length) {
+                maxX = Math.min(maxX,
+                        horizonSegmentX(lastCandidate + 1, parameters) + 64d);
+            }
+
+            rays.setSlope(raySlope);
+            double root = rays.root(minX, maxX);
+
+            if (root != Double.POSITIVE_INFINITY) {
+                initRay = root;
+
+                aBuilder.setDistanceAt(x, y,
+                        (float) (initRay / Math.cos(altitudeForY)));
+                // the position and the terrain are only computed if one of
+                // their channels is built
+                if (positionNeeded) {
+                    double longitude = aProfile.longitudeAt(initRay);
+                    double latitude = aProfile.latitudeAt(initRay);
+                    aBuilder.setLongitudeAt(x, y, (float) longitude);
+                    aBuilder.setLatitudeAt(x, y, (float) latitude);
+                    if (terrainNeeded) {
+                        dem.elevationAndSlopeAt(longitude, latitude, terrain);
+                        aBuilder.setElevationAt(x, y,
+                                (float) terrain.elevation());
+                        aBuilder.setSlopeAt(x, y, (float) terrain.slope());
+                    }
                 }
+            } else {
+                break;
             }
         }
+    }
 
-        return aBuilder.build();
+    /**
+     * Method which computes the horizon of a column: the element k of the
+     * returned array is an upper bound of the slope of the rays which can
+     * hit the terrain on the segment going from horizonSegmentX(k) to
+     * horizonSegmentX(k + 1) meters of the observer. The first element is
+     * infinite, as nothing is known between the observer and the end of the
+     * first segment.
+     * 
+     * The bound is given by the maximum elevation of the terrain under the
+     * segment, read in the pyramid if there is one, or else in the samples
+     * of the DEM crossed by the segment (see ElevationProfile.maxElevations):
+     * evaluating the profile would not give a bound, as a narrow ridge can
+     * lie between two evaluations
+     * 
+     * @param profile:
+     *            altimetric profile of the column
+     * @param parameters:
+     *            parameters of the panorama
+     * @return the slopes of the horizon of the column
+     */
+    private double[] horizon(ElevationProfile profile,
+            PanoramaParameters parameters) {
+        int segments = (parameters.maxDistance() + HORIZON_STEP - 1)
+                / HORIZON_STEP;
+        double ray0 = parameters.observerElevation();
+        double[] horizon = new double[segments];
+        horizon[0] = Double.POSITIVE_INFINITY;
+        double[] maxElevations = pyramid == null
+                ? profile.maxElevations(HORIZON_STEP)
+                : null;
+
+        for (int k = 1; k < segments; k++) {
+            double from = horizonSegmentX(k, parameters);
+            double to = horizonSegmentX(k + 1, parameters);
+            double height = (maxElevations == null
+                    ? pyramid.maxElevationAlong(profile, from, to)
+                    : maxElevations[k]) - ray0;
+            // height / x is monotonous and the curvature term decreasing
+            horizon[k] = Math.max(height / from, height / to)
+                    - CURVATURE * from;
+        }
+        return horizon;
+    }
+
+    /**
+     * Method which returns the position (in meters from the observer) of the
+     * beginning of the segment k of the horizon of a column
+     * 
+     * @param k:
+     *            index of the segment
+     * @param parameters:
+     *            parameters of the panorama
+     * @return the position of the beginning of the segment
+     */
+    private static double horizonSegmentX(int k,
+            PanoramaParameters parameters) {
+        return Math.min((double) k * HORIZON_STEP, parameters.maxDistance());
     }
 
     /**
@@ -99,12 +619,273 @@ public final class PanoramaComputer {
 
         double r0 = ray0;
         double tanAlpha = raySlope;
-        double k = 0.13;
-        double q = (1 - k) / (2 * Distance.EARTH_RADIUS);
 
         return x -> {
             return r0 + x * tanAlpha - profile.elevationAt(x)
-                    + q * Math2.sq(x);
+                    + CURVATURE * Math2.sq(x);
         };
     }
+
+    /**
+     * Class ColumnsTask: fork-join task computing a range of columns of a
+     * panorama. Ranges containing more than COLUMNS_PER_TASK columns to
+     * compute are split in two halves, so that idle threads can steal the
+     * remaining work
+     */
+    private final class ColumnsTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        /*
+         * Fields:
+         */
+        private final Computation computation;
+        private final int stride;
+        private final int from;
+        private final int to;
+
+        /**
+         * Constructs a task computing the columns going from x = from
+         * (included) to x = to (excluded) whose index is a multiple of the
+         * stride
+         * 
+         * @param computation
+         * @param stride
+         * @param from
+         * @param to
+         */
+        private ColumnsTask(Computation computation, int stride, int from,
+                int to) {
+            this.computation = computation;
+            this.stride = stride;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= COLUMNS_PER_TASK * stride) {
+                computeColumns(computation, stride, from, to);
+            } else {
+                int middle = (from + to) >>> 1;
+                invokeAll(new ColumnsTask(computation, stride, from, middle),
+                        new ColumnsTask(computation, stride, middle, to));
+            }
+        }
+    }
+
+    /**
+     * Class Computation: groups what the tasks of the computation of a
+     * panorama share
+     */
+    private static final class Computation {
+
+        /*
+         * Fields:
+         */
+        private final PanoramaParameters parameters;
+        private final Panorama.Builder aBuilder;
+        private final boolean[] done;
+        private final BooleanSupplier cancelled;
+        private final IntConsumer columnsDone;
+
+        /**
+         * Constructs a computation
+         * 
+         * @param parameters:
+         *            parameters of the panorama
+         * @param aBuilder:
+         *            builder in which the samples are stored
+         * @param done:
+         *            columns already computed or copied from a previous
+         *            panorama
+         * @param cancelled:
+         *            returns true when the computation must stop
+         * @param columnsDone:
+         *            receives the number of columns computed
+         */
+        private Computation(PanoramaParameters parameters,
+                Panorama.Builder aBuilder, boolean[] done,
+                BooleanSupplier cancelled, IntConsumer columnsDone) {
+            this.parameters = parameters;
+            this.aBuilder = aBuilder;
+            this.done = done;
+            this.cancelled = cancelled;
+            this.columnsDone = columnsDone;
+        }
+    }
+
+    /**
+     * Class Builder: allows to configure a panorama computer before creating
+     * it
+     * 
+     * @author Saoud Akram (273661)
+     * @author Karim Kabbani (275044)
+     */
+    public static final class Builder {
+
+        /*
+         * Fields:
+         */
+        private final ContinuousElevationModel dem;
+        private int parallelism;
+        private MaxElevationPyramid pyramid;
+        private boolean sampledProfiles;
+        private RootRefinement rootRefinement;
+        private double rootTolerance;
+        private double columnReuseTolerance;
+        private Set<PanoramaChannel> channels;
+        private PanoramaStorage storage;
+
+        /**
+         * Constructs a builder of a sequential computer without pyramid, for
+         * the given continuous DEM
+         * 
+         * @param dem
+         */
+        public Builder(ContinuousElevationModel dem) {
+            this.dem = Objects.requireNonNull(dem);
+            this.parallelism = 1;
+            this.rootRefinement = RootRefinement.BISECTION;
+            this.rootTolerance = DEFAULT_ROOT_TOLERANCE;
+            this.channels = PanoramaChannel.ALL;
+            this.storage = PanoramaStorage.HEAP;
+        }
+
+        /**
+         * Method which sets the number of threads used to compute a panorama
+         * 
+         * @param parallelism
+         * @return the builder
+         * @throws IllegalArgumentException
+         *             if the parallelism is smaller than 1
+         */
+        public Builder setParallelism(int parallelism) {
+            Preconditions.checkArgument(parallelism >= 1);
+            this.parallelism = parallelism;
+            return this;
+        }
+
+        /**
+         * Method which sets the pyramid used to accelerate the ray marching.
+         * It must be built from the discrete DEM of the continuous one
+         * 
+         * @param pyramid:
+         *            pyramid of the maximum elevations, or null to march the
+         *            rays without it
+         * @return the builder
+         */
+        public Builder setPyramid(MaxElevationPyramid pyramid) {
+            this.pyramid = pyramid;
+            return this;
+        }
+
+        /**
+         * Method which chooses whether the intervals containing the roots
+         * are searched with the elevations sampled by the profiles, which is
+         * faster but only approximates the result of the exact search
+         * 
+         * @param sampledProfiles:
+         *            true to use the sampled elevations
+         * @return the builder
+         */
+        public Builder setSampledProfiles(boolean sampledProfiles) {
+            this.sampledProfiles = sampledProfiles;
+            return this;
+        }
+
+        /**
+         * Method which sets the method used to improve the position where a
+         * ray hits the ground
+         * 
+         * @param rootRefinement
+         * @return the builder
+         */
+        public Builder setRootRefinement(RootRefinement rootRefinement) {
+            this.rootRefinement = Objects.requireNonNull(rootRefinement);
+            return this;
+        }
+
+        /**
+         * Method which sets the precision to which the position where a ray
+         * hits the ground is improved. A larger tolerance needs fewer
+         * evaluations of the profile, but gives less accurate distances
+         * 
+         * @param rootTolerance:
+         *            precision (in meters)
+         * @return the builder
+         * @throws IllegalArgumentException
+         *             if the tolerance is not strictly positive
+         */
+        public Builder setRootTolerance(double rootTolerance) {
+            Preconditions.checkArgument(rootTolerance > 0);
+            this.rootTolerance = rootTolerance;
+            return this;
+        }
+
+        /**
+         * Method which sets how far (as a fraction of the angle between two
+         * columns) the azimuth for which the rays of a column of a previous
+         * panorama were traced can be from the azimuth of a new column to be
+         * copied into it. With the default tolerance of 0, only the columns
+         * having exactly the same azimuth are copied; with 0.5, the copied
+         * columns are shifted by at most half a column, even after several
+         * successive copies, so a column whose shift would exceed it is
+         * traced again
+         * 
+         * @param columnReuseTolerance:
+         *            tolerance, between 0 and 0.5
+         * @return the builder
+         * @throws IllegalArgumentException
+         *             if the tolerance is not between 0 and 0.5
+         */
+        public Builder setColumnReuseTolerance(double columnReuseTolerance) {
+            Preconditions.checkArgument(
+                    columnReuseTolerance >= 0 && columnReuseTolerance <= 0.5);
+            this.columnReuseTolerance = columnReuseTolerance;
+            return this;
+        }
+
+        /**
+         * Method which sets the channels of the computed panoramas. The
+         * position of the samples is only computed if one of the longitude,
+         * latitude, elevation and slope channels is built, and the terrain
+         * only if one of the elevation and slope channels is built
+         * 
+         * @param channels:
+         *            the channels, which must contain the distance
+         * @return the builder
+         * @throws IllegalArgumentException
+         *             if the channels do not contain the distance
+         */
+        public Builder setChannels(Set<PanoramaChannel> channels) {
+            Preconditions.checkArgument(
+                    channels.contains(PanoramaChannel.DISTANCE));
+            this.channels = channels;
+            return this;
+        }
+
+        /**
+         * Method which sets where the channels of the computed panoramas are
+         * stored
+         * 
+         * @param storage
+         * @return the builder
+         */
+        public Builder setStorage(PanoramaStorage storage) {
+            this.storage = Objects.requireNonNull(storage);
+            return this;
+        }
+
+        /**
+         * Method which creates the panorama computer
+         * 
+         * @return the panorama computer
+         */
+        public PanoramaComputer build() {
+            return new PanoramaComputer(dem, parallelism, pyramid,
+                    sampledProfiles, rootRefinement, rootTolerance,
+                    columnReuseTolerance, channels, storage);
+        }
+    }
 }
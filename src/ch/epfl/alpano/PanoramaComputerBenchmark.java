@@ -0,0 +1,151 @@
+package ch.epfl.alpano;
+
+import java.io.File;
+import java.io.IOException;
+
+import ch.epfl.alpano.dem.ContinuousElevationModel;
+import ch.epfl.alpano.dem.DiscreteElevationModel;
+import ch.epfl.alpano.dem.HgtDiscreteElevationModel;
+import ch.epfl.alpano.dem.MaxElevationPyramid;
+
+final class PanoramaComputerBenchmark {
+    final static File HGT_FILE = new File("N46E007.hgt");
+
+    final static int IMAGE_WIDTH = 2500;
+    final static int IMAGE_HEIGHT = 800;
+
+    final static double ORIGIN_LON = Math.toRadians(7.65);
+    final static double ORIGIN_LAT = Math.toRadians(46.73);
+    final static int ELEVATION = 600;
+    final static double CENTER_AZIMUTH = Math.toRadians(180);
+    final static double HORIZONTAL_FOV = Math.toRadians(60);
+    final static int MAX_DISTANCE = 100_000;
+
+    final static double PAN = Math.toRadians(10);
+
+    final static int RUNS = 5;
+
+    final static PanoramaParameters PARAMS = new PanoramaParameters(
+            new GeoPoint(ORIGIN_LON, ORIGIN_LAT), ELEVATION, CENTER_AZIMUTH,
+            HORIZONTAL_FOV, MAX_DISTANCE, IMAGE_WIDTH, IMAGE_HEIGHT);
+
+    public static void main(String[] as) throws Exception {
+        try (CountingDEM dDEM = new CountingDEM(
+                new HgtDiscreteElevationModel(HGT_FILE))) {
+            ContinuousElevationModel cDEM = new ContinuousElevationModel(dDEM);
+
+            long start = System.nanoTime();
+            MaxElevationPyramid pyramid = new MaxElevationPyramid(dDEM);
+            System.out.printf("pyramid built in %d ms%n",
+                    (System.nanoTime() - start) / 1_000_000);
+
+            run("plain", new PanoramaComputer(cDEM), dDEM);
+            run("pyramid", new PanoramaComputer.Builder(cDEM)
+                    .setPyramid(pyramid).build(), dDEM);
+            pan(new PanoramaComputer.Builder(cDEM).setPyramid(pyramid)
+                    .setColumnReuseTolerance(0.5).build(), dDEM);
+            progressive(new PanoramaComputer.Builder(cDEM).setPyramid(pyramid)
+                    .build());
+            persistence(new PanoramaComputer.Builder(cDEM)
+                    .setPyramid(pyramid).build().computePanorama(PARAMS));
+        }
+    }
+
+    private static void persistence(Panorama panorama) throws IOException {
+        File file = File.createTempFile("panorama", ".pano");
+        try {
+            for (int i = 0; i < RUNS; ++i) {
+                long start = System.nanoTime();
+                PanoramaFile.write(panorama, file);
+                long write = System.nanoTime() - start;
+
+                start = System.nanoTime();
+                Panorama read = PanoramaFile.read(file);
+                read.distanceAt(IMAGE_WIDTH / 2, IMAGE_HEIGHT / 2);
+                long time = System.nanoTime() - start;
+                System.out.printf(
+                        "file     run %d: %d MB written in %d ms, read in %.2f ms%n",
+                        i, file.length() >> 20, write / 1_000_000,
+                        time / 1e6);
+            }
+        } finally {
+            file.delete();
+        }
+    }
+
+    private static void progressive(PanoramaComputer computer) {
+        for (int i = 0; i < RUNS; ++i) {
+            long start = System.nanoTime();
+            long[] levels = new long[3];
+            int[] level = new int[1];
+            computer.computePanorama(PARAMS, null,
+                    p -> levels[level[0]++] = System.nanoTime() - start);
+            long time = System.nanoTime() - start;
+            System.out.printf(
+                    "progressive run %d: levels at %d, %d, %d ms, final at %d ms%n",
+                    i, levels[0] / 1_000_000, levels[1] / 1_000_000,
+                    levels[2] / 1_000_000, time / 1_000_000);
+        }
+    }
+
+    private static void pan(PanoramaComputer computer, CountingDEM dDEM) {
+        PanoramaParameters panned = new PanoramaParameters(
+                PARAMS.observerPosition(), ELEVATION, CENTER_AZIMUTH + PAN,
+                HORIZONTAL_FOV, MAX_DISTANCE, IMAGE_WIDTH, IMAGE_HEIGHT);
+        Panorama previous = computer.computePanorama(PARAMS);
+        for (int i = 0; i < RUNS; ++i) {
+            dDEM.samples = 0;
+            long start = System.nanoTime();
+            computer.computePanorama(PARAMS);
+            long full = System.nanoTime() - start;
+            long fullSamples = dDEM.samples;
+
+            dDEM.samples = 0;
+            start = System.nanoTime();
+            computer.computePanorama(panned, previous);
+            long pan = System.nanoTime() - start;
+            System.out.printf(
+                    "pan      run %d: %5d ms (full %d ms), %4.1f%% of the samples%n",
+                    i, pan / 1_000_000, full / 1_000_000,
+                    100d * dDEM.samples / fullSamples);
+        }
+    }
+
+    private static void run(String name, PanoramaComputer computer,
+            CountingDEM dDEM) {
+        for (int i = 0; i < RUNS; ++i) {
+            dDEM.samples = 0;
+            long start = System.nanoTime();
+            computer.computePanorama(PARAMS);
+            long time = System.nanoTime() - start;
+            System.out.printf("%-8s run %d: %5d ms, %6.1f samples per ray%n",
+                    name, i, time / 1_000_000,
+                    dDEM.samples / (double) (IMAGE_WIDTH * IMAGE_HEIGHT));
+        }
+    }
+
+    private static final class CountingDEM implements DiscreteElevationModel {
+        private final HgtDiscreteElevationModel dem;
+        private long samples;
+
+        CountingDEM(HgtDiscreteElevationModel dem) {
+            this.dem = dem;
+        }
+
+        @Override
+        public Interval2D extent() {
+            return dem.extent();
+        }
+
+        @Override
+        public double elevationSample(int x, int y) {
+            ++samples;
+            return dem.elevationSample(x, y);
+        }
+
+        @Override
+        public void close() {
+            dem.close();
+        }
+    }
+}
@@ -0,0 +1,335 @@
+package ch.epfl.alpano;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Class PanoramaFile: reads and writes panoramas in a binary file, so that
+ * they do not have to be computed again.
+ *
+ * A file starts with a header of HEADER_BYTES bytes: the magic number MAGIC,
+ * the version of the format, the parameters of the panorama (longitude and
+ * latitude of the observer, center azimuth and horizontal field of view as
+ * doubles, then the elevation of the observer, the maximum distance, the
+ * width and the height as ints) and the set of its channels (an int whose
+ * bit i is set if the channel of ordinal i is present). It is followed by
+ * one block of width * height floats per present channel, in the order of
+ * PanoramaChannel, each stored line by line. Everything is little-endian,
+ * and the blocks are aligned on 4 bytes, so that a file can be mapped in
+ * memory and its blocks used as the channels of a panorama without copying
+ * them
+ *
+ * @author Saoud Akram (273661)
+ * @author Karim Kabbani (275044)
+ *
+ */
+public final class PanoramaFile {
+
+    /*
+     * Magic number and version of the format, size of the header and byte
+     * order of the file
+     */
+    public static final int MAGIC = 0x414C504E;
+    public static final int VERSION = 1;
+    public static final int HEADER_BYTES = 64;
+    private static final ByteOrder ORDER = ByteOrder.LITTLE_ENDIAN;
+
+    /*
+     * Number of floats written at once
+     */
+    private static final int CHUNK_FLOATS = 1 << 14;
+
+    /**
+     * Constructor of the class: As we want the class to be non-instanciable,
+     * the constucted is private and empty
+     */
+    private PanoramaFile() {
+    }
+
+    /**
+     * Method which writes the given panorama in the given file, replacing
+     * it if it exists, in a single pass over its channels
+     *
+     * @param panorama:
+     *            the panorama to write
+     * @param file:
+     *            the file
+     * @throws IOException
+     *             if the file cannot be written
+     */
+    public static void write(Panorama panorama, File file) throws IOException {
+        Set<PanoramaChannel> channels = panorama.channels();
+        try (FileChannel channel = FileChannel.open(file.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            writeFully(channel, header(panorama.parameters(), channels), 0);
+            ByteBuffer chunk = ByteBuffer
+                    .allocateDirect(CHUNK_FLOATS * Float.BYTES).order(ORDER);
+            FloatBuffer floats = chunk.asFloatBuffer();
+            for (PanoramaChannel c : channels) {
+                FloatBuffer buffer = panorama.buffer(c);
+                buffer.clear();
+                while (buffer.hasRemaining()) {
+                    int n = Math.min(CHUNK_FLOATS, buffer.remaining());
+                    FloatBuffer source = buffer.slice();
+                    source.limit(n);
+                    floats.clear();
+                    floats.put(source);
+                    buffer.position(buffer.position() + n);
+                    chunk.clear().limit(n * Float.BYTES);
+                    writeFully(channel, chunk, channel.position());
+                }
+            }
+        }
+    }
+
+    /**
+     * Method which returns the header of a file containing the given
+     * channels of a panorama with the given parameters
+     *
+     * @param p:
+     *            parameters of the panorama
+     * @param channels:
+     *            channels of the panorama
+     * @return the header, ready to be written
+     */
+    private static ByteBuffer header(PanoramaParameters p,
+            Set<PanoramaChannel> channels) {
+        int mask = 0;
+        for (PanoramaChannel c : channels) {
+            mask |= 1 << c.ordinal();
+        }
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ORDER);
+        header.putInt(MAGIC).putInt(VERSION)
+                .putDouble(p.observerPosition().longitude())
+                .putDouble(p.observerPosition().latitude())
+                .putDouble(p.centerAzimuth())
+                .putDouble(p.horizontalFieldOfView())
+                .putInt(p.observerElevation()).putInt(p.maxDistance())
+                .putInt(p.width()).putInt(p.height()).putInt(mask);
+        header.clear();
+        return header;
+    }
+
+    /**
+     * Method which writes all the remaining bytes of the given buffer at the
+     * given position of the file, and moves the position of the file after
+     * them
+     *
+     * @param channel
+     * @param buffer
+     * @param position:
+     *            position in the file of the first byte
+     * @throws IOException
+     */
+    private static void writeFully(FileChannel channel, ByteBuffer buffer,
+            long position) throws IOException {
+        channel.position(position);
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    /**
+     * Class Writer: writes a panorama in a file column by column, e.g. strip
+     * by strip with PanoramaStrips, so that it never has to be entirely in
+     * memory. The columns can be written in any order, those which are not
+     * written contain zeros
+     */
+    public static final class Writer implements Closeable {
+
+        /*
+         * Fields:
+         */
+        private final FileChannel channel;
+        private final PanoramaParameters parameters;
+        private final Set<PanoramaChannel> channels;
+
+        /**
+         * Constructs a writer of the given channels of a panorama with the
+         * given parameters, replacing the file if it exists
+         *
+         * @param file:
+         *            the file
+         * @param parameters:
+         *            parameters of the panorama
+         * @param channels:
+         *            channels of the panorama which are written
+         * @throws IOException
+         *             if the file cannot be written
+         */
+        public Writer(File file, PanoramaParameters parameters,
+                Set<PanoramaChannel> channels) throws IOException {
+            this.parameters = Objects.requireNonNull(parameters);
+            this.channels = Collections.unmodifiableSet(EnumSet.copyOf(
+                    Objects.requireNonNull(channels)));
+            channel = FileChannel.open(file.toPath(),
+                    StandardOpenOption.CREATE, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING);
+            try {
+                writeFully(channel, header(parameters, this.channels), 0);
+                // the file gets its final size at once, filled with zeros
+                channel.write(ByteBuffer.allocate(1),
+                        HEADER_BYTES + blockBytes() * this.channels.size() - 1);
+            } catch (IOException e) {
+                channel.close();
+                throw e;
+            }
+        }
+
+        /**
+         * Method which returns the size of a channel block of the file
+         *
+         * @return the size (in bytes)
+         */
+        private long blockBytes() {
+            return (long) parameters.width() * parameters.height()
+                    * Float.BYTES;
+        }
+
+        /**
+         * Method which writes the columns from (included) to to (excluded)
+         * of the given strip as the columns fromX + from to fromX + to of
+         * the panorama. Its signature is the one of PanoramaStrips.Consumer
+         *
+         * @param strip:
+         *            panorama containing the columns, which must have the
+         *            height and the channels of the file
+         * @param fromX:
+         *            index, in the panorama, of the first column of the
+         *            strip
+         * @param from:
+         *            index of the first column written in the strip
+         * @param to:
+         *            index of the column following the last column written
+         * @throws IOException
+         *             if the file cannot be written
+         * @throws IllegalArgumentException
+         *             if the strip does not fit in the panorama
+         */
+        public void writeColumns(Panorama strip, int fromX, int from, int to)
+                throws IOException {
+            PanoramaParameters s = strip.parameters();
+            Preconditions.checkArgument(s.height() == parameters.height()
+                    && strip.channels().containsAll(channels) && 0 <= from
+                    && from <= to && to <= s.width() && fromX >= 0
+                    && fromX + to <= parameters.width());
+            ByteBuffer row = ByteBuffer.allocate((to - from) * Float.BYTES)
+                    .order(ORDER);
+            FloatBuffer floats = row.asFloatBuffer();
+            long block = HEADER_BYTES;
+            for (PanoramaChannel c : channels) {
+                FloatBuffer buffer = strip.buffer(c);
+                for (int y = 0; y < s.height(); y++) {
+                    int start = y * s.width() + from;
+                    buffer.limit(start + to - from).position(start);
+                    floats.clear();
+                    floats.put(buffer);
+                    row.clear();
+                    writeFully(channel, row, block + ((long) y
+                            * parameters.width() + fromX + from) * Float.BYTES);
+                }
+                block += blockBytes();
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+
+    /**
+     * Method which reads the panorama of the given file. The file is mapped
+     * in memory, and the channels of the panorama are views of it: nothing
+     * is copied, and the samples are only read from the disk when they are
+     * accessed
+     *
+     * @param file:
+     *            the file
+     * @return the panorama, whose storage is MAPPED
+     * @throws IOException
+     *             if the file cannot be read, or is not a valid panorama
+     *             file of this version
+     */
+    public static Panorama read(File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(),
+                StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < HEADER_BYTES) {
+                throw new IOException("truncated panorama file");
+            }
+            ByteBuffer bytes = ByteBuffer.allocate(HEADER_BYTES).order(ORDER);
+            while (bytes.hasRemaining()) {
+                if (channel.read(bytes) < 0) {
+                    throw new IOException("truncated panorama file");
+                }
+            }
+            bytes.flip();
+            if (bytes.getInt() != MAGIC) {
+                throw new IOException("not a panorama file");
+            }
+            int version = bytes.getInt();
+            if (version != VERSION) {
+                throw new IOException(
+                        "unsupported panorama file version " + version);
+            }
+
+            PanoramaParameters p;
+            try {
+                GeoPoint observer = new GeoPoint(bytes.getDouble(),
+                        bytes.getDouble());
+                double centerAzimuth = bytes.getDouble();
+                double horizontalFieldOfView = bytes.getDouble();
+                int observerElevation = bytes.getInt();
+                int maxDistance = bytes.getInt();
+                int width = bytes.getInt();
+                int height = bytes.getInt();
+                p = new PanoramaParameters(observer, observerElevation,
+                        centerAzimuth, horizontalFieldOfView, maxDistance,
+                        width, height);
+            } catch (IllegalArgumentException e) {
+                throw new IOException("invalid panorama parameters", e);
+            }
+            int mask = bytes.getInt();
+            if ((mask & ~((1 << PanoramaChannel.values().length) - 1)) != 0) {
+                throw new IOException("invalid panorama channels");
+            }
+
+            long blockBytes = (long) p.width() * p.height() * Float.BYTES;
+            FloatBuffer[] buffers = new FloatBuffer[PanoramaChannel
+                    .values().length];
+            long position = HEADER_BYTES;
+            for (PanoramaChannel c : PanoramaChannel.values()) {
+                if ((mask & (1 << c.ordinal())) != 0) {
+                    if (position + blockBytes > size) {
+                        throw new IOException("truncated panorama file");
+                    }
+                    // each block is mapped on its own, so that the file
+                    // can be larger than a mapping (2 GB)
+                    buffers[c.ordinal()] = channel
+                            .map(MapMode.READ_ONLY, position, blockBytes)
+                            .order(ORDER).asFloatBuffer();
+                    position += blockBytes;
+                }
+            }
+            if (position != size) {
+                throw new IOException("invalid panorama file size");
+            }
+            return new Panorama(p, PanoramaStorage.MAPPED, buffers[0],
+                    buffers[1], buffers[2], buffers[3], buffers[4]);
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package ch.epfl.alpano;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Enumeration of the places where the channels of a panorama can be stored
+ *
+ * @author Saoud Akram (273661)
+ * @author Karim Kabbani (275044)
+ *
+ */
+public enum PanoramaStorage {
+    /*
+     * Arrays of the Java heap
+     */
+    HEAP,
+
+    /*
+     * Direct buffers, outside of the heap, which are not moved by the
+     * garbage collector
+     */
+    DIRECT,
+
+    /*
+     * Temporary files mapped in memory, which the operating system can write
+     * to the disk when the memory is scarce
+     */
+    MAPPED;
+
+    /**
+     * Method which allocates the storage of a channel, initialized to 0
+     *
+     * @param size:
+     *            number of samples of the channel
+     * @return the storage of the channel
+     * @throws UncheckedIOException
+     *             if the temporary file of a mapped channel cannot be created
+     * @throws IllegalArgumentException
+     *             if the channel is stored outside of the heap and uses more
+     *             bytes than a buffer can contain (Integer.MAX_VALUE)
+     */
+    FloatBuffer allocate(int size) {
+        if (this != HEAP) {
+            Preconditions.checkArgument(
+                    (long) size * Float.BYTES <= Integer.MAX_VALUE);
+        }
+        switch (this) {
+        case DIRECT:
+            return ByteBuffer.allocateDirect(size * Float.BYTES)
+                    .order(ByteOrder.nativeOrder()).asFloatBuffer();
+        case MAPPED:
+            try {
+                File file = File.createTempFile("panorama", ".channel");
+                try (FileChannel channel = FileChannel.open(file.toPath(),
+                        StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                    // the mapping stays valid once the file is closed, and
+                    // on most systems once it is deleted
+                    FloatBuffer buffer = channel
+                            .map(MapMode.READ_WRITE, 0,
+                                    (long) size * Float.BYTES)
+                            .order(ByteOrder.nativeOrder()).asFloatBuffer();
+                    if (!file.delete()) {
+                        file.deleteOnExit();
+                    }
+                    return buffer;
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        default:
+            return FloatBuffer.wrap(new float[size]);
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package ch.epfl.alpano;
+
+import java.io.IOException;
+import java.util.Objects;
+
+/**
+ * Class PanoramaStrips: computes a panorama strip by strip, i.e. as a
+ * sequence of panoramas made of consecutive columns of it, so that panoramas
+ * larger than the memory can be rendered or written to a file. Only one
+ * strip is in memory at a time.
+ *
+ * A strip can contain, on each side, a halo of columns of its neighbouring
+ * strips, so that the computations which need the neighbours of a sample
+ * (e.g. ChannelPainter.maxDistanceToNeighbors) give the same result for the
+ * columns of the strip as for the whole panorama
+ *
+ * @author Saoud Akram (273661)
+ * @author Karim Kabbani (275044)
+ *
+ */
+public final class PanoramaStrips {
+
+    /**
+     * Interface of the consumers of the strips of a panorama
+     */
+    @FunctionalInterface
+    public interface Consumer {
+
+        /**
+         * Method which receives a strip of the panorama, whose columns from
+         * (included) to to (excluded) are the columns fromX + from to
+         * fromX + to of the panorama. The other columns of the strip are
+         * its halo, and are also given to the neighbouring strips
+         *
+         * @param strip:
+         *            panorama containing the strip and its halo
+         * @param fromX:
+         *            index, in the panorama, of the first column of the
+         *            strip panorama
+         * @param from:
+         *            index of the first column of the strip
+         * @param to:
+         *            index of the column following the strip
+         * @throws IOException
+         *             if the strip cannot be written
+         */
+        void accept(Panorama strip, int fromX, int from, int to)
+                throws IOException;
+    }
+
+    /**
+     * Constructor of the class: As we want the class to be non-instanciable,
+     * the constucted is private and empty
+     */
+    private PanoramaStrips() {
+    }
+
+    /**
+     * Method which computes the given panorama strip by strip, from left to
+     * right, and gives each strip to the consumer before computing the next
+     * one
+     *
+     * @param computer:
+     *            computer of the strips, with its channels and storage
+     * @param parameters:
+     *            parameters of the panorama, which must be at least 2
+     *            columns wide
+     * @param stripWidth:
+     *            number of columns of a strip, without its halo (at least 2)
+     * @param halo:
+     *            number of columns of the neighbouring strips computed on
+     *            each side of a strip (0 if the consumer only reads the
+     *            samples of the strip, 1 for maxDistanceToNeighbors)
+     * @param consumer:
+     *            consumer of the strips
+     * @throws IOException
+     *             if the consumer fails
+     * @throws IllegalArgumentException
+     *             if the panorama or the strips are less than 2 columns wide,
+     *             or if the halo is negative
+     */
+    public static void compute(PanoramaComputer computer,
+            PanoramaParameters parameters, int stripWidth, int halo,
+            Consumer consumer) throws IOException {
+        Objects.requireNonNull(computer);
+        Objects.requireNonNull(consumer);
+        Preconditions.checkArgument(
+                parameters.width() >= 2 && stripWidth >= 2 && halo >= 0);
+
+        int width = parameters.width();
+        for (int x = 0; x < width; x += stripWidth) {
+            int to = Math.min(x + stripWidth, width);
+            // a panorama has at least 2 columns, so the last strip can take
+            // one more column of its halo than asked
+            int first = Math.max(0, Math.min(x - halo, to - 2));
+            int last = Math.min(width, to + halo);
+            Panorama strip = computer
+                    .computePanorama(stripParameters(parameters, first, last));
+            consumer.accept(strip, first, x - first, to - first);
+        }
+    }
+
+    /**
+     * Method which returns the parameters of the panorama made of the given
+     * columns of the given panorama, whose rays are the same
+     *
+     * @param parameters:
+     *            parameters of the panorama
+     * @param from:
+     *            index of the first column
+     * @param to:
+     *            index of the column following the last one, at least
+     *            from + 2
+     * @return the parameters of the strip
+     */
+    static PanoramaParameters stripParameters(PanoramaParameters parameters,
+            int from, int to) {
+        double delta = parameters.horizontalFieldOfView()
+                / (parameters.width() - 1);
+        return new PanoramaParameters(parameters.observerPosition(),
+                parameters.observerElevation(),
+                parameters.azimuthForX((from + to - 1) / 2d),
+                delta * (to - from - 1), parameters.maxDistance(), to - from,
+                parameters.height());
+    }
+}
@@ -0,0 +1,376 @@
+package ch.epfl.alpano;
+
+import ch.epfl.alpano.dem.ElevationProfile;
+import ch.epfl.alpano.dem.MaxElevationPyramid;
+
+/**
+ * Class RayToGround: evaluates the distance between the rays of a column of
+ * a panorama and the ground, and finds the first point where a ray hits it.
+ * It computes the same function as PanoramaComputer.rayToGroundDistance and
+ * the same roots as Math2.firstIntervalContainingRoot followed by
+ * Math2.improveRoot, but without lambda and without evaluating the function
+ * twice at the same point, so that the whole search can be inlined. The
+ * evaluator of a column is reused for all its rows by changing the slope of
+ * the ray
+ *
+ * @author Saoud Akram (273661)
+ * @author Karim Kabbani (275044)
+ */
+final class RayToGround {
+
+    /*
+     * Length (in meters) of the intervals in which the roots are searched
+     */
+    static final double STEP = 64;
+
+    /*
+     * Maximum number of steps skipped at once when the ray is above the
+     * terrain given by the pyramid, and tolerance (in meters) kept between
+     * the ray and this terrain
+     */
+    private static final int MAX_JUMP_STEPS = 64;
+    private static final double JUMP_TOLERANCE = 1e-3;
+
+    /*
+     * Fields:
+     */
+    private final ElevationProfile profile;
+    private final double ray0;
+    private final MaxElevationPyramid pyramid;
+    private final boolean sampled;
+    private final RootRefinement refinement;
+    private final double epsilon;
+    private double raySlope;
+
+    /*
+     * Exact distances at the boundaries of the last interval found by the
+     * search, reused to improve its root
+     */
+    private double fFound;
+    private double fFoundNext;
+
+    /**
+     * Constructs the evaluator of the rays of the given profile
+     *
+     * @param profile:
+     *            altimetric profile of the column
+     * @param ray0:
+     *            initial altitude of the rays
+     * @param pyramid:
+     *            pyramid used to skip the intervals above the terrain, or null
+     * @param sampled:
+     *            true if the intervals are searched with the elevations
+     *            sampled by the profile
+     * @param refinement:
+     *            method used to improve the roots
+     * @param epsilon:
+     *            precision (in meters) to which the roots are improved
+     */
+    RayToGround(ElevationProfile profile, double ray0,
+            MaxElevationPyramid pyramid, boolean sampled,
+            RootRefinement refinement, double epsilon) {
+        this.profile = profile;
+        this.ray0 = ray0;
+        this.pyramid = pyramid;
+        this.sampled = sampled;
+        this.refinement = refinement;
+        this.epsilon = epsilon;
+    }
+
+    /**
+     * Method which changes the ray whose distance to the ground is evaluated
+     *
+     * @param raySlope:
+     *            slope of the ray
+     */
+    void setSlope(double raySlope) {
+        this.raySlope = raySlope;
+    }
+
+    /**
+     * Method which returns the distance between the ray and the ground at
+     * the given position, like PanoramaComputer.rayToGroundDistance
+     *
+     * @param x:
+     *            position on the profile
+     * @return the distance (in meters) between the ray and the ground
+     */
+    double distanceAt(double x) {
+        return ray0 + x * raySlope - profile.elevationAt(x)
+                + PanoramaComputer.CURVATURE * Math2.sq(x);
+    }
+
+    /**
+     * Method which returns the distance used to search the intervals
+     * containing a root, computed with the sampled elevations if required
+     *
+     * @param x:
+     *            position on the profile
+     * @return the (approximate) distance between the ray and the ground
+     */
+    private double searchDistanceAt(double x) {
+        return sampled
+                ? ray0 + x * raySlope - profile.sampledElevationAt(x)
+                        + PanoramaComputer.CURVATURE * Math2.sq(x)
+                : distanceAt(x);
+    }
+
+    /**
+     * Method which finds the first point between minX and maxX where the
+     * ray hits the ground: the first interval of length STEP containing a
+     * root is searched, then the root is improved to a precision of epsilon
+     *
+     * @param minX:
+     *            left boundary of the search
+     * @param maxX:
+     *            right boundary of the search
+     * @return the position of the root, or positive infinity if the ray does
+     *         not hit the ground
+     */
+    double root(double minX, double maxX) {
+        Preconditions.checkArgument(maxX >= minX);
+        double x1 = pyramid == null ? firstIntervalContainingRoot(minX, maxX)
+                : acceleratedFirstIntervalContainingRoot(minX, maxX);
+        if (x1 == Double.POSITIVE_INFINITY) {
+            return x1;
+        }
+        if (sampled) {
+            fFound = distanceAt(x1);
+            fFoundNext = distanceAt(x1 + STEP);
+            if (fFound * fFoundNext > 0) {
+                // the sampled elevations found an interval in which the
+                // exact ones do not cross the ray: search it exactly
+                x1 = exactFirstIntervalContainingRoot(minX, maxX);
+                if (x1 == Double.POSITIVE_INFINITY) {
+                    return x1;
+                }
+            }
+        }
+        return refinement == RootRefinement.ILLINOIS
+                ? improveRootIllinois(x1, x1 + STEP)
+                : improveRoot(x1, x1 + STEP);
+    }
+
+    /**
+     * Method which finds the first interval containing a root, like
+     * Math2.firstIntervalContainingRoot with a step of STEP, evaluating the
+     * distance once per point
+     *
+     * @param minX:
+     *            left boundary of the search
+     * @param maxX:
+     *            right boundary of the search
+     * @return the lower boundary of the interval, or positive infinity
+     */
+    private double firstIntervalContainingRoot(double minX, double maxX) {
+        double a = minX;
+        double b = minX + STEP;
+        double fA = searchDistanceAt(a);
+        double fB = searchDistanceAt(b);
+        while (fA * fB > 0 && b <= maxX - STEP) {
+            a = b;
+            b += STEP;
+            fA = fB;
+            fB = searchDistanceAt(b);
+        }
+        fFound = fA;
+        fFoundNext = fB;
+        return fA * fB > 0 ? Double.POSITIVE_INFINITY : a;
+    }
+
+    /**
+     * Method which finds the first interval containing a root like
+     * firstIntervalContainingRoot, with the exact distance
+     *
+     * @param minX:
+     *            left boundary of the search
+     * @param maxX:
+     *            right boundary of the search
+     * @return the lower boundary of the interval, or positive infinity
+     */
+    private double exactFirstIntervalContainingRoot(double minX,
+            double maxX) {
+        double a = minX;
+        double b = minX + STEP;
+        double fA = distanceAt(a);
+        double fB = distanceAt(b);
+        while (fA * fB > 0 && b <= maxX - STEP) {
+            a = b;
+            b += STEP;
+            fA = fB;
+            fB = distanceAt(b);
+        }
+        fFound = fA;
+        fFoundNext = fB;
+        return fA * fB > 0 ? Double.POSITIVE_INFINITY : a;
+    }
+
+    /**
+     * Method which finds the first interval containing a root like
+     * firstIntervalContainingRoot. When the pyramid shows that the ray is
+     * above the terrain over several steps, they are skipped without
+     * evaluating the distance. The skipped points are the ones of the same
+     * grid, so the result is identical
+     *
+     * @param minX:
+     *            left boundary of the search
+     * @param maxX:
+     *            right boundary of the search
+     * @return the lower boundary of the interval, or positive infinity
+     */
+    private double acceleratedFirstIntervalContainingRoot(double minX,
+            double maxX) {
+        double a = minX;
+        double fA = Double.NaN;
+        int steps = MAX_JUMP_STEPS;
+
+        while (true) {
+            if (steps > 1) {
+                double b = a;
+                for (int i = 0; i < steps; i++) {
+                    b += STEP;
+                }
+                if (b <= maxX - STEP && isAboveTerrain(a, b)) {
+                    a = b;
+                    fA = Double.NaN;
+                    steps = Math.min(2 * steps, MAX_JUMP_STEPS);
+                } else {
+                    steps /= 2;
+                }
+                continue;
+            }
+
+            double b = a + STEP;
+            if (Double.isNaN(fA)) {
+                fA = searchDistanceAt(a);
+            }
+            double fB = searchDistanceAt(b);
+            if (fA * fB <= 0) {
+                fFound = fA;
+                fFoundNext = fB;
+                return a;
+            } else if (b > maxX - STEP) {
+                return Double.POSITIVE_INFINITY;
+            }
+            a = b;
+            fA = fB;
+            steps = 2;
+        }
+    }
+
+    /**
+     * Method which checks, using the pyramid, that the ray is above the
+     * terrain between the two given positions of the profile
+     *
+     * @param from:
+     *            first position
+     * @param to:
+     *            last position
+     * @return true if the ray is certainly above the terrain
+     */
+    private boolean isAboveTerrain(double from, double to) {
+        // the altitude of the ray is a convex function of x
+        double lowest = Math.max(from, Math.min(to,
+                -raySlope / (2 * PanoramaComputer.CURVATURE)));
+        double minRay = ray0 + lowest * raySlope
+                + PanoramaComputer.CURVATURE * Math2.sq(lowest);
+        return minRay > pyramid.maxElevationAlong(profile, from, to)
+                + JUMP_TOLERANCE;
+    }
+
+    /**
+     * Method which improves the root contained in the given interval by
+     * dichotomy, like Math2.improveRoot with a precision of epsilon, with
+     * the exact distance evaluated once per point. The distances at the
+     * boundaries are the ones found by the search
+     *
+     * @param x1:
+     *            lower boundary of the interval
+     * @param x2:
+     *            upper boundary of the interval
+     * @return the lower boundary of the interval of size epsilon containing
+     *         the root
+     */
+    private double improveRoot(double x1, double x2) {
+        double a = x1;
+        double b = x2;
+        double fA = fFound;
+        if (fA == 0) {
+            return a;
+        }
+        double fB = fFoundNext;
+        if (fB == 0) {
+            return b;
+        }
+
+        Preconditions.checkArgument(fA * fB < 0);
+        while (Math.abs(b - a) > epsilon) {
+            double c = (a + b) / 2;
+            double fC = distanceAt(c);
+            if (fC == 0) {
+                return c;
+            } else if (fC * fA > 0) {
+                a = c;
+                fA = fC;
+            } else if (fC * fB > 0) {
+                b = c;
+                fB = fC;
+            }
+        }
+        return a < b ? a : b;
+    }
+
+    /**
+     * Method which improves the root contained in the given interval like
+     * Math2.improveRootIllinois with a precision of epsilon. The distances
+     * at the boundaries are the ones found by the search
+     *
+     * @param x1:
+     *            lower boundary of the interval
+     * @param x2:
+     *            upper boundary of the interval
+     * @return the lower boundary of the interval of size epsilon containing
+     *         the root
+     */
+    private double improveRootIllinois(double x1, double x2) {
+        double a = x1;
+        double b = x2;
+        double fA = fFound;
+        if (fA == 0) {
+            return a;
+        }
+        double fB = fFoundNext;
+        if (fB == 0) {
+            return b;
+        }
+
+        Preconditions.checkArgument(fA * fB < 0);
+        // 1 if b was kept by the last iteration, -1 if a was
+        int kept = 0;
+        while (b - a > epsilon) {
+            double c = (a * fB - b * fA) / (fB - fA);
+            if (!(c > a && c < b)) {
+                c = (a + b) / 2;
+            }
+            double fC = distanceAt(c);
+            if (fC == 0) {
+                return c;
+            } else if (fC * fA > 0) {
+                a = c;
+                fA = fC;
+                if (kept == 1) {
+                    fB /= 2;
+                }
+                kept = 1;
+            } else {
+                b = c;
+                fB = fC;
+                if (kept == -1) {
+                    fA /= 2;
+                }
+                kept = -1;
+            }
+        }
+        return a;
+    }
+}
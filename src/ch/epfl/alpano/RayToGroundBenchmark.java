@@ -0,0 +1,79 @@
+package ch.epfl.alpano;
+
+import java.io.File;
+import java.util.function.DoubleUnaryOperator;
+
+import ch.epfl.alpano.dem.ContinuousElevationModel;
+import ch.epfl.alpano.dem.ElevationProfile;
+import ch.epfl.alpano.dem.HgtDiscreteElevationModel;
+
+/*
+ * Run with -XX:+UnlockDiagnosticVMOptions -XX:+PrintInlining to check that
+ * RayToGround.distanceAt is inlined in RayToGround.root
+ */
+final class RayToGroundBenchmark {
+    final static File HGT_FILE = new File("N46E007.hgt");
+
+    final static GeoPoint ORIGIN = new GeoPoint(Math.toRadians(7.65),
+            Math.toRadians(46.73));
+    final static int ELEVATION = 600;
+    final static int MAX_DISTANCE = 100_000;
+    final static int PROFILES = 500;
+    final static int ROWS = 200;
+    final static int RUNS = 5;
+
+    public static void main(String[] as) throws Exception {
+        try (HgtDiscreteElevationModel dDEM = new HgtDiscreteElevationModel(
+                HGT_FILE)) {
+            ContinuousElevationModel cDEM = new ContinuousElevationModel(dDEM);
+            ElevationProfile[] profiles = new ElevationProfile[PROFILES];
+            for (int i = 0; i < PROFILES; ++i) {
+                profiles[i] = new ElevationProfile(cDEM, ORIGIN,
+                        Math.PI * 2 * i / PROFILES, MAX_DISTANCE);
+            }
+
+            for (int run = 0; run < RUNS; ++run) {
+                double lambdaSum = 0, evaluatorSum = 0;
+                long start = System.nanoTime();
+                for (ElevationProfile p : profiles) {
+                    for (int y = 0; y < ROWS; ++y) {
+                        DoubleUnaryOperator f = PanoramaComputer
+                                .rayToGroundDistance(p, ELEVATION,
+                                        raySlope(y));
+                        double x1 = Math2.firstIntervalContainingRoot(f, 0,
+                                MAX_DISTANCE, 64);
+                        if (x1 != Double.POSITIVE_INFINITY) {
+                            lambdaSum += Math2.improveRoot(f, x1, x1 + 64, 4);
+                        }
+                    }
+                }
+                long lambdaTime = System.nanoTime() - start;
+
+                start = System.nanoTime();
+                for (ElevationProfile p : profiles) {
+                    RayToGround rays = new RayToGround(p, ELEVATION, null,
+                            false, RootRefinement.BISECTION, 4);
+                    for (int y = 0; y < ROWS; ++y) {
+                        rays.setSlope(raySlope(y));
+                        double root = rays.root(0, MAX_DISTANCE);
+                        if (root != Double.POSITIVE_INFINITY) {
+                            evaluatorSum += root;
+                        }
+                    }
+                }
+                long evaluatorTime = System.nanoTime() - start;
+
+                System.out.printf(
+                        "run %d: lambda %.1f us/ray, RayToGround %.1f us/ray (%s)%n",
+                        run, lambdaTime / (1e3 * PROFILES * ROWS),
+                        evaluatorTime / (1e3 * PROFILES * ROWS),
+                        lambdaSum == evaluatorSum ? "same roots"
+                                : "different roots");
+            }
+        }
+    }
+
+    private static double raySlope(int y) {
+        return Math.tan(Math.toRadians(-2 + 4d * y / ROWS));
+    }
+}
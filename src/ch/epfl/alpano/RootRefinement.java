@@ -0,0 +1,22 @@
+package ch.epfl.alpano;
+
+/**
+ * Enumeration of the methods used by the panorama computer to improve the
+ * position where a ray hits the ground, once an interval of 64 m containing
+ * it is found
+ *
+ * @author Saoud Akram (273661)
+ * @author Karim Kabbani (275044)
+ *
+ */
+public enum RootRefinement {
+    /*
+     * Dichotomy, like Math2.improveRoot
+     */
+    BISECTION,
+
+    /*
+     * Illinois false position, like Math2.improveRootIllinois
+     */
+    ILLINOIS;
+}
@@ -6,6 +6,7 @@ import ch.epfl.alpano.Distance;
 import ch.epfl.alpano.GeoPoint;
 import ch.epfl.alpano.Interval2D;
 import ch.epfl.alpano.Math2;
+import ch.epfl.alpano.Preconditions;
 
 /**
  * Class ContinuousElevationModel: reprsents a continous DEM obtained by
@@ -28,6 +29,19 @@ public final class ContinuousElevationModel {
     private final static double DISTANCE = Distance
             .toMeters(1.0 / DiscreteElevationModel.SAMPLES_PER_RADIAN);
 
+    /*
+     * Holder of each thread, whose buffer is used by slopeAt to read the
+     * samples without allocating them at each call
+     */
+    private static final ThreadLocal<ElevationAndSlope> HOLDER = ThreadLocal
+            .withInitial(ElevationAndSlope::new);
+
+    /*
+     * Cache of the slopes of the samples, or null if the slopes are computed
+     * each time they are needed
+     */
+    private final SlopeCache slopeCache;
+
     /**
      * Constructor of the class
      * 
@@ -35,8 +49,42 @@ public final class ContinuousElevationModel {
      *            DEM from which the Continuous Model Elevation is constructed
      */
     public ContinuousElevationModel(DiscreteElevationModel dem) {
+        this(dem, 0);
+    }
+
+    /**
+     * Constructor of the class, which allows to cache the slopes of the
+     * samples. The slopes are then computed once per block of 256x256
+     * samples, stored as floats, and shared by all the panoramas computed
+     * with this model, the oldest blocks being dropped when the cache is full
+     * 
+     * @param dem:
+     *            DEM from which the Continuous Model Elevation is constructed
+     * @param slopeCacheBytes:
+     *            maximum memory (in bytes) used by the cached slopes, 0 if
+     *            the slopes must not be cached
+     * @throws IllegalArgumentException
+     *             if the memory is neither 0 nor enough for a block of
+     *             slopes (256 KB)
+     */
+    public ContinuousElevationModel(DiscreteElevationModel dem,
+            long slopeCacheBytes) {
         Objects.requireNonNull(dem);
+        Preconditions.checkArgument(slopeCacheBytes == 0
+                || slopeCacheBytes >= SlopeCache.BLOCK_BYTES);
         this.dem = dem;
+        this.slopeCache = slopeCacheBytes == 0 ? null
+                : new SlopeCache(this, slopeCacheBytes);
+    }
+
+    /**
+     * Method which returns the memory used by the cache of the slopes
+     * 
+     * @return the memory used by the cached slopes (in bytes), 0 if the
+     *         slopes are not cached
+     */
+    public long slopeCacheMemory() {
+        return slopeCache == null ? 0 : slopeCache.memoryUsage();
     }
 
     public void close() throws Exception {
@@ -51,6 +99,76 @@ public final class ContinuousElevationModel {
         return dem.extent().contains(x, y) ? dem.elevationSample(x, y) : 0;
     }
 
+    /**
+     * Method which reads the elevation samples of a square of indices, whose
+     * bottom left corner is (x, y), like DiscreteElevationModel
+     * .elevationSamples. The samples outside of the extent are at 0 m
+     * 
+     * @param x:
+     *            index of the first column
+     * @param y:
+     *            index of the first row
+     * @param size:
+     *            number of samples per side of the square
+     * @param samples:
+     *            array in which the elevations are stored
+     */
+    void elevationSamples(int x, int y, int size, double[] samples) {
+        Interval2D extent = dem.extent();
+        if (extent.contains(x, y)
+                && extent.contains(x + size - 1, y + size - 1)) {
+            dem.elevationSamples(x, y, size, size, samples);
+        } else {
+            int k = 0;
+            for (int j = 0; j < size; ++j) {
+                for (int i = 0; i < size; ++i) {
+                    samples[k++] = elevationSample(x + i, y + j);
+                }
+            }
+        }
+    }
+
+    /**
+     * Method which returns the maximum elevation of the samples of a
+     * rectangle of indices, whose bottom left corner is (x, y), the samples
+     * outside of the extent being at 0 m. As the elevation of a point is
+     * interpolated between the four samples of its square, it is an upper
+     * bound of the elevation of the points of the squares of the rectangle
+     * 
+     * @param x:
+     *            index of the first column
+     * @param y:
+     *            index of the first row
+     * @param width:
+     *            number of columns
+     * @param height:
+     *            number of rows
+     * @param samples:
+     *            array, of at least width * height elements, in which the
+     *            samples are read
+     * @return the maximum elevation of the samples (in meters)
+     */
+    double maxElevationSample(int x, int y, int width, int height,
+            double[] samples) {
+        // only the part of the rectangle in the extent is read
+        Interval2D extent = dem.extent();
+        int xFrom = Math.max(x, extent.iX().includedFrom());
+        int xTo = Math.min(x + width - 1, extent.iX().includedTo());
+        int yFrom = Math.max(y, extent.iY().includedFrom());
+        int yTo = Math.min(y + height - 1, extent.iY().includedTo());
+        double max = xTo - xFrom + 1 < width || yTo - yFrom + 1 < height ? 0
+                : Double.NEGATIVE_INFINITY;
+        if (xFrom <= xTo && yFrom <= yTo) {
+            int size = (xTo - xFrom + 1) * (yTo - yFrom + 1);
+            dem.elevationSamples(xFrom, yFrom, xTo - xFrom + 1,
+                    yTo - yFrom + 1, samples);
+            for (int k = 0; k < size; ++k) {
+                max = Math.max(max, samples[k]);
+            }
+        }
+        return max;
+    }
+
     /**
      * Method which determines the elevation at a given point in Earth using
      * bilinear n
@@ -61,36 +179,65 @@ public final class ContinuousElevationModel {
      *         interpolation
      */
     public double elevationAt(GeoPoint p) {
-        double x = DiscreteElevationModel.sampleIndex(p.longitude());
-        double y = DiscreteElevationModel.sampleIndex(p.latitude());
+        return elevationAt(p.longitude(), p.latitude());
+    }
+
+    /**
+     * Method which determines the elevation at the point of given longitude
+     * and latitude, like elevationAt(GeoPoint), without needing a GeoPoint
+     * 
+     * @param longitude:
+     *            longitude of the point (in radians)
+     * @param latitude:
+     *            latitude of the point (in radians)
+     * @return the elevation at the point obtained by bilinear interpolation
+     */
+    public double elevationAt(double longitude, double latitude) {
+        double x = DiscreteElevationModel.sampleIndex(longitude);
+        double y = DiscreteElevationModel.sampleIndex(latitude);
         int xf = (int) Math.floor(x);
         int yf = (int) Math.floor(y);
-        double p11 = elevationSample(xf, yf);
-        double p12 = elevationSample(xf, yf + 1);
-        double p21 = elevationSample(xf + 1, yf);
-        double p22 = elevationSample(xf + 1, yf + 1);
-        return Math2.bilerp(p11, p21, p12, p22, x - xf, y - yf);
+        Interval2D extent = dem.extent();
+        if (extent.contains(xf, yf) && extent.contains(xf + 1, yf + 1)) {
+            return dem.interpolatedElevation(xf, yf, x - xf, y - yf);
+        }
+        return Math2.bilerp(elevationSample(xf, yf),
+                elevationSample(xf + 1, yf), elevationSample(xf, yf + 1),
+                elevationSample(xf + 1, yf + 1), x - xf, y - yf);
     }
 
     /**
-     * Private method which computes the slope of a DEM
+     * Method which computes the slope of a sample of a DEM
      * 
-     * @param x:
-     *            int variable which corresponds to the longitude of the point
-     *            (floored)
-     * @param y:
-     *            int variable which corresponds to the latitude of the point
-     *            (floored)
+     * @param samples:
+     *            elevation samples of a square, as read by elevationSamples
+     * @param k:
+     *            index of the sample whose slope is computed in the array
+     * @param stride:
+     *            number of samples per line of the square
      * @return the slope at a given point
      */
-    private double sampleSlope(int x, int y) {
-        double e = elevationSample(x, y);
-        double dZaSQUARED = Math2.sq(elevationSample(x, y + 1) - e);
-        double dZbSQUARED = Math2.sq(elevationSample(x + 1, y) - e);
+    static double sampleSlope(double[] samples, int k, int stride) {
+        double e = samples[k];
+        double dZaSQUARED = Math2.sq(samples[k + stride] - e);
+        double dZbSQUARED = Math2.sq(samples[k + 1] - e);
         return Math.acos(DISTANCE
                 / Math.sqrt((Math2.sq(DISTANCE) + dZaSQUARED + dZbSQUARED)));
     }
 
+    /**
+     * Method which computes the slope of the sample at the given index
+     * 
+     * @param x
+     * @param y
+     * @return the slope of the sample
+     */
+    double sampleSlope(int x, int y) {
+        double[] samples = HOLDER.get().samples;
+        elevationSamples(x, y, 2, samples);
+        return sampleSlope(samples, 0, 2);
+    }
+
     /**
      * Method which returns the slope of a continuous elevation model
      * 
@@ -100,20 +247,98 @@ public final class ContinuousElevationModel {
      * @return slope of a continuous elevation model.
      */
     public double slopeAt(GeoPoint p) {
-        double x = DiscreteElevationModel.sampleIndex(p.longitude());
-        double y = DiscreteElevationModel.sampleIndex(p.latitude());
+        return slopeAt(p.longitude(), p.latitude());
+    }
+
+    /**
+     * Method which returns the slope at the point of given longitude and
+     * latitude, like slopeAt(GeoPoint), without needing a GeoPoint
+     * 
+     * @param longitude:
+     *            longitude of the point (in radians)
+     * @param latitude:
+     *            latitude of the point (in radians)
+     * @return the slope at the point
+     */
+    public double slopeAt(double longitude, double latitude) {
+        double x = DiscreteElevationModel.sampleIndex(longitude);
+        double y = DiscreteElevationModel.sampleIndex(latitude);
 
         int xf = (int) Math.floor(x);
         int yf = (int) Math.floor(y);
 
-        double[] slopes = new double[4];
+        if (slopeCache != null) {
+            return Math2.bilerp(slopeCache.sampleSlope(xf, yf),
+                    slopeCache.sampleSlope(xf + 1, yf),
+                    slopeCache.sampleSlope(xf, yf + 1),
+                    slopeCache.sampleSlope(xf + 1, yf + 1), x - xf, y - yf);
+        }
+
+        // the samples are read in the buffer of the holder of the thread
+        ElevationAndSlope holder = HOLDER.get();
+        double[] samples = holder.samples;
+        elevationSamples(xf, yf, 3, samples);
+
+        return Math2.bilerp(sampleSlope(samples, 0, 3),
+                sampleSlope(samples, 1, 3), sampleSlope(samples, 3, 3),
+                sampleSlope(samples, 4, 3), x - xf, y - yf);
+    }
+
+    /**
+     * Method which computes both the elevation and the slope at a given
+     * point, from a single read of the 3x3 square of samples around it (or of
+     * the 2x2 one if the slopes are cached). The results are identical to
+     * the ones of elevationAt and slopeAt, and are stored in the given
+     * holder, which avoids any allocation
+     * 
+     * @param p:
+     *            GeoPoint for which the elevation and the slope are computed
+     * @param holder:
+     *            holder in which the results are stored
+     */
+    public void elevationAndSlopeAt(GeoPoint p, ElevationAndSlope holder) {
+        elevationAndSlopeAt(p.longitude(), p.latitude(), holder);
+    }
+
+    /**
+     * Method which computes both the elevation and the slope at the point of
+     * given longitude and latitude, like elevationAndSlopeAt(GeoPoint,
+     * ElevationAndSlope), without needing a GeoPoint
+     * 
+     * @param longitude:
+     *            longitude of the point (in radians)
+     * @param latitude:
+     *            latitude of the point (in radians)
+     * @param holder:
+     *            holder in which the results are stored
+     */
+    public void elevationAndSlopeAt(double longitude, double latitude,
+            ElevationAndSlope holder) {
+        double x = DiscreteElevationModel.sampleIndex(longitude);
+        double y = DiscreteElevationModel.sampleIndex(latitude);
+
+        int xf = (int) Math.floor(x);
+        int yf = (int) Math.floor(y);
+
+        double[] samples = holder.samples;
+
+        if (slopeCache != null) {
+            elevationSamples(xf, yf, 2, samples);
+            holder.elevation = Math2.bilerp(samples[0], samples[1], samples[2],
+                    samples[3], x - xf, y - yf);
+            holder.slope = Math2.bilerp(slopeCache.sampleSlope(xf, yf),
+                    slopeCache.sampleSlope(xf + 1, yf),
+                    slopeCache.sampleSlope(xf, yf + 1),
+                    slopeCache.sampleSlope(xf + 1, yf + 1), x - xf, y - yf);
+            return;
+        }
 
-        slopes[0] = sampleSlope(xf, yf);
-        slopes[1] = sampleSlope(xf, yf + 1);
-        slopes[2] = sampleSlope(xf + 1, yf);
-        slopes[3] = sampleSlope(xf + 1, yf + 1);
+        elevationSamples(xf, yf, 3, samples);
 
-        return Math2.bilerp(slopes[0], slopes[2], slopes[1], slopes[3], x - xf,
-                y - yf);
+        holder.elevation = Math2.bilerp(samples[0], samples[1], samples[3],
+                samples[4], x - xf, y - yf);
+        holder.slope = Math2.bilerp(sampleSlope(samples, 0, 3),
+                sampleSlope(samples, 1, 3), sampleSlope(samples, 3, 3),
+                sampleSlope(samples, 4, 3), x - xf, y - yf);
     }
 }
@@ -50,6 +50,85 @@ public interface DiscreteElevationModel extends AutoCloseable {
      */
     public double elevationSample(int x, int y);
 
+    /**
+     * Method which reads the elevation samples of a rectangle of indices,
+     * whose bottom left corner is (x, y). The sample (x + i, y + j) is stored
+     * at index j * width + i of the given array. The indices are validated
+     * once for the whole rectangle, so that the implementations can then
+     * read their samples directly
+     * 
+     * @param x:
+     *            index of the first column
+     * @param y:
+     *            index of the first row
+     * @param width:
+     *            number of columns
+     * @param height:
+     *            number of rows
+     * @param samples:
+     *            array in which the elevations (in meters) are stored
+     * @throws IllegalArgumentException
+     *             if the rectangle is empty or not in the extent, or if the
+     *             array is too small
+     */
+    public default void elevationSamples(int x, int y, int width, int height,
+            double[] samples) {
+        checkSamplesRectangle(this, x, y, width, height, samples);
+        int k = 0;
+        for (int j = 0; j < height; ++j) {
+            for (int i = 0; i < width; ++i) {
+                samples[k++] = elevationSample(x + i, y + j);
+            }
+        }
+    }
+
+    /**
+     * Method which interpolates bilinearly the four samples of the square
+     * whose bottom left corner is (x, y), like Math2.bilerp. The indices are
+     * validated once, and no array is needed to read the samples
+     * 
+     * @param x:
+     *            index of the first column
+     * @param y:
+     *            index of the first row
+     * @param dx:
+     *            position between the two columns (between 0 and 1)
+     * @param dy:
+     *            position between the two rows (between 0 and 1)
+     * @return the interpolated elevation (in meters)
+     * @throws IllegalArgumentException
+     *             if the square is not in the extent
+     */
+    public default double interpolatedElevation(int x, int y, double dx,
+            double dy) {
+        Preconditions.checkArgument(extent().contains(x, y)
+                && extent().contains(x + 1, y + 1));
+        return Math2.bilerp(elevationSample(x, y), elevationSample(x + 1, y),
+                elevationSample(x, y + 1), elevationSample(x + 1, y + 1), dx,
+                dy);
+    }
+
+    /**
+     * Method which checks the arguments of elevationSamples
+     * 
+     * @param dem
+     * @param x
+     * @param y
+     * @param width
+     * @param height
+     * @param samples
+     * @throws IllegalArgumentException
+     *             if the rectangle is empty or not in the extent of the DEM,
+     *             or if the array is too small
+     */
+    public static void checkSamplesRectangle(DiscreteElevationModel dem, int x, int y,
+            int width, int height, double[] samples) {
+        Preconditions.checkArgument(width > 0 && height > 0
+                && dem.extent().contains(x, y)
+                && dem.extent().contains(x + width - 1, y + height - 1)
+                && samples.length >= width * height);
+    }
+
     default DiscreteElevationModel union(DiscreteElevationModel that) {
         Preconditions
                 .checkArgument(this.extent().isUnionableWith(that.extent()));
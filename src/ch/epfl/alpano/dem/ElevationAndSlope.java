@@ -0,0 +1,44 @@
+package ch.epfl.alpano.dem;
+
+/**
+ * Class ElevationAndSlope: mutable holder of the elevation and the slope of
+ * a point, filled by ContinuousElevationModel.elevationAndSlopeAt. It also
+ * contains the buffer in which the samples around the point are read, so
+ * that reusing a holder does not allocate anything. A holder must not be
+ * shared between threads
+ *
+ * @author Saoud Akram (273661)
+ * @author Karim Kabbani (275044)
+ *
+ */
+public final class ElevationAndSlope {
+
+    /*
+     * Samples of the 3x3 square around the last point
+     */
+    final double[] samples = new double[9];
+
+    /*
+     * Elevation (in meters) and slope (in radians) of the last point
+     */
+    double elevation;
+    double slope;
+
+    /**
+     * Getter: returns the elevation of the last point
+     *
+     * @return the elevation in meters
+     */
+    public double elevation() {
+        return elevation;
+    }
+
+    /**
+     * Getter: returns the slope of the last point
+     *
+     * @return the slope in radians
+     */
+    public double slope() {
+        return slope;
+    }
+}
@@ -19,6 +19,24 @@ import static java.lang.Math.asin;
  */
 public final class ElevationProfile {
 
+    /*
+     * Distance (in meters) between two of the positions whose longitude and
+     * latitude are computed exactly. Between them, both are interpolated
+     * linearly
+     */
+    static final int POSITION_SPACING = 4096;
+
+    /*
+     * Distance (in meters) between two of the elevations stored by
+     * sampledElevationAt
+     */
+    public static final double SAMPLING_STEP = 64;
+
+    /*
+     * Number of elevations sampled at once when the strip is extended
+     */
+    private static final int SAMPLING_CHUNK = 256;
+
     /*
      * Continuous elevation model on which the elevation profile is based on
      */
@@ -60,6 +78,13 @@ public final class ElevationProfile {
      */
     private double[] phi;
 
+    /*
+     * Elevations sampled every SAMPLING_STEP meters, and number of them
+     * already computed. The strip is created the first time it is used
+     */
+    private float[] strip;
+    private int sampledCount;
+
     /**
      * Constructor of the class
      * 
@@ -148,6 +173,46 @@ public final class ElevationProfile {
      */
     public GeoPoint positionAt(double x) {
         Preconditions.checkArgument(x >= 0 && x <= this.length);
+        return new GeoPoint(interpolate(lambda, x), interpolate(phi, x));
+    }
+
+    /**
+     * Method which computes the longitude of the given position of the
+     * profile, without creating a GeoPoint
+     * 
+     * @param x
+     *            position of the profile
+     * @return the longitude at x (in radians)
+     */
+    public double longitudeAt(double x) {
+        Preconditions.checkArgument(x >= 0 && x <= this.length);
+        return interpolate(lambda, x);
+    }
+
+    /**
+     * Method which computes the latitude of the given position of the
+     * profile, without creating a GeoPoint
+     * 
+     * @param x
+     *            position of the profile
+     * @return the latitude at x (in radians)
+     */
+    public double latitudeAt(double x) {
+        Preconditions.checkArgument(x >= 0 && x <= this.length);
+        return interpolate(phi, x);
+    }
+
+    /**
+     * Method which interpolates linearly the longitudes or the latitudes
+     * computed every 4096 meters
+     * 
+     * @param table:
+     *            lambda[] or phi[]
+     * @param x:
+     *            position of the profile, which is valid
+     * @return the longitude or the latitude at x
+     */
+    private static double interpolate(double[] table, double x) {
         /*
          * integer variable representing the index of the lowest position (for
          * which we have already computed the longitude and the latitude)
@@ -156,19 +221,13 @@ public final class ElevationProfile {
          */
         double x2 = Math.scalb(x, -12);
         int i = (int) (x2);
-
-        if (x2 == i) {
-            return new GeoPoint(lambda[i], phi[i]);
-        } else {
-            double l = Math2.lerp(lambda[i], lambda[i + 1], x2 - i);
-            double p = Math2.lerp(phi[i], phi[i + 1], x2 - i);
-            return new GeoPoint(l, p);
-        }
+        return x2 == i ? table[i] : Math2.lerp(table[i], table[i + 1], x2 - i);
     }
 
     /**
      * Method which returns the elevation of the profile at the given position
-     * of the profile
+     * of the profile. The position is computed into local variables, so that
+     * no object is allocated
      * 
      * @param x
      *            is the position of the profile
@@ -176,8 +235,51 @@ public final class ElevationProfile {
      */
     public double elevationAt(double x) {
         Preconditions.checkArgument(x >= 0 && x <= this.length);
-        GeoPoint point = positionAt(x);
-        return elevationModel.elevationAt(point);
+        return elevationModel.elevationAt(interpolate(lambda, x),
+                interpolate(phi, x));
+    }
+
+    /**
+     * Method which returns upper bounds of the elevation of the profile on
+     * consecutive segments of the given length: the element k is the
+     * maximum of the samples of the DEM used to interpolate the elevations
+     * between the positions k * step and min((k + 1) * step, length), which
+     * are the samples of the squares of the bounding box of the two ends, as
+     * the path is straight in between. Unlike evaluations of the profile, it
+     * is a bound even when a narrow ridge lies between two of them
+     * 
+     * @param step:
+     *            length of the segments (in meters), which must divide the
+     *            distance between two positions computed exactly (4096 m),
+     *            so that the path is straight on each segment
+     * @return the upper bounds of the elevation on the segments
+     * @throws IllegalArgumentException
+     *             if the step does not divide 4096
+     */
+    public double[] maxElevations(int step) {
+        Preconditions.checkArgument(step > 0 && POSITION_SPACING % step == 0);
+        int segments = (int) Math.ceil(this.length / step);
+        double[] max = new double[segments];
+        double[] samples = new double[0];
+        double x0 = DiscreteElevationModel.sampleIndex(longitudeAt(0));
+        double y0 = DiscreteElevationModel.sampleIndex(latitudeAt(0));
+        for (int k = 0; k < segments; k++) {
+            double to = Math.min((k + 1) * (double) step, this.length);
+            double x1 = DiscreteElevationModel.sampleIndex(longitudeAt(to));
+            double y1 = DiscreteElevationModel.sampleIndex(latitudeAt(to));
+            int xFrom = (int) Math.floor(Math.min(x0, x1));
+            int yFrom = (int) Math.floor(Math.min(y0, y1));
+            int width = (int) Math.floor(Math.max(x0, x1)) + 2 - xFrom;
+            int height = (int) Math.floor(Math.max(y0, y1)) + 2 - yFrom;
+            if (samples.length < width * height) {
+                samples = new double[width * height];
+            }
+            max[k] = elevationModel.maxElevationSample(xFrom, yFrom, width,
+                    height, samples);
+            x0 = x1;
+            y0 = y1;
+        }
+        return max;
     }
 
     /**
@@ -190,7 +292,54 @@ public final class ElevationProfile {
      */
     public double slopeAt(double x) {
         Preconditions.checkArgument(x >= 0 && x <= this.length);
-        GeoPoint point = positionAt(x);
-        return elevationModel.slopeAt(point);
+        return elevationModel.slopeAt(interpolate(lambda, x),
+                interpolate(phi, x));
+    }
+
+    /**
+     * Method which returns an approximation of the elevation of the profile
+     * at the given position, interpolated linearly between the elevations
+     * sampled every SAMPLING_STEP meters. These elevations are stored as
+     * floats and only computed the first time they are needed, so that
+     * evaluating the profile many times at close positions is cheap. A
+     * profile using this method must not be shared between threads
+     * 
+     * @param x
+     *            is the position of the profile
+     * @return the approximate elevation of the profile at the given position
+     */
+    public double sampledElevationAt(double x) {
+        Preconditions.checkArgument(x >= 0 && x <= this.length);
+        double s = x / SAMPLING_STEP;
+        int i = (int) s;
+        if (i + 1 >= sampledCount) {
+            sampleUpTo(i + 1);
+        }
+        if (i + 1 == strip.length) {
+            return strip[i];
+        }
+        double next = Math.min((i + 1) * SAMPLING_STEP, this.length);
+        return Math2.lerp(strip[i], strip[i + 1],
+                (x - i * SAMPLING_STEP) / (next - i * SAMPLING_STEP));
+    }
+
+    /**
+     * Method which extends the strip of sampled elevations so that it
+     * contains the given index (or all the profile), by chunks
+     * 
+     * @param index
+     *            index of the last sample needed
+     */
+    private void sampleUpTo(int index) {
+        if (strip == null) {
+            strip = new float[(int) Math.ceil(this.length / SAMPLING_STEP) + 1];
+        }
+        int to = Math.min(strip.length,
+                Math.max(index + 1, sampledCount + SAMPLING_CHUNK));
+        for (int k = sampledCount; k < to; ++k) {
+            strip[k] = (float) elevationAt(
+                    Math.min(k * SAMPLING_STEP, this.length));
+        }
+        sampledCount = to;
     }
 }
@@ -0,0 +1,66 @@
+package ch.epfl.alpano.dem;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+
+import ch.epfl.alpano.GeoPoint;
+
+final class ElevationProfileBenchmark {
+    final static File HGT_FILE = new File("N46E007.hgt");
+
+    final static GeoPoint ORIGIN = new GeoPoint(Math.toRadians(7.65),
+            Math.toRadians(46.73));
+    final static double LENGTH = 100_000;
+    final static int PROFILES = 2_000;
+    final static int RUNS = 5;
+
+    public static void main(String[] as) throws Exception {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory
+                .getThreadMXBean();
+        long thread = Thread.currentThread().getId();
+
+        try (HgtDiscreteElevationModel dDEM = new HgtDiscreteElevationModel(
+                HGT_FILE)) {
+            ContinuousElevationModel cDEM = new ContinuousElevationModel(dDEM);
+            ElevationProfile[] profiles = new ElevationProfile[PROFILES];
+            for (int i = 0; i < PROFILES; ++i) {
+                profiles[i] = new ElevationProfile(cDEM, ORIGIN,
+                        Math.PI * 2 * i / PROFILES, LENGTH);
+            }
+            long samples = PROFILES * (long) (LENGTH / 64);
+
+            for (int run = 0; run < RUNS; ++run) {
+                double geoPointSum = 0, primitiveSum = 0;
+                long bytes = threads.getThreadAllocatedBytes(thread);
+                long start = System.nanoTime();
+                for (ElevationProfile p : profiles) {
+                    for (double x = 0; x < LENGTH; x += 64) {
+                        geoPointSum += cDEM.elevationAt(p.positionAt(x));
+                    }
+                }
+                long geoPointTime = System.nanoTime() - start;
+                long geoPointBytes = threads.getThreadAllocatedBytes(thread)
+                        - bytes;
+
+                bytes = threads.getThreadAllocatedBytes(thread);
+                start = System.nanoTime();
+                for (ElevationProfile p : profiles) {
+                    for (double x = 0; x < LENGTH; x += 64) {
+                        primitiveSum += p.elevationAt(x);
+                    }
+                }
+                long primitiveTime = System.nanoTime() - start;
+                long primitiveBytes = threads.getThreadAllocatedBytes(thread)
+                        - bytes;
+
+                System.out.printf(
+                        "run %d: positionAt %.1f ns %.1f B/sample, elevationAt %.1f ns %.1f B/sample (%s)%n",
+                        run, geoPointTime / (double) samples,
+                        geoPointBytes / (double) samples,
+                        primitiveTime / (double) samples,
+                        primitiveBytes / (double) samples,
+                        geoPointSum == primitiveSum ? "same sums" : "different sums");
+            }
+        }
+    }
+}
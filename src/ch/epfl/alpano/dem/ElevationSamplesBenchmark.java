@@ -0,0 +1,55 @@
+package ch.epfl.alpano.dem;
+
+import java.io.File;
+import java.util.Random;
+
+final class ElevationSamplesBenchmark {
+    final static File HGT_FILE = new File("N46E007.hgt");
+
+    final static int NEIGHBOURHOODS = 5_000_000;
+    final static int RUNS = 5;
+
+    public static void main(String[] as) throws Exception {
+        try (HgtDiscreteElevationModel dem = new HgtDiscreteElevationModel(
+                HGT_FILE)) {
+            int[] xs = new int[NEIGHBOURHOODS];
+            int[] ys = new int[NEIGHBOURHOODS];
+            Random rng = new Random(2017);
+            int x0 = dem.extent().iX().includedFrom();
+            int y0 = dem.extent().iY().includedFrom();
+            for (int i = 0; i < NEIGHBOURHOODS; ++i) {
+                xs[i] = x0 + rng.nextInt(DiscreteElevationModel.SAMPLES_PER_DEGREE - 2);
+                ys[i] = y0 + rng.nextInt(DiscreteElevationModel.SAMPLES_PER_DEGREE - 2);
+            }
+
+            double[] samples = new double[9];
+            for (int run = 0; run < RUNS; ++run) {
+                double sum = 0;
+                long start = System.nanoTime();
+                for (int i = 0; i < NEIGHBOURHOODS; ++i) {
+                    for (int j = 0; j < 3; ++j) {
+                        for (int k = 0; k < 3; ++k) {
+                            sum += dem.elevationSample(xs[i] + k, ys[i] + j);
+                        }
+                    }
+                }
+                long single = System.nanoTime() - start;
+
+                start = System.nanoTime();
+                for (int i = 0; i < NEIGHBOURHOODS; ++i) {
+                    dem.elevationSamples(xs[i], ys[i], 3, 3, samples);
+                    for (double s : samples) {
+                        sum -= s;
+                    }
+                }
+                long bulk = System.nanoTime() - start;
+
+                System.out.printf(
+                        "run %d: elevationSample %.2f ns/sample, elevationSamples 3x3 %.2f ns/sample (%s)%n",
+                        run, single / (9d * NEIGHBOURHOODS),
+                        bulk / (9d * NEIGHBOURHOODS),
+                        sum == 0 ? "same sums" : "different sums");
+            }
+        }
+    }
+}
@@ -7,6 +7,7 @@ import java.nio.ShortBuffer;
 import java.nio.channels.FileChannel.MapMode;
 import ch.epfl.alpano.Interval1D;
 import ch.epfl.alpano.Interval2D;
+import ch.epfl.alpano.Math2;
 import ch.epfl.alpano.Preconditions;
 
 /**
@@ -25,6 +26,12 @@ public final class HgtDiscreteElevationModel implements DiscreteElevationModel {
     private ShortBuffer buffer;
     private final Interval2D anInterval;
 
+    /*
+     * Bounds of the extent used to index the buffer
+     */
+    private final int xFrom;
+    private final int yTo;
+
     /**
      * Constructs a DEM whose samples are obtained by the HGT file
      * 
@@ -74,10 +81,17 @@ public final class HgtDiscreteElevationModel implements DiscreteElevationModel {
         } catch (Exception e) {
             throw new IllegalArgumentException();
         }
+        this.xFrom = anInterval.iX().includedFrom();
+        this.yTo = anInterval.iY().includedTo();
     }
 
+    /**
+     * Method which drops the reference to the buffer of the file. This does
+     * not unmap the file: the mapping is only released by the garbage
+     * collector, once the buffer is no longer reachable
+     */
     @Override
-    public void close() throws Exception {
+    public void close() {
         buffer = null;
     }
 
@@ -88,9 +102,39 @@ public final class HgtDiscreteElevationModel implements DiscreteElevationModel {
 
     @Override
     public double elevationSample(int x, int y) {
-        Preconditions.checkArgument(extent().contains(x, y));
-        return buffer.get(
-                ((extent().iY().includedTo() - y) * (SAMPLES_PER_DEGREE + 1)
-                        + (x - extent().iX().includedFrom())));
+        Preconditions.checkArgument(anInterval.contains(x, y));
+        return buffer.get((yTo - y) * (SAMPLES_PER_DEGREE + 1) + (x - xFrom));
+    }
+
+    /**
+     * Reads the four samples directly in the buffer once the square is
+     * validated
+     */
+    @Override
+    public double interpolatedElevation(int x, int y, double dx, double dy) {
+        Preconditions.checkArgument(
+                anInterval.contains(x, y) && anInterval.contains(x + 1, y + 1));
+        int line = (yTo - y) * (SAMPLES_PER_DEGREE + 1) + (x - xFrom);
+        int upperLine = line - (SAMPLES_PER_DEGREE + 1);
+        return Math2.bilerp(buffer.get(line), buffer.get(line + 1),
+                buffer.get(upperLine), buffer.get(upperLine + 1), dx, dy);
+    }
+
+    /**
+     * Reads the samples of the rectangle, line by line, directly in the
+     * buffer once the rectangle is validated
+     */
+    @Override
+    public void elevationSamples(int x, int y, int width, int height,
+            double[] samples) {
+        DiscreteElevationModel.checkSamplesRectangle(this, x, y, width, height,
+                samples);
+        int k = 0;
+        for (int j = 0; j < height; ++j) {
+            int line = (yTo - y - j) * (SAMPLES_PER_DEGREE + 1) + (x - xFrom);
+            for (int i = 0; i < width; ++i) {
+                samples[k++] = buffer.get(line + i);
+            }
+        }
     }
 }
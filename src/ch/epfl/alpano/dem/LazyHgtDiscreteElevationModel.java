@@ -0,0 +1,307 @@
+package ch.epfl.alpano.dem;
+
+import static ch.epfl.alpano.Preconditions.checkArgument;
+import static java.util.Objects.requireNonNull;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import ch.epfl.alpano.Interval1D;
+import ch.epfl.alpano.Interval2D;
+
+/**
+ * Class LazyHgtDiscreteElevationModel: represents the discrete DEM made of
+ * all the HGT files of a directory. The files are found by their name (for
+ * example N46E007.hgt) when the DEM is created, but each of them is only
+ * mapped the first time one of its samples is read. At most a given number
+ * of files stay mapped: when the limit is reached, the least recently used
+ * one is evicted. Like HgtDiscreteElevationModel, only the files of the
+ * northern and eastern hemispheres are taken into account.
+ *
+ * The DEM can be used by a parallel panorama computer: reading a sample of a
+ * mapped tile costs a read of the mapping of the tile and no lock or
+ * counter, the lock of the DEM being only taken to map a tile and to evict
+ * another one. The recency of a tile is only written once between two
+ * mappings, so the tile evicted is the least recently used one at the
+ * granularity of the mappings (approximately when several threads read).
+ *
+ * Evicting a tile only drops the reference of the DEM to its mapping (a
+ * reader may still be using it), and a mapped file is only unmapped by the
+ * garbage collector, once its buffer is unreachable. The limit thus bounds
+ * the number of tiles the DEM keeps mapped, not the address space used at
+ * a given time
+ *
+ * @author Saoud Akram (273661)
+ * @author Karim Kabbani (275044)
+ *
+ */
+public final class LazyHgtDiscreteElevationModel
+        implements DiscreteElevationModel {
+
+    /*
+     * Default number of files which can be mapped at the same time (each of
+     * them uses about 25 MB of address space)
+     */
+    public static final int DEFAULT_MAPPED_TILES = 16;
+
+    /*
+     * Mosaic of the (not yet mapped) tiles of the directory
+     */
+    private final MosaicDiscreteElevationModel mosaic;
+
+    /*
+     * Maximum number of mapped tiles
+     */
+    private final int maxMappedTiles;
+
+    /*
+     * The mapped tiles, guarded by the lock of the DEM
+     */
+    private final List<LazyTile> mapped = new ArrayList<>();
+
+    /*
+     * Clock of the mappings, incremented after each of them: a tile read
+     * since the last mapping has this value as recency. It is written under
+     * the lock but read without it, as a hint
+     */
+    private int clock;
+
+    /*
+     * Metrics: number of tiles mapped and number of tiles evicted to respect
+     * the limit, guarded by the lock of the DEM
+     */
+    private long misses;
+    private long evictions;
+
+    /**
+     * Constructs the DEM of the HGT files of the given directory, with the
+     * default limit of mapped tiles
+     *
+     * @param directory:
+     *            directory containing the HGT files
+     * @throws IllegalArgumentException
+     *             if the directory does not contain any HGT file
+     */
+    public LazyHgtDiscreteElevationModel(File directory) {
+        this(directory, DEFAULT_MAPPED_TILES);
+    }
+
+    /**
+     * Constructs the DEM of the HGT files of the given directory
+     *
+     * @param directory:
+     *            directory containing the HGT files
+     * @param maxMappedTiles:
+     *            maximum number of files mapped at the same time
+     * @throws IllegalArgumentException
+     *             if the directory does not contain any HGT file, or if the
+     *             limit is smaller than 1
+     */
+    public LazyHgtDiscreteElevationModel(File directory, int maxMappedTiles) {
+        checkArgument(maxMappedTiles >= 1);
+        File[] files = requireNonNull(directory).listFiles();
+        checkArgument(files != null);
+
+        List<LazyTile> tiles = new ArrayList<>();
+        for (File file : files) {
+            if (file.getName().matches("N[0-9]{2}E[0-9]{3}\\.hgt")) {
+                tiles.add(new LazyTile(file));
+            }
+        }
+        this.mosaic = new MosaicDiscreteElevationModel(tiles);
+        this.maxMappedTiles = maxMappedTiles;
+    }
+
+    /**
+     * Method which returns the extent of the DEM, which contains all the
+     * files of the directory
+     */
+    @Override
+    public Interval2D extent() {
+        return mosaic.extent();
+    }
+
+    /**
+     * Returns the elevation sample at the given index, after mapping the file
+     * containing it if necessary, or 0 if no file contains it
+     */
+    @Override
+    public double elevationSample(int x, int y) {
+        return mosaic.elevationSample(x, y);
+    }
+
+    @Override
+    public void elevationSamples(int x, int y, int width, int height,
+            double[] samples) {
+        mosaic.elevationSamples(x, y, width, height, samples);
+    }
+
+    @Override
+    public double interpolatedElevation(int x, int y, double dx, double dy) {
+        return mosaic.interpolatedElevation(x, y, dx, dy);
+    }
+
+    /**
+     * Method which returns the mapped tile corresponding to the given lazy
+     * tile, without lock if it is already mapped
+     *
+     * @param tile:
+     *            lazy tile
+     * @return the mapped tile
+     */
+    private HgtDiscreteElevationModel map(LazyTile tile) {
+        HgtDiscreteElevationModel m = tile.mapped;
+        if (m == null) {
+            return mapMissing(tile);
+        }
+        // only written once per mapping, to keep readers off a shared line
+        int now = clock;
+        if (tile.lastUse != now) {
+            tile.lastUse = now;
+        }
+        return m;
+    }
+
+    /**
+     * Method which maps the given lazy tile, unless another thread already
+     * did it, after evicting the least recently used tile if necessary
+     *
+     * @param tile:
+     *            lazy tile
+     * @return the mapped tile
+     */
+    private synchronized HgtDiscreteElevationModel mapMissing(LazyTile tile) {
+        HgtDiscreteElevationModel m = tile.mapped;
+        if (m != null) {
+            return m;
+        }
+
+        misses++;
+        if (mapped.size() == maxMappedTiles) {
+            LazyTile eldest = mapped.get(0);
+            for (LazyTile t : mapped) {
+                if (t.lastUse < eldest.lastUse) {
+                    eldest = t;
+                }
+            }
+            mapped.remove(eldest);
+            // readers of the evicted tile keep their reference to its buffer
+            eldest.mapped = null;
+            evictions++;
+        }
+        m = new HgtDiscreteElevationModel(tile.file);
+        tile.lastUse = clock;
+        tile.mapped = m;
+        mapped.add(tile);
+        clock++;
+        return m;
+    }
+
+    /**
+     * Getter: returns the number of files which were mapped
+     *
+     * @return the number of misses
+     */
+    public synchronized long misses() {
+        return misses;
+    }
+
+    /**
+     * Getter: returns the number of files which were evicted to respect the
+     * limit of mapped files
+     *
+     * @return the number of evictions
+     */
+    public synchronized long evictions() {
+        return evictions;
+    }
+
+    /**
+     * Getter: returns the number of files currently mapped
+     *
+     * @return the number of mapped files
+     */
+    public synchronized int mappedTiles() {
+        return mapped.size();
+    }
+
+    /**
+     * Method which evicts all the mapped files, which are unmapped by the
+     * garbage collector as explained above. The DEM stays usable, the files
+     * being mapped again when needed
+     */
+    @Override
+    public synchronized void close() {
+        for (LazyTile t : mapped) {
+            t.mapped = null;
+        }
+        mapped.clear();
+    }
+
+    /**
+     * Class LazyTile: represents an HGT file of the directory, whose extent
+     * is deduced from its name without mapping it
+     */
+    private final class LazyTile implements DiscreteElevationModel {
+
+        /*
+         * Fields:
+         */
+        private final File file;
+        private final Interval2D extent;
+
+        /*
+         * Mapping of the file, or null if it is not mapped (volatile, so
+         * that a reader sees the buffer of the mapping, which on most
+         * processors costs an ordinary read), and value of the clock when
+         * it was last read
+         */
+        private volatile HgtDiscreteElevationModel mapped;
+        private int lastUse;
+
+        /**
+         * Constructs the lazy tile of the given file
+         *
+         * @param file:
+         *            HGT file, whose name is valid
+         */
+        private LazyTile(File file) {
+            this.file = file;
+            String name = file.getName();
+            int lon = Integer.parseInt(name.substring(4, 7));
+            int lat = Integer.parseInt(name.substring(1, 3));
+            this.extent = new Interval2D(
+                    new Interval1D(lon * SAMPLES_PER_DEGREE,
+                            (lon + 1) * SAMPLES_PER_DEGREE),
+                    new Interval1D(lat * SAMPLES_PER_DEGREE,
+                            (lat + 1) * SAMPLES_PER_DEGREE));
+        }
+
+        @Override
+        public Interval2D extent() {
+            return extent;
+        }
+
+        @Override
+        public double elevationSample(int x, int y) {
+            return map(this).elevationSample(x, y);
+        }
+
+        @Override
+        public void elevationSamples(int x, int y, int width, int height,
+                double[] samples) {
+            map(this).elevationSamples(x, y, width, height, samples);
+        }
+
+        @Override
+        public double interpolatedElevation(int x, int y, double dx,
+                double dy) {
+            return map(this).interpolatedElevation(x, y, dx, dy);
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
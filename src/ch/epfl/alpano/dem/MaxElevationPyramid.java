@@ -0,0 +1,224 @@
+package ch.epfl.alpano.dem;
+
+import java.util.Arrays;
+import java.util.Objects;
+
+import ch.epfl.alpano.Interval1D;
+import ch.epfl.alpano.Interval2D;
+import ch.epfl.alpano.Preconditions;
+
+/**
+ * Class MaxElevationPyramid: represents a pyramid (quadtree) of the maximum
+ * elevations of the blocks of a discrete DEM. The blocks of the first level
+ * contain 8x8 samples, and the blocks of each following level are made of
+ * 2x2 blocks of the previous one. It allows to know, with a few array
+ * accesses, an upper bound of the elevation of the terrain in a region
+ *
+ * @author Saoud Akram (273661)
+ * @author Karim Kabbani (275044)
+ */
+public final class MaxElevationPyramid {
+
+    /*
+     * Base 2 logarithm of the size (in samples) of the blocks of the first
+     * level
+     */
+    private static final int BASE_LEVEL_SHIFT = 3;
+
+    /*
+     * Extent of the DEM from which the pyramid was built
+     */
+    private final Interval2D extent;
+
+    /*
+     * Maximum elevations of the blocks of each level, stored line by line
+     */
+    private final float[][] levels;
+
+    /*
+     * Number of blocks per line of each level
+     */
+    private final int[] levelWidths;
+
+    /**
+     * Constructs the pyramid of the given discrete DEM, by reading all its
+     * samples once
+     *
+     * @param dem:
+     *            discrete DEM whose maximum elevations are computed
+     */
+    public MaxElevationPyramid(DiscreteElevationModel dem) {
+        this.extent = Objects.requireNonNull(dem).extent();
+
+        int xFrom = extent.iX().includedFrom();
+        int yFrom = extent.iY().includedFrom();
+        int width = (extent.iX().size() + (1 << BASE_LEVEL_SHIFT) - 1)
+                >> BASE_LEVEL_SHIFT;
+        int height = (extent.iY().size() + (1 << BASE_LEVEL_SHIFT) - 1)
+                >> BASE_LEVEL_SHIFT;
+
+        int levelCount = 1;
+        while (Math.max(width, height) > 1 << (levelCount - 1)) {
+            levelCount++;
+        }
+        levels = new float[levelCount][];
+        levelWidths = new int[levelCount];
+
+        float[] base = new float[width * height];
+        Arrays.fill(base, Float.NEGATIVE_INFINITY);
+        for (int y = yFrom; y <= extent.iY().includedTo(); y++) {
+            int line = ((y - yFrom) >> BASE_LEVEL_SHIFT) * width;
+            for (int x = xFrom; x <= extent.iX().includedTo(); x++) {
+                int i = line + ((x - xFrom) >> BASE_LEVEL_SHIFT);
+                base[i] = Math.max(base[i],
+                        upperFloat(dem.elevationSample(x, y)));
+            }
+        }
+        levels[0] = base;
+        levelWidths[0] = width;
+
+        for (int l = 1; l < levelCount; l++) {
+            int childWidth = width;
+            int childHeight = height;
+            float[] child = levels[l - 1];
+            width = (childWidth + 1) / 2;
+            height = (childHeight + 1) / 2;
+            float[] level = new float[width * height];
+            for (int y = 0; y < height; y++) {
+                for (int x = 0; x < width; x++) {
+                    float max = Float.NEGATIVE_INFINITY;
+                    for (int cy = 2 * y; cy <= Math.min(2 * y + 1,
+                            childHeight - 1); cy++) {
+                        for (int cx = 2 * x; cx <= Math.min(2 * x + 1,
+                                childWidth - 1); cx++) {
+                            max = Math.max(max, child[cy * childWidth + cx]);
+                        }
+                    }
+                    level[y * width + x] = max;
+                }
+            }
+            levels[l] = level;
+            levelWidths[l] = width;
+        }
+    }
+
+    /**
+     * Method which converts an elevation into the smallest float greater or
+     * equal to it, so that the pyramid stays an upper bound of the terrain
+     *
+     * @param elevation
+     * @return the elevation as a float, rounded up
+     */
+    private static float upperFloat(double elevation) {
+        float f = (float) elevation;
+        return f < elevation ? Math.nextUp(f) : f;
+    }
+
+    /**
+     * Getter: returns the extent of the DEM from which the pyramid was built
+     *
+     * @return the extent of the pyramid
+     */
+    public Interval2D extent() {
+        return extent;
+    }
+
+    /**
+     * Method which returns an upper bound of the elevation of the samples
+     * whose indices are in the given (inclusive) ranges. As the continuous
+     * DEM considers that the samples outside of the extent are at 0 m, the
+     * bound is never smaller than 0 when the ranges go beyond the extent
+     *
+     * @param xFrom
+     * @param xTo
+     * @param yFrom
+     * @param yTo
+     * @return an upper bound of the elevation of the samples (in meters)
+     * @throws IllegalArgumentException
+     *             if a range is empty
+     */
+    public double maxElevation(int xFrom, int xTo, int yFrom, int yTo) {
+        Preconditions.checkArgument(xFrom <= xTo && yFrom <= yTo);
+        Interval1D iX = extent.iX();
+        Interval1D iY = extent.iY();
+
+        double max = Double.NEGATIVE_INFINITY;
+        if (xFrom < iX.includedFrom() || xTo > iX.includedTo()
+                || yFrom < iY.includedFrom() || yTo > iY.includedTo()) {
+            max = 0;
+        }
+        int x0 = Math.max(xFrom, iX.includedFrom()) - iX.includedFrom();
+        int x1 = Math.min(xTo, iX.includedTo()) - iX.includedFrom();
+        int y0 = Math.max(yFrom, iY.includedFrom()) - iY.includedFrom();
+        int y1 = Math.min(yTo, iY.includedTo()) - iY.includedFrom();
+        if (x0 > x1 || y0 > y1) {
+            return max;
+        }
+
+        // smallest level whose blocks are at least as large as the ranges,
+        // so that at most 2x2 blocks have to be read
+        int span = Math.max(x1 - x0, y1 - y0) + 1;
+        int shift = BASE_LEVEL_SHIFT;
+        int l = 0;
+        while (l < levels.length - 1 && span > 1 << shift) {
+            l++;
+            shift++;
+        }
+
+        float[] level = levels[l];
+        int width = levelWidths[l];
+        for (int by = y0 >> shift; by <= y1 >> shift; by++) {
+            for (int bx = x0 >> shift; bx <= x1 >> shift; bx++) {
+                max = Math.max(max, level[by * width + bx]);
+            }
+        }
+        return max;
+    }
+
+    /**
+     * Method which returns an upper bound of the elevation of the terrain
+     * along the given profile, between the positions from and to (in meters
+     * from its origin)
+     *
+     * @param profile:
+     *            altimetric profile
+     * @param from:
+     *            first position on the profile
+     * @param to:
+     *            last position on the profile
+     * @return an upper bound of the elevation of the terrain used to compute
+     *         the profile between the two positions
+     * @throws IllegalArgumentException
+     *             if from is greater than to
+     */
+    public double maxElevationAlong(ElevationProfile profile, double from,
+            double to) {
+        Preconditions.checkArgument(from <= to);
+        // between two of the positions computed by the profile, the
+        // longitude and latitude are interpolated linearly, so the bounding
+        // box of these positions and of the two ends contains the whole path
+        double minLon = profile.longitudeAt(from), maxLon = minLon;
+        double minLat = profile.latitudeAt(from), maxLat = minLat;
+        double x = (Math.floor(from / ElevationProfile.POSITION_SPACING) + 1)
+                * ElevationProfile.POSITION_SPACING;
+        while (true) {
+            double lon = profile.longitudeAt(Math.min(x, to));
+            double lat = profile.latitudeAt(Math.min(x, to));
+            minLon = Math.min(minLon, lon);
+            maxLon = Math.max(maxLon, lon);
+            minLat = Math.min(minLat, lat);
+            maxLat = Math.max(maxLat, lat);
+            if (x >= to) {
+                break;
+            }
+            x += ElevationProfile.POSITION_SPACING;
+        }
+        return maxElevation(
+                (int) Math.floor(DiscreteElevationModel.sampleIndex(minLon)),
+                (int) Math.floor(DiscreteElevationModel.sampleIndex(maxLon))
+                        + 1,
+                (int) Math.floor(DiscreteElevationModel.sampleIndex(minLat)),
+                (int) Math.floor(DiscreteElevationModel.sampleIndex(maxLat))
+                        + 1);
+    }
+}
@@ -0,0 +1,210 @@
+package ch.epfl.alpano.dem;
+
+import static ch.epfl.alpano.Preconditions.checkArgument;
+import static java.util.Objects.requireNonNull;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import ch.epfl.alpano.Interval1D;
+import ch.epfl.alpano.Interval2D;
+
+/**
+ * Class MosaicDiscreteElevationModel: represents the union of several discrete
+ * DEM covering one degree each, like the HGT files. The tiles are stored in a
+ * 2D array indexed by degree, so that finding the tile of a sample takes the
+ * same time whatever the number of tiles. The extent of the mosaic is the
+ * smallest one containing all the tiles, and the samples which are not
+ * covered by any tile have an elevation of 0 m
+ *
+ * @author Saoud Akram (273661)
+ * @author Karim Kabbani (275044)
+ *
+ */
+// close() throws the exceptions of the tiles, like the one of
+// DiscreteElevationModel
+@SuppressWarnings("try")
+public final class MosaicDiscreteElevationModel
+        implements DiscreteElevationModel {
+
+    /*
+     * The tiles, indexed by row (latitude) then by column (longitude), null
+     * where the mosaic has a gap
+     */
+    private final DiscreteElevationModel[][] tiles;
+
+    /*
+     * All the tiles of the mosaic
+     */
+    private final List<DiscreteElevationModel> tileList;
+
+    /*
+     * Indices of the first sample of the mosaic
+     */
+    private final int xFrom;
+    private final int yFrom;
+
+    /*
+     * The extent of the mosaic
+     */
+    private final Interval2D extent;
+
+    /**
+     * Constructor of the class
+     *
+     * @param tiles:
+     *            DEM covering exactly one degree each, no two of them
+     *            covering the same degree
+     * @throws IllegalArgumentException
+     *             if there is no tile, if a tile does not cover exactly one
+     *             degree or if two tiles cover the same degree
+     */
+    public MosaicDiscreteElevationModel(
+            Collection<? extends DiscreteElevationModel> tiles) {
+        this.tileList = new ArrayList<>(requireNonNull(tiles));
+        checkArgument(!tileList.isEmpty());
+
+        int minLon = Integer.MAX_VALUE, maxLon = Integer.MIN_VALUE;
+        int minLat = Integer.MAX_VALUE, maxLat = Integer.MIN_VALUE;
+        for (DiscreteElevationModel tile : tileList) {
+            Interval2D e = tile.extent();
+            checkArgument(isDegree(e.iX()) && isDegree(e.iY()));
+            minLon = Math.min(minLon, degreeOf(e.iX()));
+            maxLon = Math.max(maxLon, degreeOf(e.iX()));
+            minLat = Math.min(minLat, degreeOf(e.iY()));
+            maxLat = Math.max(maxLat, degreeOf(e.iY()));
+        }
+
+        this.tiles = new DiscreteElevationModel[maxLat - minLat
+                + 1][maxLon - minLon + 1];
+        for (DiscreteElevationModel tile : tileList) {
+            int row = degreeOf(tile.extent().iY()) - minLat;
+            int column = degreeOf(tile.extent().iX()) - minLon;
+            checkArgument(this.tiles[row][column] == null);
+            this.tiles[row][column] = tile;
+        }
+
+        this.xFrom = minLon * SAMPLES_PER_DEGREE;
+        this.yFrom = minLat * SAMPLES_PER_DEGREE;
+        this.extent = new Interval2D(
+                new Interval1D(xFrom, (maxLon + 1) * SAMPLES_PER_DEGREE),
+                new Interval1D(yFrom, (maxLat + 1) * SAMPLES_PER_DEGREE));
+    }
+
+    /**
+     * Method which checks that an interval of samples covers exactly one
+     * degree
+     *
+     * @param i
+     * @return true if the interval covers exactly one degree
+     */
+    private static boolean isDegree(Interval1D i) {
+        return i.size() == SAMPLES_PER_DEGREE + 1
+                && Math.floorMod(i.includedFrom(), SAMPLES_PER_DEGREE) == 0;
+    }
+
+    /**
+     * Method which returns the degree covered by an interval of samples
+     *
+     * @param i
+     * @return the degree of the first sample of the interval
+     */
+    private static int degreeOf(Interval1D i) {
+        return Math.floorDiv(i.includedFrom(), SAMPLES_PER_DEGREE);
+    }
+
+    /**
+     * Method which returns the extent of the mosaic
+     */
+    @Override
+    public Interval2D extent() {
+        return extent;
+    }
+
+    /**
+     * Returns the elevation sample of the tile containing the given index,
+     * or 0 if no tile contains it
+     */
+    @Override
+    public double elevationSample(int x, int y) {
+        checkArgument(extent.contains(x, y));
+        DiscreteElevationModel tile = tileAt(x, y);
+        return tile == null ? 0 : tile.elevationSample(x, y);
+    }
+
+    /**
+     * Reads the samples in the tile containing the rectangle when there is
+     * one, and sample by sample otherwise
+     */
+    @Override
+    public void elevationSamples(int x, int y, int width, int height,
+            double[] samples) {
+        DiscreteElevationModel.checkSamplesRectangle(this, x, y, width, height,
+                samples);
+        DiscreteElevationModel tile = tileAt(x, y);
+        if (tile != null && tile.extent().contains(x + width - 1,
+                y + height - 1)) {
+            tile.elevationSamples(x, y, width, height, samples);
+        } else {
+            DiscreteElevationModel.super.elevationSamples(x, y, width, height,
+                    samples);
+        }
+    }
+
+    /**
+     * Interpolates the samples in the tile containing the square when there
+     * is one, and sample by sample otherwise
+     */
+    @Override
+    public double interpolatedElevation(int x, int y, double dx, double dy) {
+        checkArgument(extent.contains(x, y) && extent.contains(x + 1, y + 1));
+        DiscreteElevationModel tile = tileAt(x, y);
+        return tile != null && tile.extent().contains(x + 1, y + 1)
+                ? tile.interpolatedElevation(x, y, dx, dy)
+                : DiscreteElevationModel.super.interpolatedElevation(x, y, dx,
+                        dy);
+    }
+
+    /**
+     * Method which returns the tile containing the given index of the extent.
+     * The samples on the edge between two tiles are read in the western (or
+     * southern) one, like the union of the tiles would do, or in the other
+     * one if it is missing
+     *
+     * @param x
+     * @param y
+     * @return the tile containing the index, or null if there is none
+     */
+    private DiscreteElevationModel tileAt(int x, int y) {
+        int column = (x - xFrom - 1) / SAMPLES_PER_DEGREE;
+        int row = (y - yFrom - 1) / SAMPLES_PER_DEGREE;
+
+        DiscreteElevationModel tile = tiles[row][column];
+        if (tile == null) {
+            // the sample may be on the edge of a neighbouring tile
+            boolean xEdge = column + 1 < tiles[row].length
+                    && (x - xFrom) % SAMPLES_PER_DEGREE == 0;
+            boolean yEdge = row + 1 < tiles.length
+                    && (y - yFrom) % SAMPLES_PER_DEGREE == 0;
+            if (xEdge && tiles[row][column + 1] != null) {
+                tile = tiles[row][column + 1];
+            } else if (yEdge && tiles[row + 1][column] != null) {
+                tile = tiles[row + 1][column];
+            } else if (xEdge && yEdge) {
+                tile = tiles[row + 1][column + 1];
+            }
+        }
+        return tile;
+    }
+
+    /**
+     * Method which closes all the tiles
+     */
+    @Override
+    public void close() throws Exception {
+        for (DiscreteElevationModel tile : tileList) {
+            tile.close();
+        }
+    }
+}
@@ -0,0 +1,183 @@
+package ch.epfl.alpano.dem;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import ch.epfl.alpano.Interval2D;
+import ch.epfl.alpano.Preconditions;
+
+/**
+ * Class SlopeCache: stores the slopes of the samples of the extent of a
+ * continuous DEM, as floats. The extent is divided in square blocks, and the
+ * slopes of a block are only computed the first time one of them is needed.
+ * The memory used is bounded: once the maximum number of blocks is reached,
+ * the block computed first is dropped to store the new one. The cache can be
+ * used by several threads at the same time: two threads may compute the same
+ * block, but only one of the results is kept
+ *
+ * @author Saoud Akram (273661)
+ * @author Karim Kabbani (275044)
+ *
+ */
+final class SlopeCache {
+
+    /*
+     * Base 2 logarithm of the size (in samples) of the blocks
+     */
+    private static final int BLOCK_SHIFT = 8;
+    private static final int BLOCK_SIZE = 1 << BLOCK_SHIFT;
+
+    /*
+     * Memory (in bytes) used by the slopes of one block
+     */
+    static final long BLOCK_BYTES = 4L * BLOCK_SIZE * BLOCK_SIZE;
+
+    /*
+     * Continuous DEM whose slopes are stored
+     */
+    private final ContinuousElevationModel dem;
+
+    /*
+     * Index of the first sample, and number of blocks per line
+     */
+    private final int xFrom;
+    private final int yFrom;
+    private final int xTo;
+    private final int yTo;
+    private final int width;
+
+    /*
+     * The blocks, stored line by line, null until they are computed
+     */
+    private final AtomicReferenceArray<float[]> blocks;
+
+    /*
+     * Indices of the stored blocks, in the order in which they were stored
+     * (circularly from the oldest one, at next), and their number, both only
+     * modified by store
+     */
+    private final int[] stored;
+    private int next;
+    private volatile int storedBlocks;
+
+    /**
+     * Constructs an empty cache of the slopes of the given continuous DEM
+     *
+     * @param dem:
+     *            continuous DEM whose slopes are cached
+     * @param maxBytes:
+     *            maximum memory (in bytes) used by the slopes, at least the
+     *            one of a block (256 KB)
+     * @throws IllegalArgumentException
+     *             if the maximum memory is smaller than the one of a block
+     */
+    SlopeCache(ContinuousElevationModel dem, long maxBytes) {
+        Preconditions.checkArgument(maxBytes >= BLOCK_BYTES);
+        this.dem = dem;
+        Interval2D extent = dem.extent();
+        this.xFrom = extent.iX().includedFrom();
+        this.yFrom = extent.iY().includedFrom();
+        this.xTo = extent.iX().includedTo();
+        this.yTo = extent.iY().includedTo();
+        this.width = (extent.iX().size() + BLOCK_SIZE - 1) >> BLOCK_SHIFT;
+        int height = (extent.iY().size() + BLOCK_SIZE - 1) >> BLOCK_SHIFT;
+        this.blocks = new AtomicReferenceArray<>(width * height);
+        this.stored = new int[(int) Math.min(maxBytes / BLOCK_BYTES,
+                (long) width * height)];
+    }
+
+    /**
+     * Method which returns the slope of the sample at the given index, from
+     * the cache if the index is in the extent of the DEM
+     *
+     * @param x
+     * @param y
+     * @return the slope of the sample (in radians)
+     */
+    double sampleSlope(int x, int y) {
+        if (x < xFrom || x > xTo || y < yFrom || y > yTo) {
+            return dem.sampleSlope(x, y);
+        }
+        int bx = (x - xFrom) >> BLOCK_SHIFT;
+        int by = (y - yFrom) >> BLOCK_SHIFT;
+        int i = by * width + bx;
+        float[] block = blocks.get(i);
+        if (block == null) {
+            block = store(i, computeBlock(bx, by));
+        }
+        return block[(((y - yFrom) & (BLOCK_SIZE - 1)) << BLOCK_SHIFT)
+                + ((x - xFrom) & (BLOCK_SIZE - 1))];
+    }
+
+    /**
+     * Method which stores a computed block, unless another thread stored it
+     * first, dropping the oldest block if the cache is full
+     *
+     * @param i:
+     *            index of the block
+     * @param block:
+     *            slopes of the block
+     * @return the slopes of the block stored in the cache
+     */
+    private synchronized float[] store(int i, float[] block) {
+        float[] current = blocks.get(i);
+        if (current != null) {
+            return current;
+        }
+        if (storedBlocks == stored.length) {
+            // the threads still reading the dropped block keep their own
+            // reference to it
+            blocks.set(stored[next], null);
+        } else {
+            storedBlocks++;
+        }
+        stored[next] = i;
+        next = (next + 1) % stored.length;
+        blocks.set(i, block);
+        return block;
+    }
+
+    /**
+     * Method which computes the slopes of a block, from a single read of its
+     * samples and of the ones of the next line and column
+     *
+     * @param bx:
+     *            column of the block
+     * @param by:
+     *            row of the block
+     * @return the slopes of the block, stored line by line
+     */
+    private float[] computeBlock(int bx, int by) {
+        int x0 = xFrom + (bx << BLOCK_SHIFT);
+        int y0 = yFrom + (by << BLOCK_SHIFT);
+        int stride = BLOCK_SIZE + 1;
+        double[] samples = new double[stride * stride];
+        dem.elevationSamples(x0, y0, stride, samples);
+
+        float[] block = new float[BLOCK_SIZE * BLOCK_SIZE];
+        for (int j = 0; j < BLOCK_SIZE; ++j) {
+            for (int i = 0; i < BLOCK_SIZE; ++i) {
+                block[(j << BLOCK_SHIFT) + i] = (float) ContinuousElevationModel
+                        .sampleSlope(samples, j * stride + i, stride);
+            }
+        }
+        return block;
+    }
+
+    /**
+     * Getter: returns the number of blocks stored
+     *
+     * @return the number of stored blocks
+     */
+    int storedBlocks() {
+        return storedBlocks;
+    }
+
+    /**
+     * Method which returns the memory used by the computed slopes
+     *
+     * @return the memory used (in bytes)
+     */
+    long memoryUsage() {
+        return storedBlocks() * BLOCK_BYTES;
+    }
+}
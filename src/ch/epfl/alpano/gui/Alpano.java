@@ -16,8 +16,7 @@ import ch.epfl.alpano.Math2;
 import ch.epfl.alpano.Panorama;
 import ch.epfl.alpano.PanoramaComputer;
 import ch.epfl.alpano.dem.ContinuousElevationModel;
-import ch.epfl.alpano.dem.DiscreteElevationModel;
-import ch.epfl.alpano.dem.HgtDiscreteElevationModel;
+import ch.epfl.alpano.dem.LazyHgtDiscreteElevationModel;
 import ch.epfl.alpano.summit.GazetteerParser;
 import ch.epfl.alpano.summit.Summit;
 import javafx.application.Application;
@@ -214,11 +213,15 @@ public final class Alpano extends Application {
      */
     private static String text(PanoramaComputerBean computerBean, PanoramaParametersBean parametersBean, MouseEvent e){
         Panorama pano = computerBean.panoramaProperty().get();
+        if (pano == null) {
+            return "";
+        }
         double eX=withSampling(e.getX(), parametersBean);
         double eY=withSampling(e.getY(), parametersBean);
         
-        double azimuth = Azimuth.canonicalize(computerBean.getParameters().panoramaParameters().azimuthForX(eX));
-        double elevation = computerBean.getParameters().panoramaParameters().altitudeForY(eY);
+        //The panorama is computed in the background, so its parameters may not be the current ones yet
+        double azimuth = Azimuth.canonicalize(pano.parameters().azimuthForX(eX));
+        double elevation = pano.parameters().altitudeForY(eY);
 
         int x = (int) Math.round(eX);
         int y = (int) Math.round(eY);
@@ -242,6 +245,9 @@ public final class Alpano extends Application {
      */
     private static void map(PanoramaComputerBean computerBean, PanoramaParametersBean parametersBean, MouseEvent e){
         Panorama pano = computerBean.panoramaProperty().get();
+        if (pano == null) {
+            return;
+        }
         
         int x = (int) withSampling(e.getX(), parametersBean);
         int y = (int) withSampling(e.getY(), parametersBean);
@@ -285,28 +291,14 @@ public final class Alpano extends Application {
         return paramsGrid;
     }
     /**
-     * Reads the .hgt files from 45° to 47° for latitude and from 6° to 10° for longitude
+     * Reads the .hgt files of the working directory, each of them being
+     * mapped the first time the panorama needs it, and caches the slopes
+     * shared by all the panoramas in at most 64 MB (the slopes of about one
+     * file), the oldest blocks of slopes being dropped first
      * @return the cem represented by the union of all the files
      */
     private static ContinuousElevationModel readHgt() {
-        DiscreteElevationModel d1 = new HgtDiscreteElevationModel(
-                new File("N45E006.hgt"));
-        for (int j = 6; j < 10; ++j) {
-            d1 = d1.union(new HgtDiscreteElevationModel(
-                    new File("N45E00" + j + ".hgt")));
-        }
-        d1 = d1.union(
-                new HgtDiscreteElevationModel(new File("N45E0" + 10 + ".hgt")));
-
-        DiscreteElevationModel d2 = new HgtDiscreteElevationModel(
-                new File("N46E006.hgt"));
-        for (int j = 6; j < 10; ++j) {
-            d2 = d2.union(new HgtDiscreteElevationModel(
-                    new File("N46E00" + j + ".hgt")));
-        }
-        d2 = d2.union(
-                new HgtDiscreteElevationModel(new File("N46E0" + 10 + ".hgt")));
-        
-        return new ContinuousElevationModel(d1.union(d2));
+        return new ContinuousElevationModel(
+                new LazyHgtDiscreteElevationModel(new File(".")), 64L << 20);
     }
 }
\ No newline at end of file
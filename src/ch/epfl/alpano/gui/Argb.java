@@ -0,0 +1,152 @@
+package ch.epfl.alpano.gui;
+
+import ch.epfl.alpano.Preconditions;
+import javafx.scene.paint.Color;
+
+/**
+ * Class Argb: converts colours to ARGB ints (8 bits per component, not
+ * premultiplied), the format of PixelFormat.getIntArgbInstance() and of
+ * PngWriter.
+ *
+ * The methods hsb and gray compute the same ints as the conversion of the
+ * colours returned by Color.hsb and Color.gray (including the rounding of
+ * the components to float done by Color), without creating these colours
+ *
+ * @author Saoud Akram (273661)
+ * @author Karim Kabbani (275044)
+ *
+ */
+final class Argb {
+
+    /**
+     * Constructor of the class: As we want the class to be non-instanciable,
+     * the constucted is private and empty
+     */
+    private Argb() {
+    }
+
+    /**
+     * Method which converts a colour to an ARGB int
+     *
+     * @param c:
+     *            the colour
+     * @return the ARGB int
+     */
+    static int of(Color c) {
+        return pack(c.getOpacity(), c.getRed(), c.getGreen(), c.getBlue());
+    }
+
+    /**
+     * Method which returns the ARGB int of the colour
+     * Color.hsb(hue, saturation, brightness, opacity)
+     *
+     * @param hue:
+     *            hue, in degrees
+     * @param saturation:
+     *            saturation, between 0 and 1
+     * @param brightness:
+     *            brightness, between 0 and 1
+     * @param opacity:
+     *            opacity, between 0 and 1
+     * @return the ARGB int
+     * @throws IllegalArgumentException
+     *             if the saturation, the brightness or the opacity is not
+     *             between 0 and 1
+     */
+    static int hsb(double hue, double saturation, double brightness,
+            double opacity) {
+        checkComponent(saturation);
+        checkComponent(brightness);
+        checkComponent(opacity);
+        if (saturation == 0) {
+            return pack(opacity, brightness, brightness, brightness);
+        }
+        // ((hue % 360) + 360) % 360 / 360, as computed by Color, without the
+        // slow remainders in the usual case: x % 360 is x if |x| < 360, and
+        // is x - 360, which is exact, if 360 <= x < 720
+        double m = hue > -360 && hue < 360 ? hue + 360 : hue % 360 + 360;
+        double normalizedHue = (m >= 360 ? m - 360 : m) / 360;
+        double h = (normalizedHue - Math.floor(normalizedHue)) * 6.0;
+        double f = h - Math.floor(h);
+        double p = brightness * (1.0 - saturation);
+        double q = brightness * (1.0 - saturation * f);
+        double t = brightness * (1.0 - (saturation * (1.0 - f)));
+        switch ((int) h) {
+        case 0:
+            return pack(opacity, brightness, t, p);
+        case 1:
+            return pack(opacity, q, brightness, p);
+        case 2:
+            return pack(opacity, p, brightness, t);
+        case 3:
+            return pack(opacity, p, q, brightness);
+        case 4:
+            return pack(opacity, t, p, brightness);
+        case 5:
+            return pack(opacity, brightness, p, q);
+        default:
+            return pack(opacity, 0, 0, 0);
+        }
+    }
+
+    /**
+     * Method which returns the ARGB int of the colour
+     * Color.gray(gray, opacity)
+     *
+     * @param gray:
+     *            level of gray, between 0 and 1
+     * @param opacity:
+     *            opacity, between 0 and 1
+     * @return the ARGB int
+     * @throws IllegalArgumentException
+     *             if the level of gray or the opacity is not between 0 and 1
+     */
+    static int gray(double gray, double opacity) {
+        checkComponent(gray);
+        checkComponent(opacity);
+        return pack(opacity, gray, gray, gray);
+    }
+
+    /**
+     * Method which checks a component like the constructor of Color does
+     * (NaN is therefore accepted)
+     *
+     * @param v:
+     *            the component
+     * @throws IllegalArgumentException
+     *             if the component is smaller than 0 or greater than 1
+     */
+    private static void checkComponent(double v) {
+        Preconditions.checkArgument(!(v < 0 || v > 1));
+    }
+
+    /**
+     * Method which packs the given components, between 0 and 1, in an ARGB
+     * int
+     *
+     * @param a
+     * @param r
+     * @param g
+     * @param b
+     * @return the ARGB int
+     */
+    private static int pack(double a, double r, double g, double b) {
+        return component(a) << 24 | component(r) << 16 | component(g) << 8
+                | component(b);
+    }
+
+    /**
+     * Method which converts a component, between 0 and 1, to an int between
+     * 0 and 255, after rounding it to float as Color does. The product of a
+     * float by 255 is exact, and so is its sum with 0.5 unless this sum is
+     * smaller than 1, so the cast returns
+     * Math.round(v * 255) (0 for NaN), without its slower general case
+     *
+     * @param v:
+     *            the component
+     * @return the int
+     */
+    private static int component(double v) {
+        return (int) ((double) (float) v * 255 + 0.5);
+    }
+}
@@ -0,0 +1,362 @@
+package ch.epfl.alpano.gui;
+
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.function.DoubleUnaryOperator;
+
+import ch.epfl.alpano.Preconditions;
+
+/**
+ * Class ChannelExpression: a channel painter recording the operations
+ * applied to a source painter by the methods of ChannelPainter, instead of
+ * nesting one lambda per operation.
+ *
+ * The operations are folded as they are added: consecutive affine
+ * operations (add, sub, mul, div and inverted) become a single
+ * multiply-add, and an affine operation, a clamping and another affine
+ * operation become a single stage. The expression is therefore a source
+ * followed by a few stages, each of which is one tight loop over a row (see
+ * valuesAt). For example
+ * maxDistanceToNeighbors(p).sub(500).div(4500).clamped().inverted() has a
+ * single stage.
+ *
+ * The coefficients of the folded operations are computed in double, then
+ * the stages compute in float, which lets the JIT vectorize their loops.
+ * A stage v -> a * v + b rounds its coefficients, the product and the sum,
+ * so its value is within 3 * 2^-24 * (|a * v| + |b|) of the exact one; the
+ * clamping does not increase this error, which the operations after it
+ * multiply by postA. The bound is relative to the terms and not to the
+ * result: when they cancel, the unfolded operations, which round each
+ * intermediate value, can differ from the folded ones by much more than a
+ * few ulps of the result. For example add(1e10f).sub(1e10f) rounds the
+ * values to multiples of 1024 when unfolded, and keeps them exactly when
+ * folded
+ *
+ * @author Saoud Akram (273661)
+ * @author Karim Kabbani (275044)
+ *
+ */
+final class ChannelExpression implements ChannelPainter {
+
+    /*
+     * Fields:
+     */
+    private final ChannelPainter source;
+    private final Stage[] stages;
+
+    /**
+     * Constructs the expression applying the given stages to the source
+     *
+     * @param source
+     * @param stages
+     */
+    private ChannelExpression(ChannelPainter source, Stage[] stages) {
+        this.source = source;
+        this.stages = stages;
+    }
+
+    /**
+     * Method which returns the expression of the given painter: the painter
+     * itself if it is an expression, or an expression without stages
+     *
+     * @param painter
+     * @return the expression
+     */
+    static ChannelExpression of(ChannelPainter painter) {
+        Objects.requireNonNull(painter);
+        return painter instanceof ChannelExpression
+                ? (ChannelExpression) painter
+                : new ChannelExpression(painter, new Stage[0]);
+    }
+
+    /**
+     * Method which returns the number of stages (i.e. of loops over a row)
+     * of the expression, once folded
+     *
+     * @return the number of stages
+     */
+    int stageCount() {
+        return stages.length;
+    }
+
+    @Override
+    public float valueAt(int x, int y) {
+        float v = source.valueAt(x, y);
+        for (Stage s : stages) {
+            v = s.apply(v);
+        }
+        return v;
+    }
+
+    /**
+     * Computes the row of the source, then applies each stage to the whole
+     * row
+     */
+    @Override
+    public void valuesAt(int x, int y, int length, float[] values) {
+        source.valuesAt(x, y, length, values);
+        for (Stage s : stages) {
+            s.apply(values, length);
+        }
+    }
+
+    @Override
+    public ChannelPainter add(float term) {
+        return affine(1, term);
+    }
+
+    @Override
+    public ChannelPainter sub(float term) {
+        return affine(1, -(double) term);
+    }
+
+    @Override
+    public ChannelPainter mul(float term) {
+        return affine(term, 0);
+    }
+
+    @Override
+    public ChannelPainter div(float term) {
+        Preconditions.checkArgument(term != 0);
+        return affine(1 / (double) term, 0);
+    }
+
+    @Override
+    public ChannelPainter inverted() {
+        return affine(-1, 1);
+    }
+
+    @Override
+    public ChannelPainter clamped() {
+        Stage last = last();
+        if (last instanceof Segment) {
+            Segment s = (Segment) last;
+            if (!s.clamped) {
+                return replaceLast(
+                        new Segment(s.preA, s.preB, true, 1, 0));
+            }
+            if (s.postA == 1 && s.postB == 0) {
+                // clamping twice does nothing
+                return this;
+            }
+        }
+        return append(new Segment(1, 0, true, 1, 0));
+    }
+
+    @Override
+    public ChannelPainter cylce() {
+        return append(new Cycle());
+    }
+
+    @Override
+    public ChannelPainter map(DoubleUnaryOperator f) {
+        return append(new Map(Objects.requireNonNull(f)));
+    }
+
+    /**
+     * Method which returns the expression followed by v -> a * v + b,
+     * folded with its last stage if possible
+     *
+     * @param a
+     * @param b
+     * @return the new expression
+     */
+    private ChannelExpression affine(double a, double b) {
+        Stage last = last();
+        if (last instanceof Segment) {
+            Segment s = (Segment) last;
+            return replaceLast(s.clamped
+                    ? new Segment(s.preA, s.preB, true, a * s.postA,
+                            a * s.postB + b)
+                    : new Segment(a * s.preA, a * s.preB + b, false, 1, 0));
+        }
+        return append(new Segment(a, b, false, 1, 0));
+    }
+
+    /**
+     * Method which returns the last stage of the expression
+     *
+     * @return the last stage, or null if there is none
+     */
+    private Stage last() {
+        return stages.length == 0 ? null : stages[stages.length - 1];
+    }
+
+    /**
+     * Method which returns the expression followed by the given stage
+     *
+     * @param stage
+     * @return the new expression
+     */
+    private ChannelExpression append(Stage stage) {
+        Stage[] s = Arrays.copyOf(stages, stages.length + 1);
+        s[stages.length] = stage;
+        return new ChannelExpression(source, s);
+    }
+
+    /**
+     * Method which returns the expression whose last stage is replaced by
+     * the given one
+     *
+     * @param stage
+     * @return the new expression
+     */
+    private ChannelExpression replaceLast(Stage stage) {
+        Stage[] s = stages.clone();
+        s[s.length - 1] = stage;
+        return new ChannelExpression(source, s);
+    }
+
+    @Override
+    public String toString() {
+        String e = "source";
+        for (Stage s : stages) {
+            e = s.toString(e);
+        }
+        return e;
+    }
+
+    /**
+     * Class Stage: an operation of an expression, applied to a value or to
+     * a whole row at once
+     */
+    private static abstract class Stage {
+
+        /**
+         * Method which applies the stage to a value
+         *
+         * @param v
+         * @return the result
+         */
+        abstract float apply(float v);
+
+        /**
+         * Method which applies the stage to the values of a row
+         *
+         * @param values
+         * @param length:
+         *            number of values
+         */
+        abstract void apply(float[] values, int length);
+
+        /**
+         * Method which returns the textual form of the stage applied to the
+         * given expression
+         *
+         * @param e
+         * @return the textual form
+         */
+        abstract String toString(String e);
+    }
+
+    /**
+     * Class Segment: the stage v -> postA * clamp(preA * v + preB) + postB,
+     * where clamp clamps its argument between 0 and 1 if clamped is true,
+     * and does nothing otherwise (in which case postA is 1 and postB 0)
+     */
+    private static final class Segment extends Stage {
+
+        /*
+         * Coefficients, exact, used to fold the operations, and rounded to
+         * float, used to compute the values
+         */
+        private final double preA, preB;
+        private final boolean clamped;
+        private final double postA, postB;
+        private final float fPreA, fPreB, fPostA, fPostB;
+
+        private Segment(double preA, double preB, boolean clamped,
+                double postA, double postB) {
+            this.preA = preA;
+            this.preB = preB;
+            this.clamped = clamped;
+            this.postA = postA;
+            this.postB = postB;
+            this.fPreA = (float) preA;
+            this.fPreB = (float) preB;
+            this.fPostA = (float) postA;
+            this.fPostB = (float) postB;
+        }
+
+        @Override
+        float apply(float v) {
+            float u = fPreA * v + fPreB;
+            return clamped ? fPostA * Math.max(0f, Math.min(u, 1f)) + fPostB
+                    : u;
+        }
+
+        @Override
+        void apply(float[] values, int length) {
+            float preA = fPreA, preB = fPreB;
+            if (clamped) {
+                float postA = fPostA, postB = fPostB;
+                for (int i = 0; i < length; i++) {
+                    float u = Math.max(0f,
+                            Math.min(preA * values[i] + preB, 1f));
+                    values[i] = postA * u + postB;
+                }
+            } else {
+                for (int i = 0; i < length; i++) {
+                    values[i] = preA * values[i] + preB;
+                }
+            }
+        }
+
+        @Override
+        String toString(String e) {
+            String pre = preA + " * " + e + " + " + preB;
+            return clamped ? postA + " * clamp(" + pre + ") + " + postB
+                    : "(" + pre + ")";
+        }
+    }
+
+    /**
+     * Class Cycle: the stage v -> v mod 1
+     */
+    private static final class Cycle extends Stage {
+        @Override
+        float apply(float v) {
+            return v % 1f;
+        }
+
+        @Override
+        void apply(float[] values, int length) {
+            for (int i = 0; i < length; i++) {
+                values[i] %= 1f;
+            }
+        }
+
+        @Override
+        String toString(String e) {
+            return "(" + e + " % 1)";
+        }
+    }
+
+    /**
+     * Class Map: the stage applying a function to the values
+     */
+    private static final class Map extends Stage {
+        private final DoubleUnaryOperator f;
+
+        private Map(DoubleUnaryOperator f) {
+            this.f = f;
+        }
+
+        @Override
+        float apply(float v) {
+            return (float) f.applyAsDouble(v);
+        }
+
+        @Override
+        void apply(float[] values, int length) {
+            for (int i = 0; i < length; i++) {
+                values[i] = (float) f.applyAsDouble(values[i]);
+            }
+        }
+
+        @Override
+        String toString(String e) {
+            return "f(" + e + ")";
+        }
+    }
+}
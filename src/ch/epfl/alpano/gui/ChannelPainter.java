@@ -4,10 +4,17 @@ import java.util.Objects;
 import java.util.function.DoubleUnaryOperator;
 
 import ch.epfl.alpano.Panorama;
-import ch.epfl.alpano.Preconditions;
+import ch.epfl.alpano.PanoramaChannel;
 
 /**
- * Functional Interface representing a channel painter
+ * Functional Interface representing a channel painter.
+ * 
+ * Besides valueAt, a channel painter can compute the values of a whole row
+ * at once with valuesAt. The painters returned by channel and
+ * maxDistanceToNeighbors read the panorama row by row, and the operations
+ * (add, sub, clamped, ...) are recorded and folded in a ChannelExpression,
+ * which computes a row with a few tight loops instead of a chain of calls
+ * per pixel
  * 
  * @author Saoud Akram (273661)
  * @author Karim Kabbani (275044)
@@ -29,6 +36,65 @@ public interface ChannelPainter {
      */
     public abstract float valueAt(int x, int y);
 
+    /**
+     * Method which computes the values of the channel painter at the points
+     * (x, y) to (x + length - 1, y). By default it calls valueAt for each
+     * point, the painters returned by the methods of this interface redefine
+     * it to compute the whole row at once
+     * 
+     * @param x
+     *            coordinate of the first point
+     * @param y
+     *            coordinate of the row
+     * @param length
+     *            number of points
+     * @param values
+     *            array receiving the values, from index 0
+     */
+    public default void valuesAt(int x, int y, int length, float[] values) {
+        for (int i = 0; i < length; i++) {
+            values[i] = valueAt(x + i, y);
+        }
+    }
+
+    /**
+     * Static method which returns a channel painter whose value at a point is
+     * the value of the given channel of the given panorama
+     * 
+     * @param aPanorama
+     *            panorama
+     * @param channel
+     *            channel of the panorama
+     * @return the channel painter
+     */
+    public static ChannelPainter channel(Panorama aPanorama,
+            PanoramaChannel channel) {
+        Objects.requireNonNull(aPanorama);
+        Objects.requireNonNull(channel);
+        return new ChannelPainter() {
+            @Override
+            public float valueAt(int x, int y) {
+                switch (channel) {
+                case DISTANCE:
+                    return aPanorama.distanceAt(x, y);
+                case LONGITUDE:
+                    return aPanorama.longitudeAt(x, y);
+                case LATITUDE:
+                    return aPanorama.latitudeAt(x, y);
+                case ELEVATION:
+                    return aPanorama.elevationAt(x, y);
+                default:
+                    return aPanorama.slopeAt(x, y);
+                }
+            }
+
+            @Override
+            public void valuesAt(int x, int y, int length, float[] values) {
+                aPanorama.valuesAt(channel, x, y, length, values);
+            }
+        };
+    }
+
     /**
      * Static method which, given a Panorama, returns a channel painter whose
      * value at a point is the difference in distance of the furthest neighbour
@@ -41,7 +107,7 @@ public interface ChannelPainter {
      */
     public static ChannelPainter maxDistanceToNeighbors(Panorama aPanorama) {
         Objects.requireNonNull(aPanorama);
-        return (x, y) -> {
+        ChannelPainter perPixel = (x, y) -> {
             float dPixel = aPanorama.distanceAt(x, y);
             float d1;
             float d2;
@@ -70,6 +136,45 @@ public interface ChannelPainter {
 
             return Math.max(Math.max(Math.max(d1, d2), d3), d4) - dPixel;
         };
+        return new ChannelPainter() {
+            @Override
+            public float valueAt(int x, int y) {
+                return perPixel.valueAt(x, y);
+            }
+
+            @Override
+            public void valuesAt(int x, int y, int length, float[] values) {
+                int width = aPanorama.parameters().width();
+                int height = aPanorama.parameters().height();
+                // the rows y - 1, y and y + 1, from x - 1 to x + length,
+                // with 0 outside of the panorama
+                float[] above = new float[length + 2];
+                float[] row = new float[length + 2];
+                float[] below = new float[length + 2];
+                int from = Math.max(0, x - 1);
+                int to = Math.min(width, x + length + 1);
+                float[] samples = new float[to - from];
+                aPanorama.valuesAt(PanoramaChannel.DISTANCE, from, y,
+                        to - from, samples);
+                System.arraycopy(samples, 0, row, from - x + 1, to - from);
+                if (y > 0) {
+                    aPanorama.valuesAt(PanoramaChannel.DISTANCE, x, y - 1,
+                            length, samples);
+                    System.arraycopy(samples, 0, above, 1, length);
+                }
+                if (y < height - 1) {
+                    aPanorama.valuesAt(PanoramaChannel.DISTANCE, x, y + 1,
+                            length, samples);
+                    System.arraycopy(samples, 0, below, 1, length);
+                }
+                for (int i = 0; i < length; i++) {
+                    values[i] = Math.max(
+                            Math.max(Math.max(row[i + 2], row[i]),
+                                    below[i + 1]),
+                            above[i + 1]) - row[i + 1];
+                }
+            }
+        };
     }
 
     /**
@@ -82,9 +187,7 @@ public interface ChannelPainter {
      *         value of the channel painter at the given point
      */
     default ChannelPainter add(float term) {
-        return (x, y) -> {
-            return valueAt(x, y) + term;
-        };
+        return ChannelExpression.of(this).add(term);
     }
 
     /**
@@ -97,9 +200,7 @@ public interface ChannelPainter {
      *         at a given point and the constant
      */
     default ChannelPainter sub(float term) {
-        return (x, y) -> {
-            return valueAt(x, y) - term;
-        };
+        return ChannelExpression.of(this).sub(term);
     }
 
     /**
@@ -112,9 +213,7 @@ public interface ChannelPainter {
      *         the value of the channel painter at the given point
      */
     default ChannelPainter mul(float term) {
-        return (x, y) -> {
-            return valueAt(x, y) * term;
-        };
+        return ChannelExpression.of(this).mul(term);
     }
 
     /**
@@ -127,10 +226,7 @@ public interface ChannelPainter {
      *         channel painter at the given point and the constant term
      */
     default ChannelPainter div(float term) {
-        Preconditions.checkArgument(term != 0);
-        return (x, y) -> {
-            return valueAt(x, y) / term;
-        };
+        return ChannelExpression.of(this).div(term);
     }
 
     /**
@@ -143,9 +239,7 @@ public interface ChannelPainter {
      *         the mapping given by f ( valueAt(x,y) )
      */
     default ChannelPainter map(DoubleUnaryOperator f) {
-        return (x, y) -> {
-            return (float) f.applyAsDouble(valueAt(x, y));
-        };
+        return ChannelExpression.of(this).map(f);
     }
 
     /**
@@ -155,9 +249,7 @@ public interface ChannelPainter {
      *         1-valueAt(x,y)
      */
     default ChannelPainter inverted() {
-        return (x, y) -> {
-            return 1f - valueAt(x, y);
-        };
+        return ChannelExpression.of(this).inverted();
     }
 
     /**
@@ -167,9 +259,7 @@ public interface ChannelPainter {
      *         valueAt(x,y) mod 1
      */
     default ChannelPainter cylce() {
-        return (x, y) -> {
-            return valueAt(x, y) % 1f;
-        };
+        return ChannelExpression.of(this).cylce();
     }
 
     /**
@@ -179,9 +269,7 @@ public interface ChannelPainter {
      *         (0, min (valueAt(x,y),1) )
      */
     default ChannelPainter clamped() {
-        return (x, y) -> {
-            return Math.max(0f, Math.min(valueAt(x, y), 1f));
-        };
+        return ChannelExpression.of(this).clamped();
     }
 
 }
\ No newline at end of file
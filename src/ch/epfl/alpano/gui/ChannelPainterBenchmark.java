@@ -0,0 +1,133 @@
+package ch.epfl.alpano.gui;
+
+import java.util.Random;
+
+import ch.epfl.alpano.GeoPoint;
+import ch.epfl.alpano.Panorama;
+import ch.epfl.alpano.PanoramaChannel;
+import ch.epfl.alpano.PanoramaParameters;
+import javafx.scene.paint.Color;
+
+final class ChannelPainterBenchmark {
+    final static int IMAGE_WIDTH = 1920;
+    final static int IMAGE_HEIGHT = 1080;
+
+    final static int RUNS = 10;
+
+    public static void main(String[] as) {
+        PanoramaParameters params = new PanoramaParameters(
+                new GeoPoint(Math.toRadians(7.65), Math.toRadians(46.73)),
+                600, Math.toRadians(180), Math.toRadians(60), 100_000,
+                IMAGE_WIDTH, IMAGE_HEIGHT);
+        Random rng = new Random(2017);
+        Panorama.Builder b = new Panorama.Builder(params);
+        for (int x = 0; x < IMAGE_WIDTH; ++x) {
+            for (int y = 0; y < IMAGE_HEIGHT; ++y) {
+                if (rng.nextInt(5) > 0) {
+                    b.setDistanceAt(x, y, rng.nextFloat() * 100_000)
+                            .setSlopeAt(x, y,
+                                    (float) (rng.nextDouble() * Math.PI / 2));
+                }
+            }
+        }
+        Panorama p = b.build();
+
+        // the same channels, as expressions and as nested lambdas
+        ChannelPainter neighbors = ChannelPainter.maxDistanceToNeighbors(p);
+        ChannelPainter distance = ChannelPainter.channel(p,
+                PanoramaChannel.DISTANCE);
+        compare("gray", neighbors.sub(500).div(4500).clamped().inverted(),
+                inverted(clamped(div(sub(neighbors, 500), 4500))));
+        compare("hue", distance.div(100000).cylce().mul(360),
+                mul(cycle(div(distance, 100000)), 360));
+        compare("sat", distance.div(200000).clamped().inverted(),
+                inverted(clamped(div(distance, 200000))));
+
+        colours("gray", ImagePainter.grayPanoramaPainter(p));
+        colours("colour", ImagePainter.colourPanoramaPainter(p));
+    }
+
+    private static void compare(String name, ChannelPainter expression,
+            ChannelPainter lambdas) {
+        float[] row = new float[IMAGE_WIDTH];
+        long sum = 0;
+        for (int i = 0; i < RUNS; ++i) {
+            long start = System.nanoTime();
+            for (int y = 0; y < IMAGE_HEIGHT; ++y) {
+                for (int x = 0; x < IMAGE_WIDTH; ++x) {
+                    sum += lambdas.valueAt(x, y) > 0.5f ? 1 : 0;
+                }
+            }
+            long lambda = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            for (int y = 0; y < IMAGE_HEIGHT; ++y) {
+                for (int x = 0; x < IMAGE_WIDTH; ++x) {
+                    sum -= expression.valueAt(x, y) > 0.5f ? 1 : 0;
+                }
+            }
+            long pixels = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            for (int y = 0; y < IMAGE_HEIGHT; ++y) {
+                expression.valuesAt(0, y, IMAGE_WIDTH, row);
+                sum += row[IMAGE_WIDTH / 2];
+            }
+            long rows = System.nanoTime() - start;
+            System.out.printf(
+                    "%-6s run %d: lambdas %4d ms, expression per pixel %4d ms, per row %4d ms%n",
+                    name, i, lambda / 1_000_000, pixels / 1_000_000,
+                    rows / 1_000_000);
+        }
+
+        float maxError = 0;
+        for (int y = 0; y < IMAGE_HEIGHT; ++y) {
+            expression.valuesAt(0, y, IMAGE_WIDTH, row);
+            for (int x = 0; x < IMAGE_WIDTH; ++x) {
+                float e = Math.abs(row[x] - lambdas.valueAt(x, y));
+                // false for the sky, whose values are NaN in both painters
+                if (e > maxError) {
+                    maxError = e;
+                }
+            }
+        }
+        System.out.printf("%-6s expression %s, max difference %g (%d)%n",
+                name, expression, maxError, sum);
+    }
+
+    private static void colours(String name, ImagePainter painter) {
+        Color[] row = new Color[IMAGE_WIDTH];
+        for (int i = 0; i < RUNS; ++i) {
+            long start = System.nanoTime();
+            for (int y = 0; y < IMAGE_HEIGHT; ++y) {
+                painter.colorsAt(0, y, IMAGE_WIDTH, row);
+            }
+            System.out.printf("%-6s run %d: colours per row %4d ms%n", name,
+                    i, (System.nanoTime() - start) / 1_000_000);
+        }
+    }
+
+    private static ChannelPainter sub(ChannelPainter p, float term) {
+        return (x, y) -> p.valueAt(x, y) - term;
+    }
+
+    private static ChannelPainter mul(ChannelPainter p, float term) {
+        return (x, y) -> p.valueAt(x, y) * term;
+    }
+
+    private static ChannelPainter div(ChannelPainter p, float term) {
+        return (x, y) -> p.valueAt(x, y) / term;
+    }
+
+    private static ChannelPainter inverted(ChannelPainter p) {
+        return (x, y) -> 1f - p.valueAt(x, y);
+    }
+
+    private static ChannelPainter cycle(ChannelPainter p) {
+        return (x, y) -> p.valueAt(x, y) % 1f;
+    }
+
+    private static ChannelPainter clamped(ChannelPainter p) {
+        return (x, y) -> Math.max(0f, Math.min(p.valueAt(x, y), 1f));
+    }
+}
@@ -0,0 +1,150 @@
+package ch.epfl.alpano.gui;
+
+import ch.epfl.alpano.Panorama;
+import ch.epfl.alpano.PanoramaChannel;
+import javafx.scene.paint.Color;
+
+/**
+ * Class ColourTable: table of the colours of the painter
+ * ImagePainter.colourPanoramaPainter, as ARGB ints, for quantized
+ * distances and slopes.
+ *
+ * The colour of a point only depends on its distance (hue and saturation)
+ * and on its slope (brightness). The distance is only useful up to
+ * MAX_DISTANCE, beyond which the saturation is 0, and the slope between 0
+ * and PI / 2. Both are rounded to the nearest of DISTANCE_STEPS + 1 and
+ * SLOPE_STEPS + 1 regularly spaced values, so a pixel costs a few
+ * multiplications and one load in the table (about 1 MB), which is built
+ * once, when the class is first used.
+ *
+ * The rounded distance is at most 49 m away (0.18 degree of hue), the
+ * rounded slope at most 0.0062 rad away (0.0027 of brightness). Compared
+ * to the exact painter, a component of the colour differs by at most 2
+ * (out of 255), and by at most 1 for more than 99.9% of the pixels (by 0
+ * for about 58% of them). The points without terrain (at an infinite
+ * distance) are transparent, as with the exact painter, and their colour
+ * is computed exactly
+ *
+ * @author Saoud Akram (273661)
+ * @author Karim Kabbani (275044)
+ *
+ */
+final class ColourTable {
+
+    /*
+     * Number of steps of the distance, between 0 and MAX_DISTANCE, and of
+     * the slope, between 0 and PI / 2
+     */
+    static final int DISTANCE_STEPS = 2048;
+    static final int SLOPE_STEPS = 128;
+    static final float MAX_DISTANCE = 200_000;
+
+    /*
+     * Inverse of the steps, and the table: entry i * (SLOPE_STEPS + 1) + j
+     * is the colour of the distance i * MAX_DISTANCE / DISTANCE_STEPS and
+     * of the slope j * (PI / 2) / SLOPE_STEPS
+     */
+    private static final float DISTANCE_SCALE = DISTANCE_STEPS
+            / MAX_DISTANCE;
+    private static final float SLOPE_SCALE = (float) (SLOPE_STEPS
+            / (Math.PI / 2));
+    private static final int[] TABLE = table();
+
+    /**
+     * Constructor of the class: As we want the class to be non-instanciable,
+     * the constucted is private and empty
+     */
+    private ColourTable() {
+    }
+
+    /**
+     * Method which returns the painter of the colours of the given panorama
+     * read in the table
+     *
+     * @param p:
+     *            the panorama
+     * @return the painter
+     */
+    static ImagePainter painter(Panorama p) {
+        return new ImagePainter() {
+            @Override
+            public Color colorAt(int x, int y) {
+                int c = colorArgbAt(x, y);
+                return Color.rgb(c >>> 16 & 0xFF, c >>> 8 & 0xFF, c & 0xFF,
+                        (c >>> 24) / 255d);
+            }
+
+            @Override
+            public int colorArgbAt(int x, int y) {
+                return argb(p.distanceAt(x, y), p.slopeAt(x, y));
+            }
+
+            @Override
+            public void colorsArgbAt(int x, int y, int length, int[] argb) {
+                float[] d = new float[length];
+                float[] s = new float[length];
+                p.valuesAt(PanoramaChannel.DISTANCE, x, y, length, d);
+                p.valuesAt(PanoramaChannel.SLOPE, x, y, length, s);
+                for (int i = 0; i < length; i++) {
+                    argb[i] = argb(d[i], s[i]);
+                }
+            }
+        };
+    }
+
+    /**
+     * Method which returns the colour of a point, read in the table
+     *
+     * @param distance:
+     *            distance of the point
+     * @param slope:
+     *            slope of the point
+     * @return the colour of the point, as an ARGB int
+     */
+    static int argb(float distance, float slope) {
+        if (distance == Float.POSITIVE_INFINITY) {
+            return exact(distance, slope);
+        }
+        // the casts of NaN give 0
+        int i = Math.max(0, Math.min(
+                (int) (distance * DISTANCE_SCALE + 0.5f), DISTANCE_STEPS));
+        int j = Math.max(0,
+                Math.min((int) (slope * SLOPE_SCALE + 0.5f), SLOPE_STEPS));
+        return TABLE[i * (SLOPE_STEPS + 1) + j];
+    }
+
+    /**
+     * Method which computes the colour of a point as
+     * ImagePainter.colourPanoramaPainter does
+     *
+     * @param distance:
+     *            distance of the point
+     * @param slope:
+     *            slope of the point
+     * @return the colour of the point, as an ARGB int
+     */
+    static int exact(double distance, double slope) {
+        double hue = distance / 100000 % 1 * 360;
+        double saturation = 1 - Math.max(0, Math.min(distance / 200000, 1));
+        double brightness = 0.3 + 0.7 * (1 - 2 * slope / Math.PI);
+        double opacity = distance == Float.POSITIVE_INFINITY ? 0 : 1;
+        return Argb.hsb(hue, saturation, brightness, opacity);
+    }
+
+    /**
+     * Method which computes the table
+     *
+     * @return the table
+     */
+    private static int[] table() {
+        int[] table = new int[(DISTANCE_STEPS + 1) * (SLOPE_STEPS + 1)];
+        for (int i = 0; i <= DISTANCE_STEPS; i++) {
+            for (int j = 0; j <= SLOPE_STEPS; j++) {
+                table[i * (SLOPE_STEPS + 1) + j] = exact(
+                        (double) i * MAX_DISTANCE / DISTANCE_STEPS,
+                        j * (Math.PI / 2) / SLOPE_STEPS);
+            }
+        }
+        return table;
+    }
+}
@@ -0,0 +1,152 @@
+package ch.epfl.alpano.gui;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Objects;
+import java.util.stream.IntStream;
+
+import ch.epfl.alpano.Panorama;
+import ch.epfl.alpano.Preconditions;
+
+/**
+ * Class HeadlessRenderer: renders the images of panoramas without JavaFX
+ * images, so without starting the JavaFX toolkit (the painters only use
+ * the class Color): in an array of ARGB ints, in a BufferedImage sharing
+ * such an array, or directly in a PNG stream.
+ *
+ * The rows are painted by bands of ROWS_PER_BAND rows, in parallel in the
+ * common fork-join pool, so the painter must accept calls from several
+ * threads, as the painters of ImagePainter and ChannelPainter do
+ *
+ * @author Saoud Akram (273661)
+ * @author Karim Kabbani (275044)
+ *
+ */
+public final class HeadlessRenderer {
+
+    /*
+     * Number of rows of a band, the bands of an image being painted in
+     * parallel
+     */
+    public static final int ROWS_PER_BAND = 16;
+
+    /**
+     * Constructor of the class: As we want the class to be non-instanciable,
+     * the constucted is private and empty
+     */
+    private HeadlessRenderer() {
+    }
+
+    /**
+     * Method which paints the image of a panorama in an array of ARGB ints
+     * (8 bits per component, not premultiplied)
+     *
+     * @param panorama
+     *            Panorama whose image will be rendered
+     * @param painter
+     *            ImagePainter which gives the colours of the pixels
+     * @return the pixels of the image, row after row, from top to bottom
+     */
+    public static int[] renderArgb(Panorama panorama, ImagePainter painter) {
+        int width = panorama.parameters().width();
+        int height = panorama.parameters().height();
+        int[] pixels = new int[width * height];
+        paintRows(painter, width, 0, height, pixels);
+        return pixels;
+    }
+
+    /**
+     * Method which paints the image of a panorama in a BufferedImage of type
+     * TYPE_INT_ARGB, whose pixels are written directly in its array
+     *
+     * @param panorama
+     *            Panorama whose image will be rendered
+     * @param painter
+     *            ImagePainter which gives the colours of the pixels
+     * @return the image of the panorama
+     */
+    public static BufferedImage renderImage(Panorama panorama,
+            ImagePainter painter) {
+        int width = panorama.parameters().width();
+        int height = panorama.parameters().height();
+        BufferedImage image = new BufferedImage(width, height,
+                BufferedImage.TYPE_INT_ARGB);
+        paintRows(painter, width, 0, height, ((DataBufferInt) image
+                .getRaster().getDataBuffer()).getData());
+        return image;
+    }
+
+    /**
+     * Method which paints the image of a panorama and writes it in the PNG
+     * format in the given stream. The rows are painted by groups of bands,
+     * one band per thread, and each group is given to a PngWriter, which
+     * compresses its rows in parallel while the next group is painted, so
+     * the whole image is never in memory
+     *
+     * @param panorama
+     *            Panorama whose image will be rendered
+     * @param painter
+     *            ImagePainter which gives the colours of the pixels
+     * @param out:
+     *            stream in which the image is written, closed at the end
+     * @param parallelism:
+     *            number of threads of the PngWriter
+     * @throws IOException
+     *             if the stream fails
+     * @throws IllegalArgumentException
+     *             if the parallelism is smaller than 1
+     */
+    public static void writePng(Panorama panorama, ImagePainter painter,
+            OutputStream out, int parallelism) throws IOException {
+        Preconditions.checkArgument(parallelism >= 1);
+        int width = panorama.parameters().width();
+        int height = panorama.parameters().height();
+        int groupRows = ROWS_PER_BAND
+                * Runtime.getRuntime().availableProcessors();
+        int[] pixels = new int[width * Math.min(groupRows, height)];
+        int[] row = new int[width];
+        try (PngWriter png = new PngWriter(out, width, height,
+                parallelism)) {
+            for (int from = 0; from < height; from += groupRows) {
+                int to = Math.min(height, from + groupRows);
+                paintRows(painter, width, from, to, pixels);
+                for (int y = from; y < to; y++) {
+                    System.arraycopy(pixels, (y - from) * width, row, 0,
+                            width);
+                    png.writeRow(row);
+                }
+            }
+        }
+    }
+
+    /**
+     * Method which paints the rows from to to (excluded) of an image in the
+     * given array, the row from being stored at index 0
+     *
+     * @param painter
+     * @param width:
+     *            width of the image
+     * @param from:
+     *            first row
+     * @param to:
+     *            row following the last one
+     * @param pixels:
+     *            array receiving the pixels
+     */
+    private static void paintRows(ImagePainter painter, int width, int from,
+            int to, int[] pixels) {
+        Objects.requireNonNull(painter);
+        int bands = (to - from + ROWS_PER_BAND - 1) / ROWS_PER_BAND;
+        IntStream.range(0, bands).parallel().forEach(band -> {
+            int[] row = new int[width];
+            int first = from + band * ROWS_PER_BAND;
+            int last = Math.min(to, first + ROWS_PER_BAND);
+            for (int y = first; y < last; y++) {
+                painter.colorsArgbAt(0, y, width, row);
+                System.arraycopy(row, 0, pixels, (y - from) * width, width);
+            }
+        });
+    }
+}
@@ -1,6 +1,7 @@
 package ch.epfl.alpano.gui;
 
 import ch.epfl.alpano.Panorama;
+import ch.epfl.alpano.PanoramaChannel;
 import javafx.scene.paint.Color;
 
 /**
@@ -25,6 +26,67 @@ public interface ImagePainter {
      */
     public Color colorAt(int x, int y);
 
+    /**
+     * Method which returns the colours at the points (x, y) to
+     * (x + length - 1, y). By default it calls colorAt for each point, the
+     * painters returned by hsb and gray redefine it to compute their
+     * channels row by row
+     * 
+     * @param x
+     *            x-coordinate of the first point
+     * @param y
+     *            y-coordinate of the row
+     * @param length
+     *            number of points
+     * @param colors
+     *            array receiving the colours, from index 0
+     */
+    public default void colorsAt(int x, int y, int length, Color[] colors) {
+        for (int i = 0; i < length; i++) {
+            colors[i] = colorAt(x + i, y);
+        }
+    }
+
+    /**
+     * Method which returns the colour at a given point as an ARGB int (8
+     * bits per component, not premultiplied). By default it converts the
+     * colour returned by colorAt, the painters returned by hsb and gray
+     * redefine it to compute the int without creating a Color
+     * 
+     * @param x
+     *            x-coordinate of the point
+     * @param y
+     *            y-coordinate of the point
+     * @return the colour at the given point, as an ARGB int
+     */
+    public default int colorArgbAt(int x, int y) {
+        return Argb.of(colorAt(x, y));
+    }
+
+    /**
+     * Method which returns the colours at the points (x, y) to
+     * (x + length - 1, y) as ARGB ints. By default it converts the colours
+     * returned by colorsAt, the painters returned by hsb and gray redefine
+     * it to compute their channels row by row and the ints without creating
+     * any Color
+     * 
+     * @param x
+     *            x-coordinate of the first point
+     * @param y
+     *            y-coordinate of the row
+     * @param length
+     *            number of points
+     * @param argb
+     *            array receiving the colours, from index 0
+     */
+    public default void colorsArgbAt(int x, int y, int length, int[] argb) {
+        Color[] colors = new Color[length];
+        colorsAt(x, y, length, colors);
+        for (int i = 0; i < length; i++) {
+            argb[i] = Argb.of(colors[i]);
+        }
+    }
+
     /**
      * Method which, given 4 channel painter, returns the corresponding
      * ImagePainteer
@@ -42,10 +104,55 @@ public interface ImagePainter {
     public static ImagePainter hsb(ChannelPainter hue,
             ChannelPainter saturation, ChannelPainter brightness,
             ChannelPainter opacity) {
-        return (x, y) -> Color.hsb((double) hue.valueAt(x, y),
-                (double) saturation.valueAt(x, y),
-                (double) brightness.valueAt(x, y),
-                (double) opacity.valueAt(x, y));
+        return new ImagePainter() {
+            @Override
+            public Color colorAt(int x, int y) {
+                return Color.hsb((double) hue.valueAt(x, y),
+                        (double) saturation.valueAt(x, y),
+                        (double) brightness.valueAt(x, y),
+                        (double) opacity.valueAt(x, y));
+            }
+
+            @Override
+            public void colorsAt(int x, int y, int length, Color[] colors) {
+                float[] h = new float[length];
+                float[] s = new float[length];
+                float[] b = new float[length];
+                float[] o = new float[length];
+                hue.valuesAt(x, y, length, h);
+                saturation.valuesAt(x, y, length, s);
+                brightness.valuesAt(x, y, length, b);
+                opacity.valuesAt(x, y, length, o);
+                for (int i = 0; i < length; i++) {
+                    colors[i] = Color.hsb((double) h[i], (double) s[i],
+                            (double) b[i], (double) o[i]);
+                }
+            }
+
+            @Override
+            public int colorArgbAt(int x, int y) {
+                return Argb.hsb((double) hue.valueAt(x, y),
+                        (double) saturation.valueAt(x, y),
+                        (double) brightness.valueAt(x, y),
+                        (double) opacity.valueAt(x, y));
+            }
+
+            @Override
+            public void colorsArgbAt(int x, int y, int length, int[] argb) {
+                float[] h = new float[length];
+                float[] s = new float[length];
+                float[] b = new float[length];
+                float[] o = new float[length];
+                hue.valuesAt(x, y, length, h);
+                saturation.valuesAt(x, y, length, s);
+                brightness.valuesAt(x, y, length, b);
+                opacity.valuesAt(x, y, length, o);
+                for (int i = 0; i < length; i++) {
+                    argb[i] = Argb.hsb((double) h[i], (double) s[i],
+                            (double) b[i], (double) o[i]);
+                }
+            }
+        };
     }
 
     /**
@@ -60,8 +167,41 @@ public interface ImagePainter {
      */
     public static ImagePainter gray(ChannelPainter gray,
             ChannelPainter opacity) {
-        return (x, y) -> Color.gray((double) gray.valueAt(x, y),
-                (double) opacity.valueAt(x, y));
+        return new ImagePainter() {
+            @Override
+            public Color colorAt(int x, int y) {
+                return Color.gray((double) gray.valueAt(x, y),
+                        (double) opacity.valueAt(x, y));
+            }
+
+            @Override
+            public void colorsAt(int x, int y, int length, Color[] colors) {
+                float[] g = new float[length];
+                float[] o = new float[length];
+                gray.valuesAt(x, y, length, g);
+                opacity.valuesAt(x, y, length, o);
+                for (int i = 0; i < length; i++) {
+                    colors[i] = Color.gray((double) g[i], (double) o[i]);
+                }
+            }
+
+            @Override
+            public int colorArgbAt(int x, int y) {
+                return Argb.gray((double) gray.valueAt(x, y),
+                        (double) opacity.valueAt(x, y));
+            }
+
+            @Override
+            public void colorsArgbAt(int x, int y, int length, int[] argb) {
+                float[] g = new float[length];
+                float[] o = new float[length];
+                gray.valuesAt(x, y, length, g);
+                opacity.valuesAt(x, y, length, o);
+                for (int i = 0; i < length; i++) {
+                    argb[i] = Argb.gray((double) g[i], (double) o[i]);
+                }
+            }
+        };
     }
 
     /**
@@ -76,7 +216,8 @@ public interface ImagePainter {
         ChannelPainter gray = ChannelPainter.maxDistanceToNeighbors(p).sub(500)
                 .div(4500).clamped().inverted();
 
-        ChannelPainter distance = p::distanceAt;
+        ChannelPainter distance = ChannelPainter.channel(p,
+                PanoramaChannel.DISTANCE);
         ChannelPainter opacity = distance
                 .map(d -> d == Float.POSITIVE_INFINITY ? 0 : 1);
 
@@ -94,14 +235,33 @@ public interface ImagePainter {
      *         panorama p
      */
     public static ImagePainter colourPanoramaPainter(Panorama p) {
-        ChannelPainter hue = (x, y) -> p.distanceAt(x, y) / 100000 % 1 * 360;
-        ChannelPainter saturation = (x, y) -> 1
-                - Math.max(0, Math.min(p.distanceAt(x, y) / 200000, 1));
-        ChannelPainter brightness = (x,
-                y) -> (float) (0.3 + 0.7 * (1 - 2 * p.slopeAt(x, y) / Math.PI));
-        ChannelPainter opacity = (x,
-                y) -> p.distanceAt(x, y) == Float.POSITIVE_INFINITY ? 0 : 1;
+        ChannelPainter distance = ChannelPainter.channel(p,
+                PanoramaChannel.DISTANCE);
+        ChannelPainter slope = ChannelPainter.channel(p,
+                PanoramaChannel.SLOPE);
+        ChannelPainter hue = distance.div(100000).cylce().mul(360);
+        ChannelPainter saturation = distance.div(200000).clamped().inverted();
+        ChannelPainter brightness = slope
+                .map(s -> 0.3 + 0.7 * (1 - 2 * s / Math.PI));
+        ChannelPainter opacity = distance
+                .map(d -> d == Float.POSITIVE_INFINITY ? 0 : 1);
 
         return hsb(hue, saturation, brightness, opacity);
     }
+
+    /**
+     * Method which draws the panorama with the colours of
+     * colourPanoramaPainter, read in a precomputed table indexed by the
+     * quantized distance and slope of the points instead of being computed
+     * for each point. A component of a colour differs by at most 2 (out of
+     * 255) from the one of colourPanoramaPainter (see ColourTable)
+     * 
+     * @param p
+     *            panorama which will be drawn
+     * @return ImagePainter which will be used to create the Image of the
+     *         panorama p
+     */
+    public static ImagePainter colourPanoramaTablePainter(Panorama p) {
+        return ColourTable.painter(p);
+    }
 }
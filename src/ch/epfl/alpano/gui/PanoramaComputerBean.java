@@ -1,26 +1,50 @@
 package ch.epfl.alpano.gui;
 
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import ch.epfl.alpano.CompactPanorama;
 import ch.epfl.alpano.Panorama;
 import ch.epfl.alpano.PanoramaComputer;
 import ch.epfl.alpano.PanoramaParameters;
+import ch.epfl.alpano.PanoramaStorage;
 import ch.epfl.alpano.dem.ContinuousElevationModel;
 import ch.epfl.alpano.summit.Summit;
 
+import javafx.application.Platform;
+import javafx.beans.property.DoubleProperty;
 import javafx.beans.property.ObjectProperty;
+import javafx.beans.property.ReadOnlyDoubleProperty;
 import javafx.beans.property.ReadOnlyObjectProperty;
+import javafx.beans.property.SimpleDoubleProperty;
 import javafx.beans.property.SimpleObjectProperty;
 import javafx.collections.ObservableList;
 import javafx.scene.Node;
 import javafx.scene.image.Image;
+import static ch.epfl.alpano.Preconditions.checkArgument;
 import static javafx.collections.FXCollections.observableArrayList;
 import static javafx.collections.FXCollections.unmodifiableObservableList;
 
 /**
- * This class is a JavaFX bean which has the four following properties: the
- * panorama, its user parameters, its image and its labels
+ * This class is a JavaFX bean which has the five following properties: the
+ * panorama, its user parameters, its image, its labels and the progress of
+ * its computation.
+ * 
+ * The panorama is computed on a background thread when the parameters
+ * change, and the properties are updated on the JavaFX thread. A change of
+ * the parameters cancels the computation in progress. The last panoramas
+ * computed are kept, in their compact form and with their image and labels,
+ * in a cache whose memory is bounded, so that coming back to a recent view
+ * shows its image and its labels at once. Its compact form, whose values
+ * are quantized, is then expanded on the background thread (see
+ * panoramaProperty)
  * 
  * @author Saoud Akram (273661)
  * @author Karim Kabbani (275044)
@@ -67,9 +91,54 @@ public final class PanoramaComputerBean {
      * List of labels
      */
     private ObservableList<Node> labels;
+
+    /*
+     * Property which contains the fraction (between 0 and 1) of the columns
+     * of the panorama which are computed
+     */
+    private DoubleProperty progressProperty;
+
+    /*
+     * Thread on which the panoramas are computed
+     */
+    private final ExecutorService executor = Executors
+            .newSingleThreadExecutor(r -> {
+                Thread t = new Thread(r, "panorama computation");
+                t.setDaemon(true);
+                return t;
+            });
+
+    /*
+     * Computation of the last parameters, or cached panorama of the last
+     * parameters being expanded, and last panorama which was entirely
+     * computed (the only one whose columns can be reused) with its
+     * parameters. They are only used on the JavaFX thread
+     */
+    private Computation currentComputation;
+    private CachedPanorama currentExpansion;
+    private Panorama lastPanorama;
+    private PanoramaUserParameters lastParameters;
+
+    /*
+     * Default memory (in bytes) used by the cache of the computed panoramas
+     */
+    public static final long DEFAULT_CACHE_BYTES = 256L << 20;
+
+    /*
+     * Cache of the computed panoramas, from the least to the most recently
+     * used, with the memory they use, its limit and metrics. It is only used
+     * on the JavaFX thread
+     */
+    private final Map<PanoramaUserParameters, CachedPanorama> cache = new LinkedHashMap<>(
+            16, 0.75f, true);
+    private final long maxCacheBytes;
+    private long cacheBytes;
+    private long hits;
+    private long misses;
     
     /**
-     * Constructor of the class
+     * Constructor of the class, whose cache of computed panoramas uses at
+     * most DEFAULT_CACHE_BYTES bytes
      * 
      * @param dem
      *            used to create a panorama
@@ -77,10 +146,36 @@ public final class PanoramaComputerBean {
      *            used to create a labelizer
      */
     public PanoramaComputerBean(ContinuousElevationModel cem, List<Summit> listOfSummits) {
+        this(cem, listOfSummits, DEFAULT_CACHE_BYTES);
+    }
+
+    /**
+     * Constructor of the class
+     * 
+     * @param dem
+     *            used to create a panorama
+     * @param listOfSummits
+     *            used to create a labelizer
+     * @param maxCacheBytes
+     *            memory (in bytes) which can be used to keep the last
+     *            panoramas, their images and their labels, so that coming
+     *            back to them is instant (0 disables the cache)
+     * @throws IllegalArgumentException
+     *             if the memory is negative
+     */
+    public PanoramaComputerBean(ContinuousElevationModel cem,
+            List<Summit> listOfSummits, long maxCacheBytes) {
         Objects.requireNonNull(cem);
         Objects.requireNonNull(listOfSummits);
+        checkArgument(maxCacheBytes >= 0);
+        this.maxCacheBytes = maxCacheBytes;
         
-        this.aPanoramaComputer = new PanoramaComputer(cem);
+        // when the user pans, the nearest columns of the previous panorama
+        // are reused, as long as their rays stay within half a column of
+        // their azimuth, however many pans they were copied through
+        this.aPanoramaComputer = new PanoramaComputer.Builder(cem)
+                .setParallelism(Runtime.getRuntime().availableProcessors())
+                .setColumnReuseTolerance(0.5).build();
         this.aLabelizer = new Labelizer(cem, listOfSummits);
         this.labels = observableArrayList();
         this.panoramaProperty = new SimpleObjectProperty<Panorama>();
@@ -88,22 +183,126 @@ public final class PanoramaComputerBean {
         this.labelsProperty = new SimpleObjectProperty<ObservableList<Node>>(
                 unmodifiableObservableList(this.labels)); 
         this.parametersProperty =  new SimpleObjectProperty<PanoramaUserParameters>();
+        this.progressProperty = new SimpleDoubleProperty();
         this.parametersProperty.addListener((b, o, n) -> {
-            PanoramaParameters aPanoramaParameters = n.panoramaParameters();
-            PanoramaParameters bPanoramaParameters = n.panoramaDisplayParameters();
-            Panorama aPanorama = this.aPanoramaComputer.computePanorama(aPanoramaParameters);
-            panoramaProperty.set(aPanorama);
-
-            ImagePainter anImagePainter = ImagePainter.colourPanoramaPainter(aPanorama);
-            Image anImage = PanoramaRenderer.renderPanorama(aPanorama, anImagePainter);
-            imageProperty.set(anImage);
-
-            List<Node> updatedLabels = this.aLabelizer.labels(bPanoramaParameters);
-            labels.setAll(updatedLabels);
+            if (currentComputation != null) {
+                currentComputation.cancelled = true;
+                currentComputation = null;
+            }
+            currentExpansion = null;
+            CachedPanorama cached = cache.get(n);
+            if (cached != null) {
+                hits++;
+                if (n.equals(lastParameters)) {
+                    show(lastPanorama, cached.image, cached.labels);
+                } else {
+                    // the image and the labels are shown at once, the
+                    // panorama is only needed by the readouts
+                    show(null, cached.image, cached.labels);
+                    expand(cached);
+                }
+                return;
+            }
+            misses++;
+            Computation computation = new Computation(n, lastPanorama);
+            currentComputation = computation;
+            progressProperty.set(0);
+            executor.execute(computation::compute);
         });
         
     }
-    
+
+    /**
+     * Method which expands a cached panorama on the background thread, then
+     * publishes it, unless other parameters were set meanwhile (its image
+     * and its labels are already published)
+     * 
+     * @param cached
+     *            the cached panorama
+     */
+    private void expand(CachedPanorama cached) {
+        currentExpansion = cached;
+        executor.execute(() -> {
+            Panorama expanded = cached.panorama
+                    .expanded(PanoramaStorage.HEAP);
+            Platform.runLater(() -> {
+                if (currentExpansion == cached) {
+                    currentExpansion = null;
+                    panoramaProperty.set(expanded);
+                }
+            });
+        });
+    }
+
+    /**
+     * Method which publishes a panorama, its image and its labels
+     * 
+     * @param panorama
+     * @param image
+     * @param labels
+     */
+    private void show(Panorama panorama, Image image, List<Node> labels) {
+        panoramaProperty.set(panorama);
+        imageProperty.set(image);
+        this.labels.setAll(labels);
+        progressProperty.set(1);
+    }
+
+    /**
+     * Method which adds a computed panorama to the cache, removing the least
+     * recently used ones until the cache fits in its memory
+     * 
+     * @param parameters
+     *            user parameters of the panorama
+     * @param computed
+     *            the panorama, its image and its labels
+     */
+    private void cache(PanoramaUserParameters parameters,
+            CachedPanorama computed) {
+        if (computed.bytes > maxCacheBytes) {
+            return;
+        }
+        CachedPanorama replaced = cache.put(parameters, computed);
+        if (replaced != null) {
+            cacheBytes -= replaced.bytes;
+        }
+        cacheBytes += computed.bytes;
+        Iterator<CachedPanorama> eldest = cache.values().iterator();
+        while (cacheBytes > maxCacheBytes) {
+            cacheBytes -= eldest.next().bytes;
+            eldest.remove();
+        }
+    }
+
+    /**
+     * Getter: returns the number of parameters whose panorama was found in
+     * the cache
+     * 
+     * @return the number of hits
+     */
+    public long cacheHits() {
+        return hits;
+    }
+
+    /**
+     * Getter: returns the number of parameters whose panorama had to be
+     * computed
+     * 
+     * @return the number of misses
+     */
+    public long cacheMisses() {
+        return misses;
+    }
+
+    /**
+     * Getter: returns the memory used by the cache of the computed panoramas
+     * 
+     * @return the memory used (in bytes)
+     */
+    public long cacheBytes() {
+        return cacheBytes;
+    }
+
     /**
      * Method which allows to get the property containing the (user) parameters
      * 
@@ -136,10 +335,14 @@ public final class PanoramaComputerBean {
     }
     
     /**
-     * Method which allows to get the property containing the (user) parameters
+     * Method which allows to get the property containing the panorama. When
+     * the panorama of the parameters comes from the cache, and was not the
+     * last one computed, it is null until the compact form of the computed
+     * one is expanded, then it is this expanded form, whose values differ
+     * from the computed ones by at most CompactPanorama.errorBound (the
+     * image and the labels are the exact ones)
      * 
-     * @return the property containing the (user) parameters, which is only
-     *         readable
+     * @return the property containing the panorama, which is only readable
      */
     public ReadOnlyObjectProperty<Panorama> panoramaProperty() {
         return panoramaProperty;
@@ -166,6 +369,17 @@ public final class PanoramaComputerBean {
         return this.imageProperty.get();
     }
     
+    /**
+     * Method which returns the property containing the progress of the
+     * computation of the panorama
+     * 
+     * @return the property containing the fraction of the columns computed,
+     *         which is only readable
+     */
+    public ReadOnlyDoubleProperty progressProperty() {
+        return this.progressProperty;
+    }
+
     /**
      * Method which returns the property containing the list of labels
      * 
@@ -185,4 +399,149 @@ public final class PanoramaComputerBean {
     public ObservableList<Node> getLabels() {
         return this.labelsProperty.get();
     }
+
+    /**
+     * Class Computation: computation of the panorama, its image and its
+     * labels for given parameters, on the background thread. Its results are
+     * only published if it is still the current computation
+     */
+    private final class Computation {
+
+        /*
+         * Fields:
+         */
+        private final PanoramaUserParameters parameters;
+        private final PanoramaParameters panoramaParameters;
+        private final Panorama previous;
+        private final AtomicInteger columnsDone = new AtomicInteger();
+        private final AtomicInteger publishedPercent = new AtomicInteger();
+        private volatile boolean cancelled;
+
+        /**
+         * Constructs the computation of the given parameters
+         * 
+         * @param parameters
+         *            user parameters of the panorama
+         * @param previous
+         *            last panorama entirely computed, whose columns can be
+         *            reused, or null
+         */
+        private Computation(PanoramaUserParameters parameters,
+                Panorama previous) {
+            this.parameters = parameters;
+            this.panoramaParameters = parameters.panoramaParameters();
+            this.previous = previous;
+        }
+
+        /**
+         * Method which computes the panorama, publishing its intermediate
+         * levels, then its labels
+         */
+        private void compute() {
+            try {
+                Panorama aPanorama = aPanoramaComputer.computePanorama(
+                        panoramaParameters, previous,
+                        p -> publish(p, null), () -> cancelled,
+                        this::columnsDone);
+                List<Node> updatedLabels = aLabelizer
+                        .labels(parameters.panoramaDisplayParameters());
+                publish(aPanorama, updatedLabels);
+            } catch (CancellationException e) {
+                // newer parameters replaced these ones
+            }
+        }
+
+        /**
+         * Method which renders the image of the given panorama, then
+         * publishes them on the JavaFX thread
+         * 
+         * @param aPanorama
+         *            panorama, which may be an intermediate one
+         * @param updatedLabels
+         *            labels of the panorama, or null if it is an intermediate
+         *            one
+         */
+        private void publish(Panorama aPanorama, List<Node> updatedLabels) {
+            if (cancelled) {
+                return;
+            }
+            ImagePainter anImagePainter = ImagePainter
+                    .colourPanoramaPainter(aPanorama);
+            Image anImage = PanoramaRenderer.renderPanorama(aPanorama,
+                    anImagePainter);
+            CachedPanorama computed = updatedLabels == null ? null
+                    : new CachedPanorama(aPanorama.compacted(), anImage,
+                            updatedLabels);
+            Platform.runLater(() -> {
+                if (currentComputation != this) {
+                    return;
+                }
+                panoramaProperty.set(aPanorama);
+                imageProperty.set(anImage);
+                if (computed != null) {
+                    lastPanorama = aPanorama;
+                    lastParameters = parameters;
+                    show(aPanorama, anImage, updatedLabels);
+                    cache(parameters, computed);
+                }
+            });
+        }
+
+        /**
+         * Method which records that columns were computed, and publishes the
+         * progress each time it grows by one percent
+         * 
+         * @param columns
+         *            number of columns computed
+         */
+        private void columnsDone(int columns) {
+            int percent = (int) (100L * columnsDone.addAndGet(columns)
+                    / panoramaParameters.width());
+            if (percent > publishedPercent.getAndAccumulate(percent,
+                    Math::max)) {
+                Platform.runLater(() -> {
+                    if (currentComputation == this
+                            && progressProperty.get() < percent / 100d) {
+                        progressProperty.set(percent / 100d);
+                    }
+                });
+            }
+        }
+    }
+
+    /**
+     * Class CachedPanorama: the compact form of a computed panorama with its
+     * image and its labels, and the memory they use
+     */
+    private static final class CachedPanorama {
+
+        /*
+         * Memory (in bytes) used by a pixel of an image (ARGB)
+         */
+        private static final int IMAGE_PIXEL_BYTES = 4;
+
+        /*
+         * Fields:
+         */
+        private final CompactPanorama panorama;
+        private final Image image;
+        private final List<Node> labels;
+        private final long bytes;
+
+        /**
+         * Constructs a cached panorama
+         * 
+         * @param panorama
+         * @param image
+         * @param labels
+         */
+        private CachedPanorama(CompactPanorama panorama, Image image,
+                List<Node> labels) {
+            this.panorama = panorama;
+            this.image = image;
+            this.labels = labels;
+            this.bytes = panorama.bytes() + (long) IMAGE_PIXEL_BYTES
+                    * (long) image.getWidth() * (long) image.getHeight();
+        }
+    }
 }
@@ -1,13 +1,13 @@
 package ch.epfl.alpano.gui;
 
 import javafx.scene.image.Image;
-import javafx.scene.image.PixelWriter;
+import javafx.scene.image.PixelFormat;
 import javafx.scene.image.WritableImage;
 import ch.epfl.alpano.Panorama;
 
 /**
  * Interface which allows us to render a panorama
- * 
+ *
  * @author Saoud Akram (273661)
  * @author Karim Kabbani (275044)
  *
@@ -17,7 +17,7 @@ public interface PanoramaRenderer {
     /**
      * Method which allows us to obtain the image of a panorama given a Panorama
      * and an ImagePainter
-     * 
+     *
      * @param panorama
      *            Panorama whose image will be rendered
      * @param painter
@@ -30,12 +30,10 @@ public interface PanoramaRenderer {
         int width = panorama.parameters().width();
         int height = panorama.parameters().height();
         WritableImage WI = new WritableImage(width, height);
-        PixelWriter PW = WI.getPixelWriter();
-        for (int x = 0; x < width; x++) {
-            for (int y = height - 1; y >= 0; y--) {
-                PW.setColor(x, y, painter.colorAt(x, y));
-            }
-        }
+        // all the pixels are written at once, instead of one Color at a time
+        WI.getPixelWriter().setPixels(0, 0, width, height,
+                PixelFormat.getIntArgbInstance(),
+                HeadlessRenderer.renderArgb(panorama, painter), 0, width);
         return WI;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,506 @@
+package ch.epfl.alpano.gui;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.zip.Adler32;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+import ch.epfl.alpano.Preconditions;
+
+/**
+ * Class PngWriter: writes an ARGB image in the PNG format (8 bits RGBA),
+ * row by row from top to bottom, so that the image never has to be
+ * entirely in memory. Each row is filtered with the PNG filter which
+ * probably compresses it best (the one minimizing the sum of the absolute
+ * values of its bytes), then compressed.
+ *
+ * The rows are filtered and compressed by chunks of about ROWS_CHUNK_BYTES
+ * bytes. With a parallelism greater than 1, the chunks are filtered and
+ * compressed in parallel, each one by its own Deflater ending with a sync
+ * flush (as pigz does), and written in order as soon as they are done; at
+ * most two chunks per thread are waiting to be written. The image is the
+ * same, but the compressed data is slightly larger than with a single
+ * Deflater, as a chunk cannot refer to the bytes of the previous ones
+ *
+ * @author Saoud Akram (273661)
+ * @author Karim Kabbani (275044)
+ *
+ */
+public final class PngWriter implements Closeable {
+
+    /*
+     * Signature of a PNG file, and size of the IDAT chunks and of the
+     * chunks of rows compressed at once
+     */
+    private static final byte[] SIGNATURE = { (byte) 0x89, 'P', 'N', 'G',
+            '\r', '\n', 0x1A, '\n' };
+    private static final int CHUNK_BYTES = 1 << 16;
+    private static final int ROWS_CHUNK_BYTES = 1 << 18;
+
+    /*
+     * Header of the zlib stream (deflate, default compression), whose
+     * compressed blocks are produced by Deflaters without header
+     */
+    private static final byte[] ZLIB_HEADER = { 0x78, (byte) 0x9C };
+
+    /*
+     * Bytes per pixel (RGBA) and PNG filter types
+     */
+    private static final int PIXEL_BYTES = 4;
+    private static final int NONE = 0, SUB = 1, UP = 2, AVERAGE = 3,
+            PAETH = 4;
+
+    /*
+     * Fields:
+     */
+    private final DataOutputStream out;
+    private final OutputStream data;
+    private final int width;
+    private final int height;
+    private final int parallelism;
+    private int rows;
+
+    /*
+     * Deflater of the sequential compression, and pool of the parallel one
+     * (only one of them is not null)
+     */
+    private final Deflater deflater;
+    private final ForkJoinPool pool;
+
+    /*
+     * Checksum of the filtered rows, written at the end of the zlib stream
+     */
+    private final Adler32 adler = new Adler32();
+
+    /*
+     * Chunk being filled, and chunks being compressed, in order
+     */
+    private Chunk chunk;
+    private final Queue<ForkJoinTask<Chunk>> pending = new ArrayDeque<>();
+
+    /**
+     * Constructs a writer of an image of the given size, which compresses it
+     * sequentially, and writes its header in the given stream
+     *
+     * @param out:
+     *            stream in which the image is written, closed with the
+     *            writer
+     * @param width:
+     *            width of the image
+     * @param height:
+     *            height of the image
+     * @throws IOException
+     *             if the stream fails
+     * @throws IllegalArgumentException
+     *             if the width or the height is not strictly positive
+     */
+    public PngWriter(OutputStream out, int width, int height)
+            throws IOException {
+        this(out, width, height, 1);
+    }
+
+    /**
+     * Constructs a writer of an image of the given size, which compresses it
+     * on the given number of threads, and writes its header in the given
+     * stream
+     *
+     * @param out:
+     *            stream in which the image is written, closed with the
+     *            writer
+     * @param width:
+     *            width of the image
+     * @param height:
+     *            height of the image
+     * @param parallelism:
+     *            number of threads filtering and compressing the rows (1
+     *            means that they are filtered and compressed sequentially,
+     *            on the calling thread)
+     * @throws IOException
+     *             if the stream fails
+     * @throws IllegalArgumentException
+     *             if the width, the height or the parallelism is not
+     *             strictly positive
+     */
+    public PngWriter(OutputStream out, int width, int height,
+            int parallelism) throws IOException {
+        Preconditions.checkArgument(
+                width > 0 && height > 0 && parallelism >= 1);
+        this.out = new DataOutputStream(Objects.requireNonNull(out));
+        this.width = width;
+        this.height = height;
+        this.parallelism = parallelism;
+        this.deflater = parallelism == 1
+                ? new Deflater(Deflater.DEFAULT_COMPRESSION, true) : null;
+        this.pool = parallelism == 1 ? null : new ForkJoinPool(parallelism);
+        this.chunk = new Chunk(width * PIXEL_BYTES, chunkRows(),
+                new byte[width * PIXEL_BYTES]);
+
+        this.out.write(SIGNATURE);
+        ByteArrayOutputStream header = new ByteArrayOutputStream();
+        DataOutputStream h = new DataOutputStream(header);
+        h.writeInt(width);
+        h.writeInt(height);
+        // 8 bits per sample, RGBA, deflate, adaptive filtering, no interlace
+        h.write(new byte[] { 8, 6, 0, 0, 0 });
+        writeChunk("IHDR", header.toByteArray(), header.size());
+
+        data = new OutputStream() {
+            private final byte[] chunk = new byte[CHUNK_BYTES];
+            private int size;
+
+            @Override
+            public void write(int b) throws IOException {
+                write(new byte[] { (byte) b }, 0, 1);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                while (len > 0) {
+                    int n = Math.min(len, CHUNK_BYTES - size);
+                    System.arraycopy(b, off, chunk, size, n);
+                    size += n;
+                    off += n;
+                    len -= n;
+                    if (size == CHUNK_BYTES) {
+                        flush();
+                    }
+                }
+            }
+
+            @Override
+            public void flush() throws IOException {
+                if (size > 0) {
+                    writeChunk("IDAT", chunk, size);
+                    size = 0;
+                }
+            }
+        };
+        data.write(ZLIB_HEADER);
+    }
+
+    /**
+     * Method which writes the next row of the image
+     *
+     * @param argb:
+     *            colours of the pixels of the row, from left to right, as
+     *            ARGB ints
+     * @throws IOException
+     *             if the stream fails
+     * @throws IllegalArgumentException
+     *             if the row does not have the width of the image
+     * @throws IllegalStateException
+     *             if all the rows were already written
+     */
+    public void writeRow(int[] argb) throws IOException {
+        Preconditions.checkArgument(argb.length == width);
+        if (rows == height) {
+            throw new IllegalStateException();
+        }
+        byte[] raw = chunk.raw;
+        for (int x = 0, i = chunk.rows * width * PIXEL_BYTES; x < width; x++) {
+            int c = argb[x];
+            raw[i++] = (byte) (c >>> 16);
+            raw[i++] = (byte) (c >>> 8);
+            raw[i++] = (byte) c;
+            raw[i++] = (byte) (c >>> 24);
+        }
+        chunk.rows++;
+        rows++;
+        if (rows == height || chunk.rows == chunkRows()) {
+            compress();
+        }
+    }
+
+    /**
+     * Method which returns the number of rows of a chunk
+     *
+     * @return the number of rows of a chunk
+     */
+    private int chunkRows() {
+        return Math.max(1, ROWS_CHUNK_BYTES / (width * PIXEL_BYTES));
+    }
+
+    /**
+     * Method which compresses the chunk being filled, on the calling thread
+     * or in the pool, and starts the next one
+     *
+     * @throws IOException
+     *             if the stream fails
+     */
+    private void compress() throws IOException {
+        Chunk c = chunk;
+        boolean last = rows == height;
+        int rowBytes = width * PIXEL_BYTES;
+        chunk = last ? null
+                : new Chunk(rowBytes, chunkRows(), Arrays.copyOfRange(c.raw,
+                        (c.rows - 1) * rowBytes, c.rows * rowBytes));
+        if (pool == null) {
+            c.filter();
+            c.compress(deflater, Deflater.NO_FLUSH, last);
+            write(c);
+            return;
+        }
+        pending.add(pool.submit(() -> {
+            c.filter();
+            Deflater d = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+            try {
+                c.compress(d, Deflater.SYNC_FLUSH, last);
+            } finally {
+                d.end();
+            }
+            return c;
+        }));
+        while (pending.size() > 2 * parallelism) {
+            write(pending.remove().join());
+        }
+    }
+
+    /**
+     * Method which writes a compressed chunk in the IDAT chunks
+     *
+     * @param c:
+     *            the chunk
+     * @throws IOException
+     *             if the stream fails
+     */
+    private void write(Chunk c) throws IOException {
+        adler.update(c.filtered, 0, c.filteredSize());
+        data.write(c.compressed, 0, c.size);
+    }
+
+    /**
+     * Method which writes a chunk of the file
+     *
+     * @param type:
+     *            type of the chunk
+     * @param bytes:
+     *            array containing the data of the chunk
+     * @param size:
+     *            size of the data
+     * @throws IOException
+     */
+    private void writeChunk(String type, byte[] bytes, int size)
+            throws IOException {
+        byte[] t = type.getBytes(StandardCharsets.US_ASCII);
+        CRC32 crc = new CRC32();
+        crc.update(t);
+        crc.update(bytes, 0, size);
+        out.writeInt(size);
+        out.write(t);
+        out.write(bytes, 0, size);
+        out.writeInt((int) crc.getValue());
+    }
+
+    /**
+     * Method which ends the image and closes the stream
+     *
+     * @throws IOException
+     *             if the stream fails
+     * @throws IllegalStateException
+     *             if some rows of the image were not written
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            if (rows != height) {
+                throw new IllegalStateException();
+            }
+            while (!pending.isEmpty()) {
+                write(pending.remove().join());
+            }
+            int checksum = (int) adler.getValue();
+            data.write(new byte[] { (byte) (checksum >>> 24),
+                    (byte) (checksum >>> 16), (byte) (checksum >>> 8),
+                    (byte) checksum });
+            data.flush();
+            writeChunk("IEND", new byte[0], 0);
+        } finally {
+            if (deflater != null) {
+                deflater.end();
+            }
+            if (pool != null) {
+                pool.shutdownNow();
+            }
+            out.close();
+        }
+    }
+
+    /**
+     * Class Chunk: consecutive rows of the image, with the row above them,
+     * which are filtered and compressed at once
+     */
+    private static final class Chunk {
+
+        /*
+         * Fields: the rows, as RGBA bytes, and the row above them
+         */
+        private final int rowBytes;
+        private final byte[] raw;
+        private final byte[] above;
+        private int rows;
+
+        /*
+         * Filtered rows (each one preceded by its filter type), and the
+         * compressed bytes
+         */
+        private byte[] filtered;
+        private byte[] compressed;
+        private int size;
+
+        private Chunk(int rowBytes, int maxRows, byte[] above) {
+            this.rowBytes = rowBytes;
+            this.raw = new byte[maxRows * rowBytes];
+            this.above = above;
+        }
+
+        /**
+         * Method which returns the number of filtered bytes
+         *
+         * @return the number of filtered bytes
+         */
+        private int filteredSize() {
+            return rows * (rowBytes + 1);
+        }
+
+        /**
+         * Method which filters each row with the filter whose bytes have
+         * the smallest sum of absolute values
+         */
+        private void filter() {
+            filtered = new byte[filteredSize()];
+            byte[] sub = new byte[rowBytes];
+            byte[] up = new byte[rowBytes];
+            byte[] average = new byte[rowBytes];
+            byte[] paeth = new byte[rowBytes];
+            for (int r = 0; r < rows; r++) {
+                byte[] previous = r == 0 ? above : raw;
+                int p = r == 0 ? 0 : (r - 1) * rowBytes;
+                int o = r * rowBytes;
+                long sumNone = 0, sumSub = 0, sumUp = 0, sumAverage = 0,
+                        sumPaeth = 0;
+                for (int i = 0; i < rowBytes; i++) {
+                    int x = raw[o + i] & 0xFF;
+                    int a = i < PIXEL_BYTES ? 0
+                            : raw[o + i - PIXEL_BYTES] & 0xFF;
+                    int b = previous[p + i] & 0xFF;
+                    int c = i < PIXEL_BYTES ? 0
+                            : previous[p + i - PIXEL_BYTES] & 0xFF;
+                    // the sums of the absolute values of the signed bytes
+                    sumNone += Math.abs(raw[o + i]);
+                    sumSub += Math.abs(sub[i] = (byte) (x - a));
+                    sumUp += Math.abs(up[i] = (byte) (x - b));
+                    sumAverage += Math.abs(
+                            average[i] = (byte) (x - (a + b) / 2));
+                    sumPaeth += Math.abs(
+                            paeth[i] = (byte) (x - paeth(a, b, c)));
+                }
+                int best = NONE;
+                long min = sumNone;
+                if (sumSub < min) {
+                    best = SUB;
+                    min = sumSub;
+                }
+                if (sumUp < min) {
+                    best = UP;
+                    min = sumUp;
+                }
+                if (sumAverage < min) {
+                    best = AVERAGE;
+                    min = sumAverage;
+                }
+                if (sumPaeth < min) {
+                    best = PAETH;
+                }
+                int f = r * (rowBytes + 1);
+                filtered[f] = (byte) best;
+                if (best == NONE) {
+                    System.arraycopy(raw, o, filtered, f + 1, rowBytes);
+                } else {
+                    System.arraycopy(best == SUB ? sub
+                            : best == UP ? up
+                                    : best == AVERAGE ? average : paeth,
+                            0, filtered, f + 1, rowBytes);
+                }
+            }
+        }
+
+        /**
+         * Method which compresses the filtered rows
+         *
+         * @param d:
+         *            the Deflater, without zlib header
+         * @param flush:
+         *            flush mode used for the rows, if this is not the last
+         *            chunk
+         * @param last:
+         *            true if this is the last chunk, which ends the
+         *            compressed data
+         */
+        private void compress(Deflater d, int flush, boolean last) {
+            compressed = new byte[filteredSize() / 2 + 64];
+            d.setInput(filtered, 0, filteredSize());
+            if (last) {
+                d.finish();
+                while (!d.finished()) {
+                    deflate(d, Deflater.NO_FLUSH);
+                }
+            } else if (flush == Deflater.NO_FLUSH) {
+                while (!d.needsInput()) {
+                    deflate(d, Deflater.NO_FLUSH);
+                }
+            } else {
+                // the output is complete once it does not fill the buffer
+                while (deflate(d, flush)) {
+                }
+            }
+        }
+
+        /**
+         * Method which compresses some bytes in the remaining space of the
+         * output, enlarged if it is full
+         *
+         * @param d
+         * @param flush
+         * @return true if the output filled the remaining space
+         */
+        private boolean deflate(Deflater d, int flush) {
+            if (size == compressed.length) {
+                compressed = Arrays.copyOf(compressed, 2 * size);
+            }
+            int space = compressed.length - size;
+            int n = d.deflate(compressed, size, space, flush);
+            size += n;
+            return n == space;
+        }
+
+        /**
+         * Method which returns the predictor of the Paeth filter
+         *
+         * @param a:
+         *            byte on the left
+         * @param b:
+         *            byte above
+         * @param c:
+         *            byte above on the left
+         * @return the predictor
+         */
+        private static int paeth(int a, int b, int c) {
+            int p = a + b - c;
+            int pa = Math.abs(p - a);
+            int pb = Math.abs(p - b);
+            int pc = Math.abs(p - c);
+            return pa <= pb && pa <= pc ? a : pb <= pc ? b : c;
+        }
+    }
+}
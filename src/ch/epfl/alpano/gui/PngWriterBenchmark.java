@@ -0,0 +1,70 @@
+package ch.epfl.alpano.gui;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+
+import javax.imageio.ImageIO;
+
+import ch.epfl.alpano.GeoPoint;
+import ch.epfl.alpano.Panorama;
+import ch.epfl.alpano.PanoramaParameters;
+import javafx.embed.swing.SwingFXUtils;
+
+final class PngWriterBenchmark {
+    final static int IMAGE_WIDTH = 4000;
+    final static int IMAGE_HEIGHT = 1500;
+
+    final static int RUNS = 5;
+
+    interface Export {
+        void export(Panorama p, ImagePainter painter, ByteArrayOutputStream out)
+                throws IOException;
+    }
+
+    public static void main(String[] as) throws IOException {
+        PanoramaParameters params = new PanoramaParameters(
+                new GeoPoint(Math.toRadians(7.65), Math.toRadians(46.73)),
+                600, Math.toRadians(180), Math.toRadians(60), 100_000,
+                IMAGE_WIDTH, IMAGE_HEIGHT);
+        // smooth distances, compressible like those of a real panorama
+        Random rng = new Random(2017);
+        Panorama.Builder b = new Panorama.Builder(params);
+        for (int x = 0; x < IMAGE_WIDTH; ++x) {
+            float ridge = IMAGE_HEIGHT / 2 + rng.nextInt(40);
+            for (int y = 0; y < IMAGE_HEIGHT; ++y) {
+                if (y > ridge) {
+                    b.setDistanceAt(x, y, 100_000f * (IMAGE_HEIGHT - y)
+                            / IMAGE_HEIGHT).setSlopeAt(x, y,
+                                    (float) (Math.PI / 4 + x % 50 / 100.0));
+                }
+            }
+        }
+        Panorama p = b.build();
+        ImagePainter painter = ImagePainter.colourPanoramaPainter(p);
+        int threads = Runtime.getRuntime().availableProcessors();
+
+        run("javafx image + ImageIO", p, painter,
+                (q, i, out) -> ImageIO.write(SwingFXUtils.fromFXImage(
+                        PanoramaRenderer.renderPanorama(q, i), null), "png",
+                        out));
+        run("BufferedImage + ImageIO", p, painter, (q, i, out) -> ImageIO
+                .write(HeadlessRenderer.renderImage(q, i), "png", out));
+        run("PngWriter, 1 thread", p, painter,
+                (q, i, out) -> HeadlessRenderer.writePng(q, i, out, 1));
+        run("PngWriter, parallel (" + threads + ")", p, painter,
+                (q, i, out) -> HeadlessRenderer.writePng(q, i, out,
+                        threads));
+    }
+
+    private static void run(String name, Panorama p, ImagePainter painter,
+            Export export) throws IOException {
+        for (int i = 0; i < RUNS; ++i) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            long start = System.nanoTime();
+            export.export(p, painter, out);
+            System.out.printf("%-24s run %d: %5d ms, %8d bytes%n", name, i,
+                    (System.nanoTime() - start) / 1_000_000, out.size());
+        }
+    }
+}
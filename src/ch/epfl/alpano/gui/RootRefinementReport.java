@@ -0,0 +1,137 @@
+package ch.epfl.alpano.gui;
+
+import java.io.File;
+import java.util.concurrent.atomic.LongAdder;
+
+import ch.epfl.alpano.Interval2D;
+import ch.epfl.alpano.Panorama;
+import ch.epfl.alpano.PanoramaComputer;
+import ch.epfl.alpano.PanoramaParameters;
+import ch.epfl.alpano.RootRefinement;
+import ch.epfl.alpano.dem.ContinuousElevationModel;
+import ch.epfl.alpano.dem.DiscreteElevationModel;
+import ch.epfl.alpano.dem.LazyHgtDiscreteElevationModel;
+
+/*
+ * Compares the distances of the predefined panoramas computed with the
+ * bisection to a precision of 4 m (the reference) with the ones computed
+ * with the other root refinements and tolerances. Run from the directory
+ * containing the HGT files.
+ *
+ * The search of a row starts at the root of the row below it, so a root
+ * found a few meters away also shifts the 64 m grid of the rows above: on
+ * rough terrain, the differences include the thin ridges which one grid
+ * hits and the other misses, not only the precision of the roots.
+ */
+final class RootRefinementReport {
+    final static int PARALLELISM = Runtime.getRuntime().availableProcessors();
+
+    final static RootRefinement[] REFINEMENTS = { RootRefinement.BISECTION,
+            RootRefinement.ILLINOIS, RootRefinement.ILLINOIS,
+            RootRefinement.BISECTION, RootRefinement.ILLINOIS };
+    final static double[] TOLERANCES = { 4, 4, 1, 16, 16 };
+
+    final static String[] NAMES = { "NIESEN", "ALPES_DU_JURA", "MONT_RACINE",
+            "FINSTERAARHORN", "TOUR_DE_SAUVABELIN", "PLAGE_DU_PELICAN" };
+    final static PanoramaUserParameters[] VIEWS = { PredefinedPanoramas.NIESEN,
+            PredefinedPanoramas.ALPES_DU_JURA, PredefinedPanoramas.MONT_RACINE,
+            PredefinedPanoramas.FINSTERAARHORN,
+            PredefinedPanoramas.TOUR_DE_SAUVABELIN,
+            PredefinedPanoramas.PLAGE_DU_PELICAN };
+
+    public static void main(String[] as) throws Exception {
+        try (CountingDEM dDEM = new CountingDEM(
+                new LazyHgtDiscreteElevationModel(new File(".")))) {
+            ContinuousElevationModel cDEM = new ContinuousElevationModel(dDEM);
+
+            for (int v = 0; v < VIEWS.length; ++v) {
+                PanoramaParameters parameters = VIEWS[v].panoramaParameters();
+                Panorama reference = null;
+                for (int c = 0; c < REFINEMENTS.length; ++c) {
+                    PanoramaComputer computer = new PanoramaComputer.Builder(
+                            cDEM).setParallelism(PARALLELISM)
+                                    .setRootRefinement(REFINEMENTS[c])
+                                    .setRootTolerance(TOLERANCES[c]).build();
+                    // first computation to warm up the JIT
+                    computer.computePanorama(parameters);
+                    dDEM.samples.reset();
+                    long start = System.nanoTime();
+                    Panorama p = computer.computePanorama(parameters);
+                    long time = System.nanoTime() - start;
+                    if (reference == null) {
+                        reference = p;
+                    }
+                    report(NAMES[v], REFINEMENTS[c], TOLERANCES[c], time,
+                            dDEM.samples.sum(), reference, p);
+                }
+            }
+        }
+    }
+
+    private static void report(String view, RootRefinement refinement,
+            double tolerance, long time, long samples, Panorama reference,
+            Panorama p) {
+        PanoramaParameters parameters = p.parameters();
+        double sum = 0, max = 0;
+        int finite = 0, different = 0;
+        for (int x = 0; x < parameters.width(); ++x) {
+            for (int y = 0; y < parameters.height(); ++y) {
+                float expected = reference.distanceAt(x, y);
+                float actual = p.distanceAt(x, y);
+                if (Float.isInfinite(expected) || Float.isInfinite(actual)) {
+                    if (expected != actual) {
+                        ++different;
+                    }
+                } else {
+                    double error = Math.abs(expected - actual);
+                    sum += error;
+                    max = Math.max(max, error);
+                    ++finite;
+                }
+            }
+        }
+        System.out.printf(
+                "%-18s %-9s %4.1f m: %5d ms, %5.1f evaluations/pixel, error mean %.3f m max %.3f m, %d sky/ground changes%n",
+                view, refinement, tolerance, time / 1_000_000,
+                samples / (double) (parameters.width() * parameters.height()),
+                finite == 0 ? 0 : sum / finite, max, different);
+    }
+
+    private static final class CountingDEM implements DiscreteElevationModel {
+        private final LazyHgtDiscreteElevationModel dem;
+        private final LongAdder samples = new LongAdder();
+
+        CountingDEM(LazyHgtDiscreteElevationModel dem) {
+            this.dem = dem;
+        }
+
+        @Override
+        public Interval2D extent() {
+            return dem.extent();
+        }
+
+        @Override
+        public double elevationSample(int x, int y) {
+            samples.increment();
+            return dem.elevationSample(x, y);
+        }
+
+        @Override
+        public void elevationSamples(int x, int y, int width, int height,
+                double[] samples) {
+            dem.elevationSamples(x, y, width, height, samples);
+        }
+
+        @Override
+        public double interpolatedElevation(int x, int y, double dx,
+                double dy) {
+            samples.increment();
+            return dem.interpolatedElevation(x, y, dx, dy);
+        }
+
+        @Override
+        public void close() {
+            dem.close();
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package ch.epfl.alpano.gui;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Objects;
+import java.util.function.Function;
+
+import ch.epfl.alpano.Panorama;
+import ch.epfl.alpano.PanoramaComputer;
+import ch.epfl.alpano.PanoramaParameters;
+import ch.epfl.alpano.PanoramaStrips;
+
+/**
+ * Class StripRenderer: renders panoramas larger than the memory in PNG
+ * files. The panorama is computed and painted strip by strip (see
+ * PanoramaStrips), and the pixels of each strip are stored in a temporary
+ * file. As a PNG image is stored row by row, it is then encoded from this
+ * file, one row at a time, so that the memory used only depends on the
+ * width of the strips and of the image, and not on its height
+ *
+ * @author Saoud Akram (273661)
+ * @author Karim Kabbani (275044)
+ *
+ */
+public final class StripRenderer {
+
+    /*
+     * Number of columns of the neighbouring strips needed by the painters
+     * using ChannelPainter.maxDistanceToNeighbors
+     */
+    public static final int NEIGHBORS_HALO = 1;
+
+    /**
+     * Constructor of the class: As we want the class to be non-instanciable,
+     * the constucted is private and empty
+     */
+    private StripRenderer() {
+    }
+
+    /**
+     * Method which computes the panorama of the given parameters strip by
+     * strip, paints each strip with the painter given for it, and writes the
+     * image in the given PNG file
+     *
+     * @param computer:
+     *            computer of the strips
+     * @param parameters:
+     *            parameters of the panorama
+     * @param painter:
+     *            function returning the painter of a strip (e.g.
+     *            ImagePainter::colourPanoramaPainter)
+     * @param stripWidth:
+     *            number of columns of a strip (at least 2)
+     * @param halo:
+     *            number of columns of the neighbouring strips read by the
+     *            painter on each side of a strip (NEIGHBORS_HALO for the
+     *            painters using maxDistanceToNeighbors, 0 for the others)
+     * @param file:
+     *            the PNG file, replaced if it exists
+     * @throws IOException
+     *             if the files cannot be written
+     */
+    public static void renderPng(PanoramaComputer computer,
+            PanoramaParameters parameters,
+            Function<Panorama, ImagePainter> painter, int stripWidth,
+            int halo, File file) throws IOException {
+        Objects.requireNonNull(painter);
+        Objects.requireNonNull(file);
+        int width = parameters.width();
+        int height = parameters.height();
+
+        Path pixels = Files.createTempFile("panorama", ".argb");
+        try (FileChannel channel = FileChannel.open(pixels,
+                StandardOpenOption.READ, StandardOpenOption.WRITE,
+                StandardOpenOption.DELETE_ON_CLOSE)) {
+            PanoramaStrips.compute(computer, parameters, stripWidth, halo,
+                    (strip, fromX, from, to) -> {
+                        ImagePainter p = painter.apply(strip);
+                        ByteBuffer row = ByteBuffer
+                                .allocate((to - from) * Integer.BYTES);
+                        IntBuffer ints = row.asIntBuffer();
+                        int[] argb = new int[to - from];
+                        for (int y = 0; y < height; y++) {
+                            p.colorsArgbAt(from, y, to - from, argb);
+                            ints.clear();
+                            ints.put(argb);
+                            row.clear();
+                            write(channel, row, ((long) y * width + fromX
+                                    + from) * Integer.BYTES);
+                        }
+                    });
+
+            try (PngWriter png = new PngWriter(new BufferedOutputStream(
+                    new FileOutputStream(file)), width, height)) {
+                ByteBuffer row = ByteBuffer.allocate(width * Integer.BYTES);
+                int[] argb = new int[width];
+                for (int y = 0; y < height; y++) {
+                    row.clear();
+                    long position = (long) y * width * Integer.BYTES;
+                    while (row.hasRemaining()) {
+                        if (channel.read(row, position + row.position()) < 0) {
+                            throw new IOException("truncated pixels file");
+                        }
+                    }
+                    row.flip();
+                    row.asIntBuffer().get(argb);
+                    png.writeRow(argb);
+                }
+            }
+        }
+    }
+
+    /**
+     * Method which writes all the remaining bytes of the given buffer at the
+     * given position of the file
+     *
+     * @param channel
+     * @param buffer
+     * @param position
+     * @throws IOException
+     */
+    private static void write(FileChannel channel, ByteBuffer buffer,
+            long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer, position + buffer.position());
+        }
+    }
+}
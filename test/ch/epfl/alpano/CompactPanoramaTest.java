@@ -0,0 +1,150 @@
+package ch.epfl.alpano;
+
+import static ch.epfl.test.TestRandomizer.RANDOM_ITERATIONS;
+import static ch.epfl.test.TestRandomizer.newRandom;
+import static java.lang.Math.toRadians;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+public class CompactPanoramaTest {
+    private static PanoramaParameters PARAMS() {
+        return new PanoramaParameters(
+                new GeoPoint(toRadians(7), toRadians(46)),
+                1000,
+                toRadians(180),
+                toRadians(60),
+                100_000,
+                31,
+                17);
+    }
+
+    private static Panorama randomPanorama(Random rng) {
+        PanoramaParameters ps = PARAMS();
+        Panorama.Builder b = new Panorama.Builder(ps);
+        for (int x = 0; x < ps.width(); ++x) {
+            for (int y = 0; y < ps.height(); ++y) {
+                if (rng.nextInt(4) == 0) {
+                    // the sky
+                    continue;
+                }
+                b.setDistanceAt(x, y, rng.nextFloat() * 100_000)
+                .setLongitudeAt(x, y, (float) toRadians(6 + 2 * rng.nextDouble()))
+                .setLatitudeAt(x, y, (float) toRadians(45 + 2 * rng.nextDouble()))
+                .setElevationAt(x, y, rng.nextFloat() * 4800)
+                .setSlopeAt(x, y, (float) (rng.nextDouble() * Math.PI / 2));
+            }
+        }
+        return b.build();
+    }
+
+    private static void assertClose(float expected, float actual, double bound) {
+        assertEquals(expected, actual, bound + Math.ulp(expected));
+    }
+
+    @Test
+    public void compactedValuesAreWithinErrorBounds() {
+        Random rng = newRandom();
+        PanoramaParameters ps = PARAMS();
+        for (int i = 0; i < RANDOM_ITERATIONS / 10; ++i) {
+            Panorama p = randomPanorama(rng);
+            CompactPanorama c = p.compacted();
+            double lon = c.errorBound(PanoramaChannel.LONGITUDE);
+            double lat = c.errorBound(PanoramaChannel.LATITUDE);
+            double ele = c.errorBound(PanoramaChannel.ELEVATION);
+            double slo = c.errorBound(PanoramaChannel.SLOPE);
+            for (int x = 0; x < ps.width(); ++x) {
+                for (int y = 0; y < ps.height(); ++y) {
+                    assertEquals(p.distanceAt(x, y), c.distanceAt(x, y), 0);
+                    assertClose(p.longitudeAt(x, y), c.longitudeAt(x, y), lon);
+                    assertClose(p.latitudeAt(x, y), c.latitudeAt(x, y), lat);
+                    assertClose(p.elevationAt(x, y), c.elevationAt(x, y), ele);
+                    assertClose(p.slopeAt(x, y), c.slopeAt(x, y), slo);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void compactedErrorBoundsAreSmall() {
+        CompactPanorama c = randomPanorama(newRandom()).compacted();
+        assertEquals(0, c.errorBound(PanoramaChannel.DISTANCE), 0);
+        assertTrue(c.errorBound(PanoramaChannel.LONGITUDE) < 1e-6);
+        assertTrue(c.errorBound(PanoramaChannel.LATITUDE) < 1e-6);
+        assertTrue(c.errorBound(PanoramaChannel.ELEVATION) < 0.1);
+        assertTrue(c.errorBound(PanoramaChannel.SLOPE) < 2e-5);
+    }
+
+    @Test
+    public void compactedKeepsZeroValuesExactly() {
+        CompactPanorama c = new Panorama.Builder(PARAMS())
+                .setLongitudeAt(1, 1, 0.1f)
+                .setLatitudeAt(1, 1, 0.8f)
+                .setElevationAt(1, 1, 2000)
+                .setSlopeAt(1, 1, 0.5f)
+                .build()
+                .compacted();
+        assertEquals(Float.POSITIVE_INFINITY, c.distanceAt(0, 0), 0);
+        assertEquals(0, c.longitudeAt(0, 0), 0);
+        assertEquals(0, c.latitudeAt(0, 0), 0);
+        assertEquals(0, c.elevationAt(0, 0), 0);
+        assertEquals(0, c.slopeAt(0, 0), 0);
+    }
+
+    @Test
+    public void compactedUsesTwelveBytesPerSample() {
+        PanoramaParameters ps = PARAMS();
+        assertEquals(12L * ps.width() * ps.height(),
+                new Panorama.Builder(ps).build().compacted().bytes());
+        assertEquals(6L * ps.width() * ps.height(),
+                new Panorama.Builder(ps, PanoramaChannel.RENDERING,
+                        PanoramaStorage.HEAP).build().compacted().bytes());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void compactedOnlyKeepsBuiltChannels() {
+        CompactPanorama c = new Panorama.Builder(PARAMS(),
+                PanoramaChannel.RENDERING, PanoramaStorage.HEAP).build()
+                .compacted();
+        assertEquals(PanoramaChannel.RENDERING, c.channels());
+        c.latitudeAt(0, 0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void compactedFailsWithNonFiniteValue() {
+        new Panorama.Builder(PARAMS()).setSlopeAt(0, 0, Float.NaN).build()
+                .compacted();
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void distanceAtFailsWithInvalidIndex() {
+        new Panorama.Builder(PARAMS()).build().compacted().distanceAt(31, 0);
+    }
+
+    @Test
+    public void distanceAtReturnsDefaultValueOutOfBounds() {
+        CompactPanorama c = new Panorama.Builder(PARAMS()).build().compacted();
+        assertEquals(-1, c.distanceAt(-1, 0, -1), 0);
+        assertEquals(-1, c.distanceAt(0, 17, -1), 0);
+    }
+
+    @Test
+    public void expandedHasSameValuesAsCompacted() {
+        PanoramaParameters ps = PARAMS();
+        CompactPanorama c = randomPanorama(newRandom()).compacted();
+        Panorama p = c.expanded(PanoramaStorage.DIRECT);
+        assertEquals(PanoramaChannel.ALL, p.channels());
+        for (int x = 0; x < ps.width(); ++x) {
+            for (int y = 0; y < ps.height(); ++y) {
+                assertEquals(c.distanceAt(x, y), p.distanceAt(x, y), 0);
+                assertEquals(c.longitudeAt(x, y), p.longitudeAt(x, y), 0);
+                assertEquals(c.latitudeAt(x, y), p.latitudeAt(x, y), 0);
+                assertEquals(c.elevationAt(x, y), p.elevationAt(x, y), 0);
+                assertEquals(c.slopeAt(x, y), p.slopeAt(x, y), 0);
+            }
+        }
+    }
+}
@@ -6,8 +6,14 @@ import static java.lang.Math.cos;
 import static java.lang.Math.sin;
 import static java.lang.Math.toRadians;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.DoubleUnaryOperator;
 
 import org.junit.Test;
@@ -15,6 +21,7 @@ import org.junit.Test;
 import ch.epfl.alpano.dem.ContinuousElevationModel;
 import ch.epfl.alpano.dem.DiscreteElevationModel;
 import ch.epfl.alpano.dem.ElevationProfile;
+import ch.epfl.alpano.dem.MaxElevationPyramid;
 
 public class PanoramaComputerTest {
     @Test(expected = NullPointerException.class)
@@ -60,6 +67,379 @@ public class PanoramaComputerTest {
         }
     }
 
+    @Test(expected = IllegalArgumentException.class)
+    public void constructorFailsWithZeroParallelism() {
+        new PanoramaComputer(zeroContDEM(), 0);
+    }
+
+    @Test
+    public void parallelComputationIsIdenticalToSequentialComputation() {
+        int w = 101, h = 37;
+        GeoPoint o = new GeoPoint(0,0);
+        PanoramaParameters pp = new PanoramaParameters(o, 2000, toRadians(45), toRadians(h), 300_000, w, h);
+        Panorama expected = new PanoramaComputer(wavyContDEM()).computePanorama(pp);
+        for (int parallelism : new int[] { 2, 3, 8 }) {
+            Panorama p = new PanoramaComputer(wavyContDEM(), parallelism).computePanorama(pp);
+            assertSamePanorama(expected, p);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void builderFailsWithZeroParallelism() {
+        new PanoramaComputer.Builder(zeroContDEM()).setParallelism(0);
+    }
+
+    @Test
+    public void acceleratedComputationIsIdenticalToPlainComputation() {
+        int w = 101, h = 37;
+        Interval2D extent = new Interval2D(
+                new Interval1D(0, 1200),
+                new Interval1D(0, 1200));
+        DiscreteElevationModel dem = new WavyDEM(extent);
+        ContinuousElevationModel cDEM = new ContinuousElevationModel(dem);
+        MaxElevationPyramid pyramid = new MaxElevationPyramid(dem);
+        GeoPoint o = new GeoPoint(toRadians(0.01), toRadians(0.01));
+        for (int elevation : new int[] { 600, 2000 }) {
+            PanoramaParameters pp = new PanoramaParameters(o, elevation, toRadians(45), toRadians(h), 30_000, w, h);
+            Panorama expected = new PanoramaComputer(cDEM).computePanorama(pp);
+            Panorama p = new PanoramaComputer.Builder(cDEM)
+                    .setPyramid(pyramid)
+                    .setParallelism(2)
+                    .build()
+                    .computePanorama(pp);
+            assertSamePanorama(expected, p);
+        }
+    }
+
+    @Test
+    public void narrowRidgesAreFoundLikeByTheBaselineComputation() {
+        int w = 301, h = 121;
+        Interval2D extent = new Interval2D(
+                new Interval1D(0, 1200),
+                new Interval1D(0, 1200));
+        DiscreteElevationModel dem = new RidgedDEM(extent);
+        ContinuousElevationModel cDEM = new ContinuousElevationModel(dem);
+        GeoPoint o = new GeoPoint(toRadians(0.01), toRadians(0.01));
+        PanoramaParameters pp = new PanoramaParameters(o, 300, toRadians(45), toRadians(60), 20_000, w, h);
+        float[] expected = baselineDistances(cDEM, pp);
+        Panorama plain = new PanoramaComputer(cDEM).computePanorama(pp);
+        Panorama accelerated = new PanoramaComputer.Builder(cDEM)
+                .setPyramid(new MaxElevationPyramid(dem))
+                .build()
+                .computePanorama(pp);
+        int sky = 0;
+        for (int x = 0; x < w; ++x) {
+            for (int y = 0; y < h; ++y) {
+                float d = expected[y * w + x];
+                if (d == POSITIVE_INFINITY)
+                    ++sky;
+                assertEquals(d, plain.distanceAt(x, y), 1e-3 * d);
+                assertEquals(d, accelerated.distanceAt(x, y), 1e-3 * d);
+            }
+        }
+        assertTrue(sky < w * h / 2);
+    }
+
+    @Test
+    public void horizonSavesEvaluationsOfTheProfiles() {
+        int w = 101, h = 61;
+        Interval2D extent = new Interval2D(
+                new Interval1D(0, 1200),
+                new Interval1D(0, 1200));
+        AtomicInteger evaluations = new AtomicInteger();
+        DiscreteElevationModel wavy = new WavyDEM(extent);
+        DiscreteElevationModel dem = new DiscreteElevationModel() {
+            @Override
+            public void close() { }
+
+            @Override
+            public Interval2D extent() { return extent; }
+
+            @Override
+            public double elevationSample(int x, int y) { return wavy.elevationSample(x, y); }
+
+            @Override
+            public double interpolatedElevation(int x, int y, double dx, double dy) {
+                evaluations.incrementAndGet();
+                return wavy.interpolatedElevation(x, y, dx, dy);
+            }
+        };
+        ContinuousElevationModel cDEM = new ContinuousElevationModel(dem);
+        GeoPoint o = new GeoPoint(toRadians(0.1), toRadians(0.1));
+        PanoramaParameters pp = new PanoramaParameters(o, 1500, toRadians(45), toRadians(60), 50_000, w, h);
+        float[] expected = baselineDistances(cDEM, pp);
+        int baseline = evaluations.getAndSet(0);
+        Panorama p = new PanoramaComputer(cDEM).computePanorama(pp);
+        int sky = 0;
+        for (int x = 0; x < w; ++x) {
+            for (int y = 0; y < h; ++y) {
+                float d = expected[y * w + x];
+                if (d == POSITIVE_INFINITY)
+                    ++sky;
+                assertEquals(d, p.distanceAt(x, y), 1e-3 * d);
+            }
+        }
+        assertTrue(0 < sky && sky < w * h);
+        assertTrue(evaluations.get() < baseline / 2);
+    }
+
+    // the distances computed as computePanorama did before the culling of
+    // the sky rows, one root search per sample up to the maximum distance
+    private static float[] baselineDistances(ContinuousElevationModel cDEM, PanoramaParameters pp) {
+        int w = pp.width(), h = pp.height();
+        float[] distances = new float[w * h];
+        java.util.Arrays.fill(distances, POSITIVE_INFINITY);
+        for (int x = 0; x < w; ++x) {
+            ElevationProfile profile = new ElevationProfile(cDEM, pp.observerPosition(), pp.azimuthForX(x), pp.maxDistance());
+            double initRay = 0;
+            for (int y = h - 1; y >= 0; --y) {
+                double altitude = pp.altitudeForY(y);
+                DoubleUnaryOperator f = PanoramaComputer.rayToGroundDistance(profile, pp.observerElevation(), Math.tan(altitude));
+                double x1 = Math2.firstIntervalContainingRoot(f, initRay, pp.maxDistance(), 64);
+                if (x1 == Double.POSITIVE_INFINITY)
+                    break;
+                initRay = Math2.improveRoot(f, x1, x1 + 64, 4);
+                distances[y * w + x] = (float) (initRay / Math.cos(altitude));
+            }
+        }
+        return distances;
+    }
+
+    @Test
+    public void sampledComputationIsCloseToExactComputation() {
+        int w = 101, h = 37;
+        GeoPoint o = new GeoPoint(0,0);
+        PanoramaParameters pp = new PanoramaParameters(o, 2000, toRadians(45), toRadians(h), 300_000, w, h);
+        Panorama expected = new PanoramaComputer(wavyContDEM()).computePanorama(pp);
+        Panorama p = new PanoramaComputer.Builder(wavyContDEM())
+                .setSampledProfiles(true)
+                .build()
+                .computePanorama(pp);
+        int different = 0;
+        for (int x = 0; x < w; ++x) {
+            for (int y = 0; y < h; ++y) {
+                float d = expected.distanceAt(x, y);
+                if (Math.abs(d - p.distanceAt(x, y)) > 1e-3 * d)
+                    ++different;
+            }
+        }
+        assertTrue(different <= w * h / 100);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void builderFailsWithZeroRootTolerance() {
+        new PanoramaComputer.Builder(zeroContDEM()).setRootTolerance(0);
+    }
+
+    @Test
+    public void illinoisComputationIsCloseToBisectionComputation() {
+        int w = 101, h = 37;
+        GeoPoint o = new GeoPoint(0,0);
+        PanoramaParameters pp = new PanoramaParameters(o, 2000, toRadians(45), toRadians(h), 300_000, w, h);
+        Panorama expected = new PanoramaComputer(wavyContDEM()).computePanorama(pp);
+        Panorama p = new PanoramaComputer.Builder(wavyContDEM())
+                .setRootRefinement(RootRefinement.ILLINOIS)
+                .build()
+                .computePanorama(pp);
+        for (int x = 0; x < w; ++x) {
+            for (int y = 0; y < h; ++y) {
+                float d = expected.distanceAt(x, y);
+                assertEquals(d, p.distanceAt(x, y), d == POSITIVE_INFINITY ? 0 : 8);
+            }
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void builderFailsWithTooLargeColumnReuseTolerance() {
+        new PanoramaComputer.Builder(zeroContDEM()).setColumnReuseTolerance(0.6);
+    }
+
+    @Test
+    public void pannedComputationCopiesColumnsOfPreviousPanorama() {
+        int w = 101, h = 37, shift = 10;
+        double fov = toRadians(50), step = fov / (w - 1);
+        GeoPoint o = new GeoPoint(0,0);
+        PanoramaParameters pp = new PanoramaParameters(o, 2000, toRadians(45), fov, 300_000, w, h);
+        PanoramaParameters panned = new PanoramaParameters(o, 2000, toRadians(45) + shift * step, fov, 300_000, w, h);
+        // the previous panorama is computed on another terrain, so that its
+        // columns can be recognized
+        Panorama previous = new PanoramaComputer(zeroContDEM()).computePanorama(pp);
+        Panorama expected = new PanoramaComputer(wavyContDEM()).computePanorama(panned);
+        Panorama p = new PanoramaComputer.Builder(wavyContDEM())
+                .setColumnReuseTolerance(1e-3)
+                .build()
+                .computePanorama(panned, previous);
+        for (int x = 0; x < w; ++x) {
+            for (int y = 0; y < h; ++y) {
+                float d = x + shift < w ? previous.distanceAt(x + shift, y) : expected.distanceAt(x, y);
+                assertEquals(d, p.distanceAt(x, y), 0);
+            }
+        }
+    }
+
+    @Test
+    public void chainedPansDoNotAccumulateColumnShifts() {
+        int w = 101, h = 37;
+        double fov = toRadians(50), step = fov / (w - 1);
+        GeoPoint o = new GeoPoint(0,0);
+        PanoramaComputer pc = new PanoramaComputer.Builder(wavyContDEM())
+                .setColumnReuseTolerance(0.5)
+                .build();
+        // each pan shifts the columns by 0.3 column, so a column copied
+        // again and again would drift by 1.5 columns after 5 pans
+        Panorama p = null;
+        for (int i = 0; i <= 5; ++i) {
+            PanoramaParameters pp = new PanoramaParameters(o, 2000, toRadians(45) + i * 0.3 * step, fov, 300_000, w, h);
+            p = pc.computePanorama(pp, p);
+        }
+        int shifted = 0;
+        for (int x = 0; x < w; ++x) {
+            double shift = p.azimuthShiftAt(x);
+            assertTrue(Math.abs(shift) <= 0.5 * step + 1e-12);
+            if (shift != 0)
+                ++shifted;
+            // the column is the one traced for its shifted azimuth
+            PanoramaParameters traced = new PanoramaParameters(o, 2000, p.parameters().centerAzimuth() + shift, fov, 300_000, w, h);
+            Panorama expected = new PanoramaComputer(wavyContDEM()).computePanorama(traced);
+            for (int y = 0; y < h; ++y)
+                assertEquals(expected.distanceAt(x, y), p.distanceAt(x, y), 1e-3);
+        }
+        assertTrue(shifted > 0);
+    }
+
+    @Test
+    public void computationIgnoresIncompatiblePreviousPanorama() {
+        int w = 101, h = 37;
+        GeoPoint o = new GeoPoint(0,0);
+        PanoramaParameters pp = new PanoramaParameters(o, 2000, toRadians(45), toRadians(h), 300_000, w, h);
+        PanoramaParameters higher = new PanoramaParameters(o, 2500, toRadians(45), toRadians(h), 300_000, w, h);
+        Panorama previous = new PanoramaComputer(zeroContDEM()).computePanorama(higher);
+        Panorama expected = new PanoramaComputer(wavyContDEM()).computePanorama(pp);
+        Panorama p = new PanoramaComputer.Builder(wavyContDEM())
+                .setColumnReuseTolerance(0.5)
+                .build()
+                .computePanorama(pp, previous);
+        assertSamePanorama(expected, p);
+    }
+
+    @Test
+    public void progressiveComputationIsIdenticalToComputation() {
+        int w = 101, h = 37;
+        GeoPoint o = new GeoPoint(0,0);
+        PanoramaParameters pp = new PanoramaParameters(o, 2000, toRadians(45), toRadians(h), 300_000, w, h);
+        Panorama expected = new PanoramaComputer(wavyContDEM()).computePanorama(pp);
+        for (int parallelism : new int[] { 1, 4 }) {
+            List<Panorama> intermediates = new ArrayList<>();
+            Panorama p = new PanoramaComputer(wavyContDEM(), parallelism)
+                    .computePanorama(pp, null, intermediates::add);
+            assertSamePanorama(expected, p);
+            assertEquals(3, intermediates.size());
+            for (int x = 0; x < w; ++x) {
+                for (int y = 0; y < h; ++y) {
+                    assertEquals(expected.distanceAt(x - x % 8, y), intermediates.get(0).distanceAt(x, y), 0);
+                    assertEquals(expected.distanceAt(x - x % 2, y), intermediates.get(2).distanceAt(x, y), 0);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void computationReportsAllColumnsDone() {
+        int w = 101, h = 37;
+        GeoPoint o = new GeoPoint(0,0);
+        PanoramaParameters pp = new PanoramaParameters(o, 2000, toRadians(45), toRadians(h), 300_000, w, h);
+        for (int parallelism : new int[] { 1, 4 }) {
+            AtomicInteger done = new AtomicInteger();
+            new PanoramaComputer(wavyContDEM(), parallelism)
+                    .computePanorama(pp, null, p -> {}, () -> false, done::addAndGet);
+            assertEquals(w, done.get());
+        }
+    }
+
+    @Test
+    public void cancelledComputationStops() {
+        int w = 101, h = 37;
+        GeoPoint o = new GeoPoint(0,0);
+        PanoramaParameters pp = new PanoramaParameters(o, 2000, toRadians(45), toRadians(h), 300_000, w, h);
+        for (int parallelism : new int[] { 1, 4 }) {
+            AtomicInteger done = new AtomicInteger();
+            try {
+                new PanoramaComputer(wavyContDEM(), parallelism)
+                        .computePanorama(pp, null, null, () -> done.get() >= 10, done::addAndGet);
+                fail();
+            } catch (CancellationException e) {
+                assertTrue(done.get() < w);
+            }
+        }
+    }
+
+    @Test
+    public void computationOfRenderingChannelsOffHeapIsIdenticalToComputation() {
+        int w = 101, h = 37;
+        GeoPoint o = new GeoPoint(0,0);
+        PanoramaParameters pp = new PanoramaParameters(o, 2000, toRadians(45), toRadians(h), 300_000, w, h);
+        Panorama expected = new PanoramaComputer(wavyContDEM()).computePanorama(pp);
+        Panorama p = new PanoramaComputer.Builder(wavyContDEM())
+                .setChannels(PanoramaChannel.RENDERING)
+                .setStorage(PanoramaStorage.DIRECT)
+                .build()
+                .computePanorama(pp);
+        assertEquals(PanoramaChannel.RENDERING, p.channels());
+        for (int x = 0; x < w; ++x) {
+            for (int y = 0; y < h; ++y) {
+                assertEquals(expected.distanceAt(x, y), p.distanceAt(x, y), 0);
+                assertEquals(expected.slopeAt(x, y), p.slopeAt(x, y), 0);
+            }
+        }
+    }
+
+    @Test
+    public void stripsHaveSameSamplesAsPanorama() throws IOException {
+        int w = 101, h = 37;
+        GeoPoint o = new GeoPoint(0,0);
+        PanoramaParameters pp = new PanoramaParameters(o, 2000, toRadians(45), toRadians(h), 300_000, w, h);
+        PanoramaComputer pc = new PanoramaComputer(wavyContDEM());
+        Panorama expected = pc.computePanorama(pp);
+        int[] computed = new int[w];
+        PanoramaStrips.compute(pc, pp, 10, 1, (strip, fromX, from, to) -> {
+            assertTrue(from <= 1 && strip.parameters().width() - to <= 1);
+            for (int x = 0; x < strip.parameters().width(); ++x) {
+                if (from <= x && x < to) {
+                    computed[fromX + x]++;
+                }
+                for (int y = 0; y < h; ++y) {
+                    assertEquals(expected.distanceAt(fromX + x, y), strip.distanceAt(x, y), 1e-3);
+                }
+            }
+        });
+        for (int x = 0; x < w; ++x) {
+            assertEquals(1, computed[x]);
+        }
+    }
+
+    @Test
+    public void lastStripHasAtLeastTwoColumns() throws IOException {
+        GeoPoint o = new GeoPoint(0,0);
+        PanoramaParameters pp = new PanoramaParameters(o, 2000, toRadians(45), toRadians(20), 300_000, 21, 11);
+        List<Integer> widths = new ArrayList<>();
+        PanoramaStrips.compute(new PanoramaComputer(wavyContDEM()), pp, 10, 0,
+                (strip, fromX, from, to) -> {
+                    widths.add(to - from);
+                    if (to - from == 1) {
+                        assertEquals(2, strip.parameters().width());
+                        assertEquals(19, fromX);
+                    }
+                });
+        assertEquals(List.of(10, 10, 1), widths);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void stripsFailWithTooNarrowStrips() throws IOException {
+        GeoPoint o = new GeoPoint(0,0);
+        PanoramaParameters pp = new PanoramaParameters(o, 2000, toRadians(45), toRadians(20), 300_000, 21, 11);
+        PanoramaStrips.compute(new PanoramaComputer(wavyContDEM()), pp, 1, 1, (strip, fromX, from, to) -> {});
+    }
+
     @Test
     public void rayToGroundDistanceAccountsForEarthCurvatureAndRefraction() {
         double dropPerM2 = (1d - 0.13d) / (2d * 6_371_000d);
@@ -74,6 +454,35 @@ public class PanoramaComputerTest {
         }
     }
 
+    @Test
+    public void rayToGroundRootIsIdenticalToMath2Root() {
+        double startingElevation = 2_000;
+        ElevationProfile p = new ElevationProfile(wavyContDEM(), new GeoPoint(0,0), toRadians(45), 100_000);
+        RayToGround rays = new RayToGround(p, startingElevation, null, false, RootRefinement.BISECTION, 4);
+        for (int k = -20; k < 20; ++k) {
+            double slope = Math.tan(toRadians(k / 10d));
+            DoubleUnaryOperator f = PanoramaComputer.rayToGroundDistance(p, startingElevation, slope);
+            double x1 = Math2.firstIntervalContainingRoot(f, 0, 100_000, 64);
+            double expected = x1 == Double.POSITIVE_INFINITY ? x1 : Math2.improveRoot(f, x1, x1 + 64, 4);
+            rays.setSlope(slope);
+            assertEquals(expected, rays.root(0, 100_000), 0);
+            assertEquals(f.applyAsDouble(1234.5), rays.distanceAt(1234.5), 0);
+        }
+    }
+
+    static void assertSamePanorama(Panorama expected, Panorama actual) {
+        int w = expected.parameters().width(), h = expected.parameters().height();
+        for (int x = 0; x < w; ++x) {
+            for (int y = 0; y < h; ++y) {
+                assertEquals(expected.distanceAt(x, y), actual.distanceAt(x, y), 0);
+                assertEquals(expected.longitudeAt(x, y), actual.longitudeAt(x, y), 0);
+                assertEquals(expected.latitudeAt(x, y), actual.latitudeAt(x, y), 0);
+                assertEquals(expected.elevationAt(x, y), actual.elevationAt(x, y), 0);
+                assertEquals(expected.slopeAt(x, y), actual.slopeAt(x, y), 0);
+            }
+        }
+    }
+
     private static Interval2D positiveQuadrant() {
         return new Interval2D(
                 new Interval1D(0, 3600 * 179),
@@ -94,7 +503,7 @@ public class PanoramaComputerTest {
         public ZeroDEM(Interval2D extent) { this.extent = extent; }
 
         @Override
-        public void close() throws Exception { }
+        public void close() { }
 
         @Override
         public Interval2D extent() { return extent; }
@@ -114,7 +523,7 @@ public class PanoramaComputerTest {
         public WavyDEM(Interval2D extent) { this.extent = extent; }
 
         @Override
-        public void close() throws Exception { }
+        public void close() { }
 
         @Override
         public Interval2D extent() { return extent; }
@@ -129,6 +538,27 @@ public class PanoramaComputerTest {
         }
     }
 
+    // a ridge 3 samples wide every 37 samples, narrower than the 64 m
+    // between two evaluations of a profile
+    private final static class RidgedDEM implements DiscreteElevationModel {
+        private final Interval2D extent;
+
+        public RidgedDEM(Interval2D extent) { this.extent = extent; }
+
+        @Override
+        public void close() { }
+
+        @Override
+        public Interval2D extent() { return extent; }
+
+        @Override
+        public double elevationSample(int x, int y) {
+            if (! extent.contains(x, y))
+                throw new IllegalArgumentException();
+            return (x + y) % 37 < 3 ? 500 : 0;
+        }
+    }
+
     private static float[] WAVY_EXPECTED_DATA = new float[] {
             POSITIVE_INFINITY, 0, 0, 0, 0,
             POSITIVE_INFINITY, 0, 0, 0, 0,
@@ -0,0 +1,154 @@
+package ch.epfl.alpano;
+
+import static ch.epfl.test.TestRandomizer.newRandom;
+import static java.lang.Math.toRadians;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class PanoramaFileTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static PanoramaParameters PARAMS() {
+        return new PanoramaParameters(
+                new GeoPoint(toRadians(7), toRadians(46)),
+                1000,
+                toRadians(180),
+                toRadians(60),
+                100_000,
+                301,
+                117);
+    }
+
+    private static Panorama randomPanorama(Random rng,
+            Set<PanoramaChannel> channels) {
+        PanoramaParameters ps = PARAMS();
+        Panorama.Builder b = new Panorama.Builder(ps, channels,
+                PanoramaStorage.HEAP);
+        for (int x = 0; x < ps.width(); ++x) {
+            for (int y = 0; y < ps.height(); ++y) {
+                b.setDistanceAt(x, y, rng.nextFloat() * 100_000)
+                .setLongitudeAt(x, y, rng.nextFloat())
+                .setLatitudeAt(x, y, rng.nextFloat())
+                .setElevationAt(x, y, rng.nextFloat() * 4800)
+                .setSlopeAt(x, y, rng.nextFloat());
+            }
+        }
+        return b.build();
+    }
+
+    private static void assertSamePanorama(Panorama expected, Panorama actual) {
+        PanoramaParameters ps = expected.parameters();
+        PanoramaParameters actualPs = actual.parameters();
+        assertEquals(ps.observerPosition().longitude(), actualPs.observerPosition().longitude(), 0);
+        assertEquals(ps.observerPosition().latitude(), actualPs.observerPosition().latitude(), 0);
+        assertEquals(ps.observerElevation(), actualPs.observerElevation());
+        assertEquals(ps.centerAzimuth(), actualPs.centerAzimuth(), 0);
+        assertEquals(ps.horizontalFieldOfView(), actualPs.horizontalFieldOfView(), 0);
+        assertEquals(ps.maxDistance(), actualPs.maxDistance());
+        assertEquals(ps.width(), actualPs.width());
+        assertEquals(ps.height(), actualPs.height());
+        assertEquals(expected.channels(), actual.channels());
+        for (int x = 0; x < ps.width(); ++x) {
+            for (int y = 0; y < ps.height(); ++y) {
+                for (PanoramaChannel c : expected.channels()) {
+                    assertEquals(expected.buffer(c).get(ps.linearSampleIndex(x, y)),
+                            actual.buffer(c).get(ps.linearSampleIndex(x, y)), 0);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void readReturnsWrittenPanorama() throws IOException {
+        File file = folder.newFile();
+        Panorama p = randomPanorama(newRandom(), PanoramaChannel.ALL);
+        PanoramaFile.write(p, file);
+        assertEquals(PanoramaFile.HEADER_BYTES
+                + 5L * Float.BYTES * p.parameters().width() * p.parameters().height(),
+                file.length());
+        Panorama read = PanoramaFile.read(file);
+        assertSame(PanoramaStorage.MAPPED, read.storage());
+        assertSamePanorama(p, read);
+        assertEquals(p.slopeAt(3, 4), read.slopeAt(3, 4), 0);
+    }
+
+    @Test
+    public void readReturnsWrittenPanoramaWithSomeChannels() throws IOException {
+        File file = folder.newFile();
+        Panorama p = randomPanorama(newRandom(), PanoramaChannel.RENDERING);
+        PanoramaFile.write(p, file);
+        assertSamePanorama(p, PanoramaFile.read(file));
+    }
+
+    @Test
+    public void writerWritesColumnsOfStrips() throws IOException {
+        File file = folder.newFile();
+        Panorama p = randomPanorama(newRandom(), PanoramaChannel.ALL);
+        PanoramaParameters ps = p.parameters();
+        try (PanoramaFile.Writer writer = new PanoramaFile.Writer(file, ps,
+                PanoramaChannel.ALL)) {
+            for (int x = ps.width() - 1; x >= 0; x -= 20) {
+                int fromX = Math.max(0, x - 19);
+                writer.writeColumns(p, 0, fromX, x + 1);
+            }
+        }
+        assertSamePanorama(p, PanoramaFile.read(file));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void writerFailsWithColumnsOutOfPanorama() throws IOException {
+        File file = folder.newFile();
+        Panorama p = randomPanorama(newRandom(), PanoramaChannel.ALL);
+        try (PanoramaFile.Writer writer = new PanoramaFile.Writer(file,
+                p.parameters(), PanoramaChannel.ALL)) {
+            writer.writeColumns(p, 1, 0, p.parameters().width());
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void readFailsWithWrongMagicNumber() throws IOException {
+        File file = folder.newFile();
+        PanoramaFile.write(randomPanorama(newRandom(), PanoramaChannel.ALL), file);
+        try (RandomAccessFile f = new RandomAccessFile(file, "rw")) {
+            f.writeInt(0);
+        }
+        PanoramaFile.read(file);
+    }
+
+    @Test(expected = IOException.class)
+    public void readFailsWithOtherVersion() throws IOException {
+        File file = folder.newFile();
+        PanoramaFile.write(randomPanorama(newRandom(), PanoramaChannel.ALL), file);
+        try (RandomAccessFile f = new RandomAccessFile(file, "rw")) {
+            f.seek(4);
+            f.writeInt(Integer.reverseBytes(PanoramaFile.VERSION + 1));
+        }
+        PanoramaFile.read(file);
+    }
+
+    @Test(expected = IOException.class)
+    public void readFailsWithTruncatedFile() throws IOException {
+        File file = folder.newFile();
+        PanoramaFile.write(randomPanorama(newRandom(), PanoramaChannel.ALL), file);
+        try (RandomAccessFile f = new RandomAccessFile(file, "rw")) {
+            f.setLength(f.length() - 1);
+        }
+        PanoramaFile.read(file);
+    }
+
+    @Test(expected = IOException.class)
+    public void readFailsWithEmptyFile() throws IOException {
+        PanoramaFile.read(folder.newFile());
+    }
+}
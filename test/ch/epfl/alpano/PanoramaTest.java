@@ -5,6 +5,7 @@ import static java.lang.Math.toRadians;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertSame;
 
+import java.util.EnumSet;
 import java.util.Random;
 
 import org.junit.Test;
@@ -101,4 +102,92 @@ public class PanoramaTest {
             }
         }
     }
+
+    @Test
+    public void builderSettersWorkWithAllStorages() {
+        PanoramaParameters ps = PARAMS();
+        for (PanoramaStorage storage : PanoramaStorage.values()) {
+            Panorama.Builder b = new Panorama.Builder(ps, PanoramaChannel.ALL, storage);
+            for (int x = 0; x < ps.width(); ++x) {
+                for (int y = 0; y < ps.height(); ++y) {
+                    float v = x * 10 + y;
+                    b.setDistanceAt(x, y, v)
+                    .setElevationAt(x, y, v + 1)
+                    .setLatitudeAt(x, y, v + 2)
+                    .setLongitudeAt(x, y, v + 3)
+                    .setSlopeAt(x, y, v + 4);
+                }
+            }
+            Panorama p = b.build();
+            assertSame(storage, p.storage());
+            assertEquals(PanoramaChannel.ALL, p.channels());
+            for (int x = 0; x < ps.width(); ++x) {
+                for (int y = 0; y < ps.height(); ++y) {
+                    float v = x * 10 + y;
+                    assertEquals(v, p.distanceAt(x, y), 0);
+                    assertEquals(v + 1, p.elevationAt(x, y), 0);
+                    assertEquals(v + 2, p.latitudeAt(x, y), 0);
+                    assertEquals(v + 3, p.longitudeAt(x, y), 0);
+                    assertEquals(v + 4, p.slopeAt(x, y), 0);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void builderOnlyBuildsGivenChannels() {
+        Panorama.Builder b = new Panorama.Builder(PARAMS(), PanoramaChannel.RENDERING, PanoramaStorage.DIRECT);
+        b.setDistanceAt(1, 2, 3).setSlopeAt(1, 2, 4).setElevationAt(1, 2, 5);
+        Panorama p = b.build();
+        assertEquals(EnumSet.of(PanoramaChannel.DISTANCE, PanoramaChannel.SLOPE), p.channels());
+        assertEquals(Float.POSITIVE_INFINITY, p.distanceAt(0, 0), 0);
+        assertEquals(3, p.distanceAt(1, 2), 0);
+        assertEquals(4, p.slopeAt(1, 2), 0);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void elevationAtFailsWhenChannelIsNotBuilt() {
+        new Panorama.Builder(PARAMS(), PanoramaChannel.RENDERING, PanoramaStorage.HEAP)
+                .build()
+                .elevationAt(0, 0);
+    }
+
+    @Test
+    public void valuesAtReturnsRowOfChannel() {
+        PanoramaParameters ps = PARAMS();
+        Panorama.Builder b = new Panorama.Builder(ps);
+        for (int x = 0; x < ps.width(); ++x) {
+            b.setSlopeAt(x, 3, x * 10 + 3);
+        }
+        Panorama p = b.build();
+        float[] values = new float[5];
+        p.valuesAt(PanoramaChannel.SLOPE, 2, 3, 4, values);
+        for (int i = 0; i < 4; ++i) {
+            assertEquals(p.slopeAt(2 + i, 3), values[i], 0);
+        }
+        assertEquals(0, values[4], 0);
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void valuesAtFailsWithRowOutOfPanorama() {
+        new Panorama.Builder(PARAMS()).build()
+                .valuesAt(PanoramaChannel.DISTANCE, 5, 0, 5, new float[5]);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void valuesAtFailsWhenChannelIsNotBuilt() {
+        new Panorama.Builder(PARAMS(), PanoramaChannel.RENDERING, PanoramaStorage.HEAP)
+                .build()
+                .valuesAt(PanoramaChannel.LATITUDE, 0, 0, 9, new float[9]);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void directStorageFailsWhenChannelIsTooLarge() {
+        PanoramaStorage.DIRECT.allocate(Integer.MAX_VALUE / Float.BYTES + 1);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void mappedStorageFailsWhenChannelIsTooLarge() {
+        PanoramaStorage.MAPPED.allocate(Integer.MAX_VALUE / Float.BYTES + 1);
+    }
 }
@@ -1,6 +1,5 @@
 package ch.epfl.alpano.dem;
 
-import static ch.epfl.alpano.Preconditions.checkArgument;
 import static ch.epfl.test.TestRandomizer.RANDOM_ITERATIONS;
 import static ch.epfl.test.TestRandomizer.newRandom;
 import static java.lang.Math.toDegrees;
@@ -109,65 +108,76 @@ public class ContinuousElevationModelTest {
         }
     }
 
-    private static GeoPoint pointForSampleIndex(double x, double y) {
-        return new GeoPoint(toRadians(x / 3600d), toRadians(y / 3600d));
-    }
-}
-
-class RandomElevationDEM implements DiscreteElevationModel {
-    private final Interval2D extent;
-    private final double[][] elevations;
-
-    public RandomElevationDEM(Interval2D extent, int maxElevation) {
-        this.extent = extent;
-        this.elevations = randomElevations(extent.iX().size(), extent.iY().size(), maxElevation);
+    @Test
+    public void elevationAndSlopeAtIsIdenticalToSeparateCalls() {
+        DiscreteElevationModel dDEM = new RandomElevationDEM(EXT_13_13, 1000);
+        ContinuousElevationModel cDEM = new ContinuousElevationModel(dDEM);
+        ElevationAndSlope holder = new ElevationAndSlope();
+        Random rng = newRandom();
+        for (int i = 0; i < RANDOM_ITERATIONS; ++i) {
+            double x = rng.nextDouble() * 16 - 1;
+            double y = rng.nextDouble() * 16 - 1;
+            GeoPoint p = pointForSampleIndex(x, y);
+            cDEM.elevationAndSlopeAt(p, holder);
+            assertEquals(cDEM.elevationAt(p), holder.elevation(), 0);
+            assertEquals(cDEM.slopeAt(p), holder.slope(), 0);
+        }
     }
 
-    private static double[][] randomElevations(int width, int height, int maxElevation) {
+    @Test
+    public void cachedSlopeAtIsCloseToComputedSlope() {
+        DiscreteElevationModel dDEM = new RandomElevationDEM(EXT_100_100, 1000);
+        ContinuousElevationModel cDEM = new ContinuousElevationModel(dDEM);
+        ContinuousElevationModel cachedDEM = new ContinuousElevationModel(dDEM, 1L << 20);
+        ElevationAndSlope holder = new ElevationAndSlope();
         Random rng = newRandom();
-        double[][] es = new double[width][height];
-        for (int x = 0; x < width; ++x) {
-            for (int y = 0; y < height; ++y) {
-                es[x][y] = rng.nextInt(maxElevation + 1);
-            }
+        for (int i = 0; i < RANDOM_ITERATIONS; ++i) {
+            double x = rng.nextDouble() * 104 - 2;
+            double y = rng.nextDouble() * 104 - 2;
+            GeoPoint p = pointForSampleIndex(x, y);
+            assertEquals(cDEM.slopeAt(p), cachedDEM.slopeAt(p), 1e-6);
+            cachedDEM.elevationAndSlopeAt(p, holder);
+            assertEquals(cDEM.elevationAt(p), holder.elevation(), 0);
+            assertEquals(cachedDEM.slopeAt(p), holder.slope(), 0);
         }
-        return es;
     }
 
-    @Override
-    public Interval2D extent() {
-        return extent;
+    @Test
+    public void slopeCacheMemoryGrowsWithComputedBlocks() {
+        DiscreteElevationModel dDEM = new RandomElevationDEM(EXT_100_100, 1000);
+        ContinuousElevationModel cDEM = new ContinuousElevationModel(dDEM);
+        ContinuousElevationModel cachedDEM = new ContinuousElevationModel(dDEM, 1L << 20);
+        cDEM.slopeAt(pointForSampleIndex(10, 10));
+        assertEquals(0, cDEM.slopeCacheMemory());
+        assertEquals(0, cachedDEM.slopeCacheMemory());
+        cachedDEM.slopeAt(pointForSampleIndex(10, 10));
+        long memory = cachedDEM.slopeCacheMemory();
+        assertTrue(memory > 0);
+        cachedDEM.slopeAt(pointForSampleIndex(50, 50));
+        assertEquals(memory, cachedDEM.slopeCacheMemory());
     }
 
-    @Override
-    public double elevationSample(int x, int y) {
-        checkArgument(extent.contains(x, y));
-        return elevations[x][y];
+    @Test
+    public void slopeCacheMemoryIsBounded() {
+        DiscreteElevationModel dDEM = new RandomElevationDEM(new Interval2D(new Interval1D(0, 1000), new Interval1D(0, 1000)), 1000);
+        ContinuousElevationModel cDEM = new ContinuousElevationModel(dDEM);
+        ContinuousElevationModel cachedDEM = new ContinuousElevationModel(dDEM, 2 * SlopeCache.BLOCK_BYTES);
+        for (int x = 0; x < 1000; x += 100) {
+            for (int y = 0; y < 1000; y += 100) {
+                GeoPoint p = pointForSampleIndex(x + 0.5, y + 0.5);
+                assertEquals(cDEM.slopeAt(p), cachedDEM.slopeAt(p), 1e-6);
+                assertTrue(cachedDEM.slopeCacheMemory() <= 2 * SlopeCache.BLOCK_BYTES);
+            }
+        }
+        assertEquals(2 * SlopeCache.BLOCK_BYTES, cachedDEM.slopeCacheMemory());
     }
 
-    @Override
-    public void close() throws Exception { }
-}
-
-class ConstantSlopeDEM implements DiscreteElevationModel {
-    public final static double INTER_SAMPLE_DISTANCE =
-            2d * Math.PI * 6_371_000d / (3600d * 360d);
-
-    private final Interval2D extent;
-
-    public ConstantSlopeDEM(Interval2D extent) {
-        this.extent = extent;
+    @Test(expected = IllegalArgumentException.class)
+    public void constructorFailsWithTooSmallSlopeCache() {
+        new ContinuousElevationModel(new RandomElevationDEM(EXT_100_100, 1000), SlopeCache.BLOCK_BYTES - 1);
     }
 
-    @Override
-    public Interval2D extent() { return extent; }
-
-    @Override
-    public double elevationSample(int x, int y) {
-        checkArgument(extent.contains(x, y));
-        return (x + y) * INTER_SAMPLE_DISTANCE;
+    private static GeoPoint pointForSampleIndex(double x, double y) {
+        return new GeoPoint(toRadians(x / 3600d), toRadians(y / 3600d));
     }
-
-    @Override
-    public void close() throws Exception {}
-}
\ No newline at end of file
+}
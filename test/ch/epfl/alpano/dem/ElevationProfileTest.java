@@ -125,6 +125,17 @@ public class ElevationProfileTest {
         p.positionAt(-1);
     }
 
+    @Test
+    public void longitudeAtAndLatitudeAtMatchPositionAt() {
+        ElevationProfile p = new ElevationProfile(newConstantSlopeDEM(), new GeoPoint(toRadians(3),toRadians(40)), 1, 100_000);
+        for (int i = 0; i <= 100; ++i) {
+            double x = 1000d * i - (i == 0 ? 0 : 17);
+            GeoPoint q = p.positionAt(x);
+            assertEquals(q.longitude(), p.longitudeAt(x), 0);
+            assertEquals(q.latitude(), p.latitudeAt(x), 0);
+        }
+    }
+
     private static ContinuousElevationModel newConstantSlopeDEM() {
         Interval2D extent = new Interval2D(
                 new Interval1D(-10_000, 10_000),
@@ -24,6 +24,7 @@ import org.junit.Test;
 
 import ch.epfl.alpano.Interval1D;
 import ch.epfl.alpano.Interval2D;
+import ch.epfl.alpano.Math2;
 
 public class HgtDiscreteElevationModelTest {
     private final static long HGT_FILE_SIZE = 3601L * 3601L * 2L;
@@ -143,6 +144,37 @@ public class HgtDiscreteElevationModelTest {
         }
     }
 
+    @Test
+    public void elevationSamplesMatchesElevationSample() throws Exception {
+        Path p = FAKE_HGT_DIR.resolve("N03E003.hgt");
+        try (FileChannel c = FileChannel.open(p, CREATE_NEW, READ, WRITE)) {
+            ShortBuffer b = c.map(MapMode.READ_WRITE, 0, HGT_FILE_SIZE).asShortBuffer();
+            for (int i = 0; i < 3601 * 3601; ++i)
+                b.put(i, (short) (i % 4001));
+        }
+        try (HgtDiscreteElevationModel dem = new HgtDiscreteElevationModel(p.toFile())) {
+            int[][] rectangles = { { 10800, 10800, 3, 3 }, { 14398, 14397, 3, 4 }, { 12000, 13000, 100, 1 } };
+            for (int[] r : rectangles) {
+                double[] samples = new double[r[2] * r[3]];
+                dem.elevationSamples(r[0], r[1], r[2], r[3], samples);
+                for (int j = 0; j < r[3]; ++j)
+                    for (int i = 0; i < r[2]; ++i)
+                        assertEquals(dem.elevationSample(r[0] + i, r[1] + j), samples[j * r[2] + i], 0);
+            }
+            double expected = Math2.bilerp(dem.elevationSample(12000, 13000), dem.elevationSample(12001, 13000),
+                    dem.elevationSample(12000, 13001), dem.elevationSample(12001, 13001), 0.25, 0.75);
+            assertEquals(expected, dem.interpolatedElevation(12000, 13000, 0.25, 0.75), 0);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void elevationSamplesFailsForRectangleNotInExtent() throws Exception {
+        Path p = copyEmptyHgtFileAs("N04E004.hgt");
+        try (HgtDiscreteElevationModel dem = new HgtDiscreteElevationModel(p.toFile())) {
+            dem.elevationSamples(18000, 18000, 2, 2, new double[4]);
+        }
+    }
+
     private static void createHgtDemWithFileNamed(String hgtFileName) throws Exception {
         Path p = copyEmptyHgtFileAs(hgtFileName);
         try (DiscreteElevationModel d = new HgtDiscreteElevationModel(p.toFile())) {}
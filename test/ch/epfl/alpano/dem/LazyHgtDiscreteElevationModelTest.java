@@ -0,0 +1,137 @@
+package ch.epfl.alpano.dem;
+
+import static java.nio.file.StandardOpenOption.CREATE_NEW;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.WRITE;
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ShortBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.stream.IntStream;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import ch.epfl.alpano.Interval1D;
+import ch.epfl.alpano.Interval2D;
+
+public class LazyHgtDiscreteElevationModelTest {
+    private final static long HGT_FILE_SIZE = 3601L * 3601L * 2L;
+    private static Path FAKE_HGT_DIR;
+
+    @BeforeClass
+    public static void createFakeHgtFiles() throws IOException {
+        FAKE_HGT_DIR = Files.createTempDirectory("hgt");
+        createHgtFile("N45E006.hgt", 1);
+        createHgtFile("N45E007.hgt", 2);
+        createHgtFile("N46E008.hgt", 3);
+        Files.createFile(FAKE_HGT_DIR.resolve("readme.txt"));
+    }
+
+    @AfterClass
+    public static void deleteFakeHgtFiles() throws IOException {
+        Files.walkFileTree(FAKE_HGT_DIR, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                Files.delete(file);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(Path dir, IOException exc) throws IOException {
+                if (exc != null)
+                    throw exc;
+                Files.delete(dir);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void constructorFailsWithZeroMappedTiles() {
+        new LazyHgtDiscreteElevationModel(FAKE_HGT_DIR.toFile(), 0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void constructorFailsWithoutHgtFiles() throws IOException {
+        File empty = Files.createTempDirectory("empty").toFile();
+        try {
+            new LazyHgtDiscreteElevationModel(empty);
+        } finally {
+            empty.delete();
+        }
+    }
+
+    @Test
+    public void extentContainsAllFiles() throws Exception {
+        try (LazyHgtDiscreteElevationModel dem = new LazyHgtDiscreteElevationModel(FAKE_HGT_DIR.toFile())) {
+            assertEquals(new Interval2D(
+                    new Interval1D(6 * 3600, 9 * 3600),
+                    new Interval1D(45 * 3600, 47 * 3600)), dem.extent());
+            assertEquals(0, dem.mappedTiles());
+        }
+    }
+
+    @Test
+    public void elevationSampleMapsFilesOnDemand() throws Exception {
+        try (LazyHgtDiscreteElevationModel dem = new LazyHgtDiscreteElevationModel(FAKE_HGT_DIR.toFile(), 2)) {
+            assertEquals(1, dem.elevationSample(6 * 3600 + 10, 45 * 3600 + 10), 0);
+            assertEquals(1, dem.elevationSample(6 * 3600 + 20, 45 * 3600 + 20), 0);
+            assertEquals(2, dem.elevationSample(7 * 3600 + 10, 45 * 3600 + 10), 0);
+            assertEquals(0, dem.elevationSample(6 * 3600 + 10, 46 * 3600 + 10), 0);
+            assertEquals(2, dem.misses());
+            assertEquals(0, dem.evictions());
+            assertEquals(2, dem.mappedTiles());
+        }
+    }
+
+    @Test
+    public void leastRecentlyUsedFileIsClosed() throws Exception {
+        try (LazyHgtDiscreteElevationModel dem = new LazyHgtDiscreteElevationModel(FAKE_HGT_DIR.toFile(), 2)) {
+            dem.elevationSample(6 * 3600 + 10, 45 * 3600 + 10);
+            dem.elevationSample(7 * 3600 + 10, 45 * 3600 + 10);
+            dem.elevationSample(6 * 3600 + 10, 45 * 3600 + 10);
+            assertEquals(3, dem.elevationSample(8 * 3600 + 10, 46 * 3600 + 10), 0);
+            assertEquals(1, dem.evictions());
+            assertEquals(1, dem.elevationSample(6 * 3600 + 10, 45 * 3600 + 10), 0);
+            assertEquals(1, dem.evictions());
+            assertEquals(2, dem.elevationSample(7 * 3600 + 10, 45 * 3600 + 10), 0);
+            assertEquals(2, dem.evictions());
+            assertEquals(4, dem.misses());
+            assertEquals(2, dem.mappedTiles());
+        }
+    }
+
+    @Test
+    public void parallelReadsSurviveEvictions() throws Exception {
+        try (LazyHgtDiscreteElevationModel dem = new LazyHgtDiscreteElevationModel(FAKE_HGT_DIR.toFile(), 1)) {
+            int[][] tiles = { { 6, 45, 1 }, { 7, 45, 2 }, { 8, 46, 3 } };
+            long wrong = IntStream.range(0, 30_000).parallel().filter(i -> {
+                int[] t = tiles[i % 3];
+                return dem.elevationSample(t[0] * 3600 + i % 3600,
+                        t[1] * 3600 + 10) != t[2];
+            }).count();
+            assertEquals(0, wrong);
+            assertEquals(dem.misses() - 1, dem.evictions());
+            assertEquals(1, dem.mappedTiles());
+        }
+    }
+
+    private static void createHgtFile(String name, int elevation) throws IOException {
+        try (FileChannel c = FileChannel.open(FAKE_HGT_DIR.resolve(name), CREATE_NEW, READ, WRITE)) {
+            ShortBuffer b = c.map(MapMode.READ_WRITE, 0, HGT_FILE_SIZE).asShortBuffer();
+            for (int i = 0; i < b.capacity(); ++i) {
+                b.put(i, (short) elevation);
+            }
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package ch.epfl.alpano.dem;
+
+import static ch.epfl.test.TestRandomizer.RANDOM_ITERATIONS;
+import static ch.epfl.test.TestRandomizer.newRandom;
+import static java.lang.Math.toRadians;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import ch.epfl.alpano.GeoPoint;
+import ch.epfl.alpano.Interval1D;
+import ch.epfl.alpano.Interval2D;
+
+public class MaxElevationPyramidTest {
+    private final static Interval2D EXT_100_100 = new Interval2D(
+            new Interval1D(0, 100),
+            new Interval1D(0, 100));
+
+    @Test(expected = NullPointerException.class)
+    public void constructorFailsWithNullDEM() {
+        new MaxElevationPyramid(null);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void maxElevationFailsWithEmptyRange() {
+        new MaxElevationPyramid(new RandomElevationDEM(EXT_100_100, 1000))
+                .maxElevation(10, 9, 0, 0);
+    }
+
+    @Test
+    public void maxElevationIsExactOnWholeExtent() {
+        DiscreteElevationModel dem = new RandomElevationDEM(EXT_100_100, 1000);
+        MaxElevationPyramid pyramid = new MaxElevationPyramid(dem);
+        assertEquals(maxSample(dem, 0, 100, 0, 100),
+                pyramid.maxElevation(0, 100, 0, 100), 0);
+    }
+
+    @Test
+    public void maxElevationIsAnUpperBoundOfTheSamples() {
+        DiscreteElevationModel dem = new RandomElevationDEM(EXT_100_100, 1000);
+        MaxElevationPyramid pyramid = new MaxElevationPyramid(dem);
+        Random rng = newRandom();
+        for (int i = 0; i < RANDOM_ITERATIONS; ++i) {
+            int x0 = rng.nextInt(101), y0 = rng.nextInt(101);
+            int x1 = x0 + rng.nextInt(101 - x0), y1 = y0 + rng.nextInt(101 - y0);
+            assertTrue(pyramid.maxElevation(x0, x1, y0, y1) >= maxSample(dem, x0, x1, y0, y1));
+        }
+    }
+
+    @Test
+    public void maxElevationIsZeroOutsideOfExtent() {
+        DiscreteElevationModel dem = new ConstantElevationDEM(EXT_100_100, -50);
+        MaxElevationPyramid pyramid = new MaxElevationPyramid(dem);
+        assertEquals(-50, pyramid.maxElevation(10, 20, 10, 20), 0);
+        assertEquals(0, pyramid.maxElevation(90, 110, 10, 20), 0);
+        assertEquals(0, pyramid.maxElevation(200, 300, 200, 300), 0);
+    }
+
+    @Test
+    public void maxElevationAlongIsAnUpperBoundOfTheProfile() {
+        Interval2D extent = new Interval2D(
+                new Interval1D(0, 1000),
+                new Interval1D(0, 1000));
+        DiscreteElevationModel dem = new RandomElevationDEM(extent, 1000);
+        MaxElevationPyramid pyramid = new MaxElevationPyramid(dem);
+        ElevationProfile profile = new ElevationProfile(
+                new ContinuousElevationModel(dem),
+                new GeoPoint(toRadians(0.01), toRadians(0.01)), toRadians(40),
+                20_000);
+        Random rng = newRandom();
+        for (int i = 0; i < RANDOM_ITERATIONS; ++i) {
+            double from = rng.nextDouble() * 19_000;
+            double to = from + rng.nextDouble() * 1_000;
+            double max = pyramid.maxElevationAlong(profile, from, to);
+            for (double x = from; x <= to; x += 10) {
+                assertTrue(max >= profile.elevationAt(x));
+            }
+        }
+    }
+
+    private static double maxSample(DiscreteElevationModel dem, int x0, int x1,
+            int y0, int y1) {
+        double max = Double.NEGATIVE_INFINITY;
+        for (int x = x0; x <= x1; ++x) {
+            for (int y = y0; y <= y1; ++y) {
+                max = Math.max(max, dem.elevationSample(x, y));
+            }
+        }
+        return max;
+    }
+}
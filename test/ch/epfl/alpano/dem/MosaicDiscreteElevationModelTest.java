@@ -0,0 +1,119 @@
+package ch.epfl.alpano.dem;
+
+import static ch.epfl.test.TestRandomizer.RANDOM_ITERATIONS;
+import static ch.epfl.test.TestRandomizer.newRandom;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Random;
+
+import org.junit.Test;
+
+import ch.epfl.alpano.Interval1D;
+import ch.epfl.alpano.Interval2D;
+
+public class MosaicDiscreteElevationModelTest {
+    @Test(expected = IllegalArgumentException.class)
+    public void constructorFailsWithoutTiles() {
+        new MosaicDiscreteElevationModel(Collections.emptyList());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void constructorFailsWithTileNotCoveringOneDegree() {
+        Interval2D e = new Interval2D(new Interval1D(0, 100), new Interval1D(0, 100));
+        new MosaicDiscreteElevationModel(Arrays.asList(new ConstantElevationDEM(e, 1)));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void constructorFailsWithTwoTilesOnSameDegree() {
+        new MosaicDiscreteElevationModel(Arrays.asList(tile(7, 46, 1), tile(7, 46, 2)));
+    }
+
+    @Test
+    public void extentContainsAllTiles() {
+        DiscreteElevationModel dem = new MosaicDiscreteElevationModel(
+                Arrays.asList(tile(6, 45, 1), tile(9, 46, 2)));
+        assertEquals(new Interval2D(
+                new Interval1D(6 * 3600, 10 * 3600),
+                new Interval1D(45 * 3600, 47 * 3600)), dem.extent());
+    }
+
+    @Test
+    public void elevationSampleIsIdenticalToUnion() {
+        DiscreteElevationModel t1 = tile(6, 45, 1), t2 = tile(7, 45, 2);
+        DiscreteElevationModel t3 = tile(6, 46, 3), t4 = tile(7, 46, 4);
+        DiscreteElevationModel union = t1.union(t2).union(t3.union(t4));
+        DiscreteElevationModel mosaic = new MosaicDiscreteElevationModel(
+                Arrays.asList(t4, t2, t3, t1));
+        assertEquals(union.extent(), mosaic.extent());
+        Random rng = newRandom();
+        for (int i = 0; i < RANDOM_ITERATIONS; ++i) {
+            int x = 6 * 3600 + rng.nextInt(2 * 3600 + 1);
+            int y = 45 * 3600 + rng.nextInt(2 * 3600 + 1);
+            assertEquals(union.elevationSample(x, y), mosaic.elevationSample(x, y), 0);
+        }
+        for (int k = 0; k <= 2 * 3600; ++k) {
+            assertEquals(union.elevationSample(7 * 3600, 45 * 3600 + k),
+                    mosaic.elevationSample(7 * 3600, 45 * 3600 + k), 0);
+            assertEquals(union.elevationSample(6 * 3600 + k, 46 * 3600),
+                    mosaic.elevationSample(6 * 3600 + k, 46 * 3600), 0);
+        }
+    }
+
+    @Test
+    public void elevationSamplesMatchesElevationSample() {
+        DiscreteElevationModel mosaic = new MosaicDiscreteElevationModel(
+                Arrays.asList(tile(6, 45, 1), tile(7, 45, 2), tile(7, 46, 4)));
+        int[][] corners = { { 6 * 3600 + 5, 45 * 3600 + 5 }, { 7 * 3600 - 1, 46 * 3600 - 1 },
+                { 7 * 3600 - 2, 46 * 3600 - 2 }, { 8 * 3600 - 2, 47 * 3600 - 2 } };
+        double[] samples = new double[9];
+        for (int[] c : corners) {
+            mosaic.elevationSamples(c[0], c[1], 3, 3, samples);
+            for (int j = 0; j < 3; ++j)
+                for (int i = 0; i < 3; ++i)
+                    assertEquals(mosaic.elevationSample(c[0] + i, c[1] + j), samples[3 * j + i], 0);
+        }
+    }
+
+    @Test
+    public void elevationSampleIsZeroInGaps() {
+        DiscreteElevationModel mosaic = new MosaicDiscreteElevationModel(
+                Arrays.asList(tile(6, 45, 1), tile(7, 46, 4)));
+        assertEquals(0, mosaic.elevationSample(7 * 3600 + 10, 45 * 3600 + 10), 0);
+        assertEquals(0, mosaic.elevationSample(6 * 3600 + 10, 46 * 3600 + 10), 0);
+        assertEquals(1, mosaic.elevationSample(6 * 3600 + 10, 45 * 3600 + 10), 0);
+        assertEquals(4, mosaic.elevationSample(7 * 3600 + 10, 46 * 3600 + 10), 0);
+    }
+
+    @Test
+    public void elevationSampleUsesNeighbourOnSharedEdges() {
+        DiscreteElevationModel mosaic = new MosaicDiscreteElevationModel(
+                Arrays.asList(tile(6, 45, 1), tile(7, 46, 4)));
+        assertEquals(1, mosaic.elevationSample(7 * 3600, 45 * 3600 + 10), 0);
+        assertEquals(1, mosaic.elevationSample(6 * 3600 + 10, 46 * 3600), 0);
+        assertEquals(1, mosaic.elevationSample(7 * 3600, 46 * 3600), 0);
+        assertEquals(4, mosaic.elevationSample(7 * 3600, 46 * 3600 + 10), 0);
+        assertEquals(4, mosaic.elevationSample(8 * 3600, 47 * 3600), 0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void elevationSampleFailsOutsideOfExtent() {
+        new MosaicDiscreteElevationModel(Arrays.asList(tile(6, 45, 1)))
+                .elevationSample(5 * 3600, 45 * 3600);
+    }
+
+    @Test
+    public void closeClosesAllTiles() throws Exception {
+        ConstantElevationDEM t1 = tile(6, 45, 1), t2 = tile(8, 46, 2);
+        new MosaicDiscreteElevationModel(Arrays.asList(t1, t2)).close();
+        assertTrue(t1.isClosed && t2.isClosed);
+    }
+
+    private static ConstantElevationDEM tile(int lon, int lat, double elevation) {
+        return new ConstantElevationDEM(new Interval2D(
+                new Interval1D(lon * 3600, (lon + 1) * 3600),
+                new Interval1D(lat * 3600, (lat + 1) * 3600)), elevation);
+    }
+}
@@ -0,0 +1,43 @@
+package ch.epfl.alpano.dem;
+
+import static ch.epfl.alpano.Preconditions.checkArgument;
+import static ch.epfl.test.TestRandomizer.newRandom;
+
+import java.util.Random;
+
+import ch.epfl.alpano.Interval2D;
+
+class RandomElevationDEM implements DiscreteElevationModel {
+    private final Interval2D extent;
+    private final double[][] elevations;
+
+    public RandomElevationDEM(Interval2D extent, int maxElevation) {
+        this.extent = extent;
+        this.elevations = randomElevations(extent.iX().size(), extent.iY().size(), maxElevation);
+    }
+
+    private static double[][] randomElevations(int width, int height, int maxElevation) {
+        Random rng = newRandom();
+        double[][] es = new double[width][height];
+        for (int x = 0; x < width; ++x) {
+            for (int y = 0; y < height; ++y) {
+                es[x][y] = rng.nextInt(maxElevation + 1);
+            }
+        }
+        return es;
+    }
+
+    @Override
+    public Interval2D extent() {
+        return extent;
+    }
+
+    @Override
+    public double elevationSample(int x, int y) {
+        checkArgument(extent.contains(x, y));
+        return elevations[x][y];
+    }
+
+    @Override
+    public void close() { }
+}
@@ -0,0 +1,92 @@
+package ch.epfl.alpano.gui;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import javafx.scene.paint.Color;
+
+public class ArgbTest {
+    // the components of the grid, with both ends and values close to them
+    private static final double[] COMPONENTS = new double[] {
+            0, 1e-9, 1d / 510, 0.1, 0.25, 1d / 3, 0.5, 0.7, 0.999, 1 - 1e-9, 1 };
+
+    // the hues of the grid, with every sector of 60 degrees, their bounds,
+    // and the hues which wrap around 360
+    private static final double[] HUES = new double[] {
+            -1080, -720.5, -360, -359.9, -60, -1e-9, 0, 1e-9, 30, 59.999, 60, 119.5, 120, 180,
+            240, 299.9, 300, 359.999, 360, 360 + 1e-9, 420, 719.9, 720, 1234.5, 1e6 + 7 };
+
+    @Test
+    public void hsbIsIdenticalToColorHsb() {
+        for (double h : HUES) {
+            for (double s : COMPONENTS) {
+                for (double b : COMPONENTS) {
+                    for (double o : new double[] { 0, 0.5, 1 }) {
+                        Color c = Color.hsb(h, s, b, o);
+                        assertEquals(h + " " + s + " " + b + " " + o,
+                                argb(c), Argb.hsb(h, s, b, o));
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void hsbIsIdenticalToColorHsbOnAFineGrid() {
+        for (int h = -3600; h <= 3600; ++h) {
+            for (int s = 0; s <= 20; ++s) {
+                double hue = h / 5d, saturation = s / 20d;
+                Color c = Color.hsb(hue, saturation, 0.75);
+                assertEquals(argb(c), Argb.hsb(hue, saturation, 0.75, 1));
+            }
+        }
+    }
+
+    @Test
+    public void grayIsIdenticalToColorGray() {
+        for (double g : COMPONENTS) {
+            for (double o : COMPONENTS) {
+                assertEquals(argb(Color.gray(g, o)), Argb.gray(g, o));
+            }
+        }
+        for (int g = 0; g <= 1000; ++g) {
+            assertEquals(argb(Color.gray(g / 1000d)), Argb.gray(g / 1000d, 1));
+        }
+    }
+
+    @Test
+    public void ofPacksTheRoundedComponents() {
+        Color c = new Color(0.1, 0.5, 1, 0.25);
+        assertEquals(argb(c), Argb.of(c));
+        assertEquals(0xFF000000, Argb.of(Color.BLACK));
+        assertEquals(0xFFFFFFFF, Argb.of(Color.WHITE));
+        assertEquals(0, Argb.of(Color.TRANSPARENT));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void hsbFailsWithTooLargeSaturation() {
+        Argb.hsb(0, 1.0001, 1, 1);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void hsbFailsWithNegativeBrightness() {
+        Argb.hsb(0, 1, -1e-9, 1);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void grayFailsWithTooLargeOpacity() {
+        Argb.gray(0.5, 1.5);
+    }
+
+    // the conversion of PixelFormat.getIntArgbInstance(), component by
+    // component
+    private static int argb(Color c) {
+        return component(c.getOpacity()) << 24 | component(c.getRed()) << 16
+                | component(c.getGreen()) << 8 | component(c.getBlue());
+    }
+
+    private static int component(double v) {
+        return (int) Math.round(v * 255);
+    }
+}
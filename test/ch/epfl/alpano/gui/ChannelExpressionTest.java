@@ -0,0 +1,122 @@
+package ch.epfl.alpano.gui;
+
+import static ch.epfl.test.TestRandomizer.RANDOM_ITERATIONS;
+import static ch.epfl.test.TestRandomizer.newRandom;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+public class ChannelExpressionTest {
+    // values of the source painter, at x, for any y
+    private static final float[] VALUES = new float[] {
+            -1e6f, -4500, -1, -0.5f, 0, 1e-7f, 0.25f, 0.5f, 1, 1.5f, 500, 4999.5f, 5000, 123_456.7f, 3e7f };
+
+    private static final ChannelPainter SOURCE = (x, y) -> VALUES[x];
+
+    @Test
+    public void affineOperationsAreFoldedInOneStage() {
+        ChannelPainter e = SOURCE.sub(500).div(4500).clamped().inverted();
+        assertEquals(1, ((ChannelExpression) e).stageCount());
+        e = SOURCE.add(1).mul(2).sub(3).div(4).inverted();
+        assertEquals(1, ((ChannelExpression) e).stageCount());
+        e = SOURCE.clamped().mul(2).clamped();
+        assertEquals(2, ((ChannelExpression) e).stageCount());
+    }
+
+    @Test
+    public void foldedAffineOperationsAreCloseToUnfoldedOnes() {
+        Random rng = newRandom();
+        for (int i = 0; i < RANDOM_ITERATIONS; ++i) {
+            float a = (float) (rng.nextDouble() * 20 - 10);
+            float b = (float) (rng.nextDouble() * 2000 - 1000);
+            float c = (float) (rng.nextDouble() * 10 + 0.1);
+            ChannelPainter folded = SOURCE.mul(a).add(b).div(c).inverted();
+            ChannelPainter unfolded = (x, y) -> 1f - (SOURCE.valueAt(x, y) * a + b) / c;
+            for (int x = 0; x < VALUES.length; ++x) {
+                double v = VALUES[x];
+                double exact = 1 - (v * a + b) / c;
+                double bound = bound(Math.abs(v * a / c), Math.abs(b / c) + 1);
+                assertEquals(exact, folded.valueAt(x, 0), bound);
+                // the unfolded operations round each of the three
+                // intermediate values as well
+                assertEquals(unfolded.valueAt(x, 0), folded.valueAt(x, 0), 2 * bound);
+            }
+            assertRowEqualsValues(folded);
+        }
+    }
+
+    @Test
+    public void clampingIsAppliedBetweenTheFoldedOperations() {
+        ChannelPainter folded = SOURCE.sub(500).div(4500).clamped().inverted().mul(2).add(1);
+        ChannelPainter twice = SOURCE.mul(2).clamped().sub(0.5f).mul(4).clamped();
+        ChannelPainter unfolded = (x, y) -> 2f * (1f - Math.max(0f, Math.min((SOURCE.valueAt(x, y) - 500f) / 4500f, 1f))) + 1f;
+        ChannelPainter unfoldedTwice = (x, y) -> Math.max(0f, Math.min((Math.max(0f, Math.min(SOURCE.valueAt(x, y) * 2f, 1f)) - 0.5f) * 4f, 1f));
+        for (int x = 0; x < VALUES.length; ++x) {
+            assertEquals(unfolded.valueAt(x, 0), folded.valueAt(x, 0), 1e-6);
+            assertEquals(unfoldedTwice.valueAt(x, 0), twice.valueAt(x, 0), 1e-6);
+        }
+        // below, at and above the clamping interval
+        assertEquals(3, folded.valueAt(0, 0), 0);
+        assertEquals(1, folded.valueAt(12, 0), 0);
+        assertEquals(1, folded.valueAt(14, 0), 0);
+        assertEquals(0, twice.valueAt(3, 0), 0);
+        assertEquals(1, twice.valueAt(8, 0), 0);
+        assertRowEqualsValues(folded);
+        assertRowEqualsValues(twice);
+    }
+
+    @Test
+    public void foldedOperationsDoNotLoseCancellingTerms() {
+        ChannelPainter folded = SOURCE.add(1e10f).sub(1e10f);
+        ChannelPainter unfolded = (x, y) -> (SOURCE.valueAt(x, y) + 1e10f) - 1e10f;
+        int different = 0;
+        for (int x = 0; x < VALUES.length; ++x) {
+            assertEquals(VALUES[x], folded.valueAt(x, 0), 0);
+            // the unfolded operations round the values to multiples of 1024
+            assertEquals(0, unfolded.valueAt(x, 0) % 1024, 0);
+            if (unfolded.valueAt(x, 0) != folded.valueAt(x, 0))
+                ++different;
+        }
+        assertNotEquals(0, different);
+        assertRowEqualsValues(folded);
+    }
+
+    @Test
+    public void foldedValuesAreWithinTheDocumentedBound() {
+        // the terms cancel, so the bound is much larger than the result
+        float term = 1e6f - 0.1f;
+        ChannelPainter folded = SOURCE.mul(3).add(1e6f).sub(term);
+        double b = 1e6 - term;
+        for (int x = 0; x < VALUES.length; ++x) {
+            double v = VALUES[x];
+            assertEquals(3 * v + b, folded.valueAt(x, 0), bound(Math.abs(3 * v), b));
+        }
+    }
+
+    @Test
+    public void cycleAndMapAreNotFolded() {
+        // dividing by a power of 2 is exact, folded or not
+        ChannelPainter e = SOURCE.div(1024).cylce().map(v -> v * v).mul(2);
+        assertEquals(4, ((ChannelExpression) e).stageCount());
+        for (int x = 0; x < VALUES.length; ++x) {
+            float c = (VALUES[x] / 1024f) % 1f;
+            assertEquals(2 * c * c, e.valueAt(x, 0), 1e-6);
+        }
+        assertRowEqualsValues(e);
+    }
+
+    // the bound of the error of a folded stage, for terms a * v and b
+    private static double bound(double av, double b) {
+        return 3 * Math.scalb(1d, -24) * (av + b);
+    }
+
+    private static void assertRowEqualsValues(ChannelPainter p) {
+        float[] row = new float[VALUES.length];
+        p.valuesAt(0, 0, VALUES.length, row);
+        for (int x = 0; x < VALUES.length; ++x)
+            assertEquals(p.valueAt(x, 0), row[x], 0);
+    }
+}
@@ -0,0 +1,89 @@
+package ch.epfl.alpano.gui;
+
+import static java.lang.Math.toRadians;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import ch.epfl.alpano.GeoPoint;
+import ch.epfl.alpano.Panorama;
+import ch.epfl.alpano.PanoramaParameters;
+
+public class ColourTableTest {
+    // width of the panoramas, distance between two of their columns, and
+    // number of rows, the slope going from 0 to PI / 2 in steps smaller
+    // than the ones of the table
+    private static final int WIDTH = 4096, HEIGHT = 301;
+    private static final float DISTANCE_STEP = 7.3f;
+
+    @Test
+    public void tableColoursAreCloseToExactColours() {
+        int maxDifference = 0, differentBy2 = 0, pixels = 0;
+        // up to 1.5 times the distance beyond which the saturation is 0
+        for (int from = 0; from * DISTANCE_STEP < 1.5 * ColourTable.MAX_DISTANCE; from += WIDTH) {
+            Panorama p = panorama(from);
+            int[] expected = new int[WIDTH], actual = new int[WIDTH];
+            ImagePainter exact = ImagePainter.colourPanoramaPainter(p);
+            ImagePainter table = ImagePainter.colourPanoramaTablePainter(p);
+            for (int y = 0; y < HEIGHT; ++y) {
+                exact.colorsArgbAt(0, y, WIDTH, expected);
+                table.colorsArgbAt(0, y, WIDTH, actual);
+                for (int x = 0; x < WIDTH; ++x) {
+                    int d = maxComponentDifference(expected[x], actual[x]);
+                    maxDifference = Math.max(maxDifference, d);
+                    if (d == 2)
+                        ++differentBy2;
+                    ++pixels;
+                }
+            }
+        }
+        assertTrue(maxDifference <= 2);
+        assertTrue(differentBy2 < pixels / 1000);
+    }
+
+    @Test
+    public void pointsWithoutTerrainAreTransparent() {
+        for (int j = 0; j <= 10; ++j) {
+            float slope = (float) (j * Math.PI / 20);
+            int c = ColourTable.argb(Float.POSITIVE_INFINITY, slope);
+            assertEquals(0, c >>> 24);
+            assertEquals(ColourTable.exact(Float.POSITIVE_INFINITY, slope), c);
+        }
+    }
+
+    @Test
+    public void tableHasTheExactColoursOfItsEntries() {
+        for (int i = 0; i <= ColourTable.DISTANCE_STEPS; i += 7) {
+            for (int j = 0; j <= ColourTable.SLOPE_STEPS; ++j) {
+                float distance = i * ColourTable.MAX_DISTANCE / ColourTable.DISTANCE_STEPS;
+                double slope = j * (Math.PI / 2) / ColourTable.SLOPE_STEPS;
+                assertEquals(ColourTable.exact((double) i * ColourTable.MAX_DISTANCE / ColourTable.DISTANCE_STEPS, slope),
+                        ColourTable.argb(distance, (float) slope));
+            }
+        }
+    }
+
+    // the panorama whose column x is at the distance (from + x) *
+    // DISTANCE_STEP and whose row y has the slope y * (PI / 2) / (HEIGHT - 1)
+    private static Panorama panorama(int from) {
+        PanoramaParameters pp = new PanoramaParameters(new GeoPoint(toRadians(7), toRadians(46)),
+                2000, toRadians(30), toRadians(60), 300_000, WIDTH, HEIGHT);
+        Panorama.Builder b = new Panorama.Builder(pp);
+        for (int x = 0; x < WIDTH; ++x) {
+            for (int y = 0; y < HEIGHT; ++y) {
+                b.setDistanceAt(x, y, (from + x) * DISTANCE_STEP);
+                b.setSlopeAt(x, y, (float) (y * (Math.PI / 2) / (HEIGHT - 1)));
+            }
+        }
+        return b.build();
+    }
+
+    private static int maxComponentDifference(int c1, int c2) {
+        int max = 0;
+        for (int shift = 0; shift < 32; shift += 8) {
+            max = Math.max(max, Math.abs((c1 >>> shift & 0xFF) - (c2 >>> shift & 0xFF)));
+        }
+        return max;
+    }
+}
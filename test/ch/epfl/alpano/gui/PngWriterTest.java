@@ -0,0 +1,106 @@
+package ch.epfl.alpano.gui;
+
+import static ch.epfl.test.TestRandomizer.newRandom;
+import static java.lang.Math.toRadians;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+
+import javax.imageio.ImageIO;
+
+import org.junit.Test;
+
+import ch.epfl.alpano.GeoPoint;
+import ch.epfl.alpano.Panorama;
+import ch.epfl.alpano.PanoramaParameters;
+
+public class PngWriterTest {
+    // sizes whose heights are mostly not multiples of the rows of a chunk
+    // (218 rows of width 300, 32 rows of width 2000), one of them with a
+    // chunk per row (width 70000) and one with exactly two chunks
+    private static final int[][] SIZES = new int[][] {
+            { 1, 1 }, { 7, 3 }, { 100, 37 }, { 300, 250 }, { 2000, 100 }, { 70_000, 3 }, { 2000, 64 } };
+
+    @Test
+    public void writtenImageIsDecodedIdentically() throws IOException {
+        Random rng = newRandom();
+        for (int[] size : SIZES) {
+            int w = size[0], h = size[1];
+            int[] pixels = new int[w * h];
+            for (int i = 0; i < pixels.length; ++i) {
+                // runs of identical pixels, so that every filter is used
+                pixels[i] = rng.nextInt(4) == 0 ? rng.nextInt() : i == 0 ? 0 : pixels[i - 1];
+            }
+            for (int parallelism : new int[] { 1, 3 }) {
+                assertArrayEquals(w + "x" + h, pixels, decode(write(pixels, w, h, parallelism), w, h));
+            }
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void closeFailsWithMissingRows() throws IOException {
+        try (PngWriter png = new PngWriter(new ByteArrayOutputStream(), 2, 2)) {
+            png.writeRow(new int[2]);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void writeRowFailsWithWrongWidth() throws IOException {
+        new PngWriter(new ByteArrayOutputStream(), 2, 2).writeRow(new int[3]);
+    }
+
+    @Test
+    public void headlessPngIsIdenticalToRenderedPixels() throws IOException {
+        Random rng = newRandom();
+        // heights which are not multiples of the bands of rows
+        for (int[] size : new int[][] { { 1, 1 }, { 101, 37 }, { 640, 250 } }) {
+            int w = size[0], h = size[1];
+            PanoramaParameters pp = new PanoramaParameters(new GeoPoint(toRadians(7), toRadians(46)),
+                    2000, toRadians(30), toRadians(60), 100_000, w, h);
+            Panorama.Builder b = new Panorama.Builder(pp);
+            for (int x = 0; x < w; ++x) {
+                for (int y = 0; y < h; ++y) {
+                    if (rng.nextInt(5) != 0) {
+                        b.setDistanceAt(x, y, rng.nextFloat() * 100_000);
+                    }
+                    b.setElevationAt(x, y, rng.nextFloat() * 4000);
+                    b.setSlopeAt(x, y, rng.nextFloat() * (float) Math.PI / 2);
+                }
+            }
+            Panorama p = b.build();
+            ImagePainter painter = ImagePainter.colourPanoramaPainter(p);
+            int[] expected = HeadlessRenderer.renderArgb(p, painter);
+            for (int parallelism : new int[] { 1, 2 }) {
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                HeadlessRenderer.writePng(p, painter, out, parallelism);
+                assertArrayEquals(expected, decode(out.toByteArray(), w, h));
+            }
+            BufferedImage image = HeadlessRenderer.renderImage(p, painter);
+            assertArrayEquals(expected, image.getRGB(0, 0, w, h, null, 0, w));
+        }
+    }
+
+    private static byte[] write(int[] pixels, int w, int h, int parallelism) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        int[] row = new int[w];
+        try (PngWriter png = new PngWriter(out, w, h, parallelism)) {
+            for (int y = 0; y < h; ++y) {
+                System.arraycopy(pixels, y * w, row, 0, w);
+                png.writeRow(row);
+            }
+        }
+        return out.toByteArray();
+    }
+
+    private static int[] decode(byte[] png, int w, int h) throws IOException {
+        BufferedImage image = ImageIO.read(new ByteArrayInputStream(png));
+        assertEquals(w, image.getWidth());
+        assertEquals(h, image.getHeight());
+        return image.getRGB(0, 0, w, h, null, 0, w);
+    }
+}
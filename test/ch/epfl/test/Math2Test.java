@@ -6,6 +6,7 @@ import static ch.epfl.alpano.Math2.firstIntervalContainingRoot;
 import static ch.epfl.alpano.Math2.floorMod;
 import static ch.epfl.alpano.Math2.haversin;
 import static ch.epfl.alpano.Math2.improveRoot;
+import static ch.epfl.alpano.Math2.improveRootIllinois;
 import static ch.epfl.alpano.Math2.lerp;
 import static ch.epfl.alpano.Math2.sq;
 import static ch.epfl.test.TestRandomizer.RANDOM_ITERATIONS;
@@ -204,6 +205,26 @@ public class Math2Test {
         assertEquals(-PI, mPi, 1e-10);
     }
 
+    @Test(expected = IllegalArgumentException.class)
+    public void improveRootIllinoisFailsWhenIntervalDoesNotContainRoot() {
+        improveRootIllinois(new Sin(), 1, 2, 1e-10);
+    }
+
+    @Test
+    public void improveRootIllinoisWorksOnSin() {
+        double pi = improveRootIllinois(new Sin(), 3.1, 3.2, 1e-10);
+        assertEquals(PI, pi, 1e-10);
+
+        double mPi = improveRootIllinois(new Sin(), -3.1, -4, 1e-10);
+        assertEquals(-PI, mPi, 1e-10);
+    }
+
+    @Test
+    public void improveRootIllinoisReturnsLowerBoundOfInterval() {
+        double x = improveRootIllinois(new Sin(), 2, 4, 0.5);
+        assertTrue(x <= PI && PI <= x + 0.5);
+    }
+
     private static double nextAngle(Random rng) {
         return rng.nextDouble() * 2d * PI;
     }